@@ -0,0 +1,72 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Connects the platform-independent core engine to Android: its log messages go to logcat, its
+ * stage timings show up as systrace sections, and its responses are cached in the app's cache
+ * directory.
+ *
+ * Every component the system can start the process for installs it, so a process started by
+ * JobScheduler for a background sync revalidates its requests just like the app does.
+ */
+public final class AndroidPlatform {
+
+    private static final String RESPONSE_CACHE_DIR = "usgs-responses";
+    private static final long RESPONSE_CACHE_SIZE = 10 * 1024 * 1024; // 10 MiB
+
+    private static boolean sInstalled;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link AndroidPlatform}
+     * object.
+     */
+    private AndroidPlatform() {
+    }
+
+    /**
+     * Install the Android log sink, tracer and response cache. Calling this again has no
+     * effect.
+     *
+     * @param context any context of the app
+     */
+    public static synchronized void install(Context context) {
+        if (sInstalled) {
+            return;
+        }
+        sInstalled = true;
+
+        // Keep responses on disk so unchanged data can be revalidated instead of downloaded
+        if (QueryUtils.getResponseCache() == null) {
+            QueryUtils.setResponseCache(new ResponseDiskCache(
+                    new File(context.getApplicationContext().getCacheDir(), RESPONSE_CACHE_DIR),
+                    RESPONSE_CACHE_SIZE));
+        }
+
+        QuakeLog.setSink(new QuakeLog.Sink() {
+            @Override
+            public void log(int priority, String tag, String message, Throwable throwable) {
+                if (throwable != null) {
+                    message = message + '\n' + Log.getStackTraceString(throwable);
+                }
+                Log.println(priority, tag, message);
+            }
+        });
+
+        Metrics.setTracer(new Metrics.Tracer() {
+            @Override
+            public void beginSection(String name) {
+                TraceCompat.beginSection(name);
+            }
+
+            @Override
+            public void endSection() {
+                TraceCompat.endSection();
+            }
+        });
+    }
+}
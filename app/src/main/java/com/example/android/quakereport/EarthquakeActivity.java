@@ -15,95 +15,282 @@
  */
 package com.example.android.quakereport;
 
-import android.app.LoaderManager;
-import android.content.AsyncTaskLoader;
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModelProvider;
 import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class EarthquakeActivity extends AppCompatActivity
-    implements LoaderManager.LoaderCallbacks<List<Earthquake>>{
+public class EarthquakeActivity extends AppCompatActivity {
 
-    private static final String USGS_REQUEST_URL =
-            "https://earthquake.usgs.gov/fdsnws/event/1/query";
-    private static final int EQ_LOADER_ID = 0;
-    //private static final String LOG_TAG = EarthquakeActivity.class.getSimpleName();
+    private static final int RECYCLED_ROW_COUNT = 20;
+
+    // Polls the live feed off the UI thread, one poll at a time
+    private static final Executor LIVE_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final String LOG_TAG = EarthquakeActivity.class.getSimpleName();
 
     private TextView emptyTV;
     private ProgressBar progressBar;
 
-    // Declare global adapter variable
-    static EarthquakeAdapter adapter;
+    // Summary of the stored earthquakes above the list
+    private View summaryHeader;
+    private TextView summaryText;
+    private TextView summaryBands;
+    private SparklineView hourlySparkline;
+    private SparklineView dailySparkline;
+    private long shownSummaryVersion = -1;
+
+    private EarthquakeAdapter adapter;
+
+    // Loads the list and keeps it across configuration changes
+    private EarthquakeViewModel viewModel;
+
+    // Network state at launch
+    private boolean isConnected;
+
+    // Live mode: polls the USGS summary feed while the activity is visible
+    private final Handler liveHandler = new Handler();
+    private LiveFeedPoller livePoller;
+    private boolean isLive;
+
+    // Schedules the next live poll and runs it on the live executor when it is due
+    private final Runnable liveTick = new Runnable() {
+        @Override
+        public void run() {
+            final LiveFeedPoller poller = livePoller;
+            if(!isLive || poller == null) {
+                return;
+            }
+            LIVE_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    poller.pollIfDue();
+                    liveHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(isLive && poller == livePoller) {
+                                liveHandler.postDelayed(liveTick,
+                                        poller.getMillisUntilNextPoll());
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
+        // Route the core engine's logging, tracing and response caching to the platform
+        AndroidPlatform.install(this);
+
         emptyTV = findViewById(R.id.empty_textview);
         progressBar = findViewById(R.id.loading_spinner);
+        summaryHeader = findViewById(R.id.summary_header);
+        summaryText = findViewById(R.id.summary_text);
+        summaryBands = findViewById(R.id.summary_bands);
+        hourlySparkline = findViewById(R.id.summary_hourly);
+        dailySparkline = findViewById(R.id.summary_daily);
 
         // Check for network connectivity
         ConnectivityManager cm =
                 (ConnectivityManager) getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
 
         NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        boolean isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+        isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+
+        // The model outlives configuration changes, so a rotation neither reloads the list nor
+        // restarts a sync
+        viewModel = new ViewModelProvider(this,
+                ViewModelProvider.AndroidViewModelFactory.getInstance(getApplication()))
+                .get(EarthquakeViewModel.class);
+
+        // Keep the store up to date while the app is closed
+        SyncScheduler.get(this).ensureScheduled();
 
         if(isConnected) {
-            // Prepare the loader
-            //Log.e(LOG_TAG, "initLoader method called");
-            getLoaderManager().initLoader(EQ_LOADER_ID, null, this);
-        } else {
-            progressBar.setVisibility(View.GONE);
-            emptyTV.setText(getString(R.string.no_internet_connection));
+            // Fetch the events that changed since the last sync, unless the background sync
+            // did so recently
+            viewModel.requestSync();
         }
 
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView earthquakeListView = findViewById(R.id.list);
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView earthquakeListView = findViewById(R.id.list);
+
+        // Lay the rows out vertically and let the layout manager bind upcoming rows in the
+        // idle time between frames
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setItemPrefetchEnabled(true);
+        earthquakeListView.setLayoutManager(layoutManager);
+        earthquakeListView.setHasFixedSize(true);
+
+        // Keep enough rows around to cover a fast fling without inflating new ones
+        RecyclerView.RecycledViewPool viewPool = new RecyclerView.RecycledViewPool();
+        viewPool.setMaxRecycledViews(0, RECYCLED_ROW_COUNT);
+        earthquakeListView.setRecycledViewPool(viewPool);
 
-        // Create a new {@link ArrayAdapter} of earthquakes
+        // Create a new {@link EarthquakeAdapter} of earthquakes
         adapter = new EarthquakeAdapter(
-                this, new ArrayList<Earthquake>());
+                this, new ArrayList<EarthquakeRowModel>());
 
-        // Set the adapter on the {@link ListView}
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
         earthquakeListView.setAdapter(adapter);
 
-        // Set the empty view on the {@link ListView) if the adapter is empty
-        View emptyView  = (View)emptyTV;
-        earthquakeListView.setEmptyView(emptyView);
+        // Show the empty view only while the adapter is empty
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                emptyTV.setVisibility(adapter.isEmpty() ? View.VISIBLE : View.GONE);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                onChanged();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                onChanged();
+            }
+        });
 
         // open URL for select earthquake
-        earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        adapter.setOnEarthquakeClickListener(new EarthquakeAdapter.OnEarthquakeClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                Earthquake currentEarthquake = adapter.getItem(position);
+            public void onEarthquakeClick(Earthquake currentEarthquake) {
+                // The event page URL is only built now, from the event id
                 Intent openURL = new Intent(Intent.ACTION_VIEW);
                 openURL.setData(Uri.parse(currentEarthquake.getWebsite()));
                 startActivity(openURL);
             }
         });
 
+        // Prefetch the next page while the user nears the end of the list
+        earthquakeListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager =
+                        (LinearLayoutManager) recyclerView.getLayoutManager();
+                int totalItemCount = layoutManager.getItemCount();
+                int remaining = totalItemCount - 1 - layoutManager.findLastVisibleItemPosition();
+                if(totalItemCount > 0 && remaining <= EarthquakeViewModel.getPageSize() / 2) {
+                    viewModel.loadNextPage();
+                }
+            }
+        });
+
+        // Show the list while the activity is started. The list is always read from the local
+        // store, so whatever was synced before shows up right away, even offline.
+        viewModel.getList().observe(this, new Observer<EarthquakeViewModel.ListState>() {
+            @Override
+            public void onChanged(@Nullable EarthquakeViewModel.ListState state) {
+                if(state != null) {
+                    showList(state);
+                }
+            }
+        });
+
+        viewModel.getSummary().observe(this, new Observer<EarthquakeAggregator.Snapshot>() {
+            @Override
+            public void onChanged(@Nullable EarthquakeAggregator.Snapshot snapshot) {
+                if(snapshot != null) {
+                    showSummary(snapshot);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+
+        // Pick up settings changed while the activity was stopped; loads for the previous
+        // settings are cancelled
+        viewModel.setQuery(SettingsActivity.readMinMagnitude(this, sharedPrefs),
+                SettingsActivity.readOrderBy(this, sharedPrefs));
+
+        if(sharedPrefs.getBoolean(getString(R.string.settings_live_mode_key), false)) {
+            startLiveMode();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        stopLiveMode();
+        if(BuildConfig.DEBUG) {
+            // Dump the stage timings of this session, e.g. to compare them across releases
+            Log.d(LOG_TAG, "Load metrics: " + Metrics.getDefaultSink().toJson());
+        }
+        super.onStop();
+    }
+
+    /**
+     * Start polling the live feed. New and updated earthquakes are merged into the local store
+     * and the list is reloaded from it. The rows written here leave the sync watermark alone,
+     * so the next background sync still asks for everything updated since the last one.
+     */
+    private void startLiveMode() {
+        if(isLive) {
+            return;
+        }
+        isLive = true;
+
+        final EarthquakeStore store = EarthquakeStore.get(this);
+        livePoller = new LiveFeedPoller(LiveFeedPoller.ALL_HOUR_FEED_URL, Clock.SYSTEM,
+                new LiveFeedPoller.Listener() {
+                    @Override
+                    public void onEventsChanged(List<Earthquake> changed) {
+                        // Runs on the live executor, so the store can be written right here;
+                        // the poller has already left out blasts and other non-earthquakes
+                        store.upsert(changed);
+                        EarthquakeViewModel.invalidateResults();
+                        liveHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if(isLive) {
+                                    viewModel.reload();
+                                }
+                            }
+                        });
+                    }
+                });
+        liveHandler.post(liveTick);
+    }
+
+    /**
+     * Stop polling the live feed.
+     */
+    private void stopLiveMode() {
+        isLive = false;
+        livePoller = null;
+        liveHandler.removeCallbacks(liveTick);
     }
 
     @Override
@@ -111,6 +298,7 @@ public class EarthquakeActivity extends AppCompatActivity
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the Options Menu we specified in XML
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_live).setChecked(isLive);
         return true;
     }
 
@@ -122,107 +310,90 @@ public class EarthquakeActivity extends AppCompatActivity
             startActivity(settingsIntent);
             return true;
         }
+        if(id == R.id.action_live){
+            boolean live = !item.isChecked();
+            item.setChecked(live);
+            PreferenceManager.getDefaultSharedPreferences(this).edit()
+                    .putBoolean(getString(R.string.settings_live_mode_key), live)
+                    .apply();
+            if(live) {
+                startLiveMode();
+            } else {
+                stopLiveMode();
+            }
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    // onCreateLoader instantiates and returns a new Loader for the given ID
-    public Loader<List<Earthquake>> onCreateLoader(int id, Bundle args) {
-        // Log.e(LOG_TAG,"Creating new EarthquakeLoader");
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-
-        // getString retrieves a String value from the preferences. The second parameter is the
-        // default value for this preference.
-        String minMagnitude = sharedPrefs.getString(
-                getString(R.string.settings_min_magnitude_key),
-                getString(R.string.settings_min_magnitude_default));
-
-        String orderBy = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default));
-
-        // parse breaks apart the URI string that's passed into its parameter
-        Uri baseUri = Uri.parse(USGS_REQUEST_URL);
-
-        // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it.
-        Uri.Builder uriBuilder = baseUri.buildUpon();
-
-        // Append query parameter and its value. For example, 'format=geojson'
-        uriBuilder.appendQueryParameter("format","geojson");
-        uriBuilder.appendQueryParameter("eventtype","earthquake");
-        uriBuilder.appendQueryParameter("limit","10");
-        uriBuilder.appendQueryParameter("minmag",minMagnitude);
-        uriBuilder.appendQueryParameter("orderby",orderBy);
-
-        // Return the completed uri
-        return new EarthquakeLoader(EarthquakeActivity.this, uriBuilder.toString());
-
-    }
-
-    @Override
-    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakes) {
-        //Log.e(LOG_TAG,"Loader work completed. onLoadFinished method called");
-
-        progressBar.setVisibility(View.GONE);
-        emptyTV.setText(getString(R.string.no_earthquakes_found));
-
-        // exit early if no response
-        if(earthquakes == null){
-            return;
+    /**
+     * Show the rows of the list, appending them if only a page was added.
+     */
+    private void showList(EarthquakeViewModel.ListState state) {
+        List<EarthquakeRowModel> rows = state.getRows();
+        int appendedFrom = state.getAppendedFrom();
+        if(appendedFrom >= 0 && appendedFrom == adapter.getItemCount()) {
+            // Append the page without diffing the rows already on screen
+            adapter.addAll(rows.subList(appendedFrom, rows.size()));
+        } else {
+            // Hand the new snapshot to the adapter, which diffs it against the rows on screen
+            // and only updates the rows that actually changed.
+            adapter.submitRows(new ArrayList<>(rows));
         }
 
-        // update the UI
-        updateUI(earthquakes);
-    }
-
-    @Override
-    public void onLoaderReset(Loader<List<Earthquake>> loader) {
-        // Log.e(LOG_TAG,"Loader reset");
-        // Loader reset so clear the adapter of previous earthquake data
-        adapter.clear();
-
+        // Keep the spinner up while the first page is read, or the first sync may still fill
+        // an empty store
+        if(!rows.isEmpty() || (!state.isLoading() && !state.isSyncing())) {
+            showEmptyState();
+        }
     }
 
-    public static class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>>{
-
-        private String url;
-
-        private EarthquakeLoader(Context context, String requestUrl) {
-            super(context);
-            url = requestUrl;
-
+    /**
+     * Show the statistics of the stored earthquakes above the list. The snapshot is already
+     * aggregated, so this only formats a handful of numbers.
+     */
+    private void showSummary(EarthquakeAggregator.Snapshot snapshot) {
+        if(snapshot.getEventCount() == 0) {
+            summaryHeader.setVisibility(View.GONE);
+            return;
         }
+        summaryHeader.setVisibility(View.VISIBLE);
 
-        @Override
-        protected void onStartLoading() {
-            // Log.e(LOG_TAG,"Start loading called");
-            forceLoad();
+        // The sparklines end at the current hour, so they are redrawn even if no event changed
+        hourlySparkline.setCounts(snapshot.getHourlyCounts());
+        dailySparkline.setCounts(snapshot.getDailyCounts());
+        if(snapshot.getVersion() == shownSummaryVersion) {
+            return;
         }
-
-        @Override
-        public List<Earthquake> loadInBackground() {
-            // Log.e(LOG_TAG,"Load on background thread started");
-            // return early if URL is null
-            if(url == null){
-                return null;
+        shownSummaryVersion = snapshot.getVersion();
+
+        summaryText.setText(getResources().getQuantityString(R.plurals.summary_count,
+                snapshot.getEventCount(), snapshot.getEventCount(),
+                EarthquakeRowModel.Factory.get(this).formatMagnitude(
+                        snapshot.getMaxMagnitude())));
+
+        // List the bands that hold any events, weakest first
+        StringBuilder bands = new StringBuilder();
+        for(int band = 0; band < EarthquakeAggregator.BAND_COUNT; band++) {
+            int count = snapshot.getBandCount(band);
+            if(count == 0) {
+                continue;
             }
-
-            List<Earthquake> earthquakesList = null;
-            earthquakesList = QueryUtils.fetchEarthquakeData(url);
-
-            return earthquakesList;
+            if(bands.length() > 0) {
+                bands.append(getString(R.string.summary_band_separator));
+            }
+            bands.append(getString(R.string.summary_band, band, count));
         }
+        summaryBands.setText(bands);
     }
 
-    private static void updateUI(List<Earthquake> earthquakes){
-        // Clear the adapter of previous earthquake data
-        adapter.clear();
-
-        // If there is a valid list of {@link Earthquake}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
-        if(earthquakes != null && !earthquakes.isEmpty()){
-            adapter.addAll(earthquakes);
-        }
+    /**
+     * Hide the spinner and explain why the list is empty, in case it is.
+     */
+    private void showEmptyState() {
+        progressBar.setVisibility(View.GONE);
+        emptyTV.setText(getString(isConnected
+                ? R.string.no_earthquakes_found
+                : R.string.no_internet_connection));
     }
-
 }
@@ -1,195 +1,241 @@
 package com.example.android.quakereport;
 
-import android.app.Activity;
+import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.support.v4.content.ContextCompat;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import org.w3c.dom.Text;
-
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+public class EarthquakeAdapter extends RecyclerView.Adapter<EarthquakeAdapter.ViewHolder> {
 
     /**
-     * Custom constructor for a new EarthquakeAdapter object.
-     * The context is used to inflate the layout file and the list is the data we want to populate
-     * into the lists.
-     *
-     * @param context
-     * @param earthquakes
+     * Receives taps on a row of the list.
      */
-    public EarthquakeAdapter(Activity context, ArrayList<Earthquake> earthquakes){
-        super(context, 0, earthquakes);
+    public interface OnEarthquakeClickListener {
+        void onEarthquakeClick(Earthquake earthquake);
     }
 
-    @NonNull
-    @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-
-        // Check if the existing view is being reused, otherwise inflate the view
-        View listItemView = convertView;
-        if(listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.earthquake_listing, parent, false);
-        }
-
-        // Get the {@link Earthquake} object located at this position in the list
-        Earthquake currentEq = getItem(position);
+    // Parameters of the 64-bit FNV-1a hash that stable item ids are derived with
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
 
-        // Find the TextView in the earthquake_listing.xml layout with the ID eq_mag
-        TextView magTV = listItemView.findViewById(R.id.eq_mag);
+    private final Context context;
 
-        // Get the magnitude and format it to one decimal point
-        DecimalFormat formatter = new DecimalFormat("0.0");
-        String formattedMagnitude = formatter.format(currentEq.getMagnitude());
-        // Set the magnitude on the TextView
-        magTV.setText(formattedMagnitude);
+    /**
+     * Preformatted rows shown by the list.
+     */
+    private final List<EarthquakeRowModel> rows;
 
-        // Set the proper background color on the magnitude circle.
-        // Fetch the background from the TextView, which is a GradientDrawable.
-        GradientDrawable magnitudeCircle = (GradientDrawable) magTV.getBackground();
+    private OnEarthquakeClickListener clickListener;
 
-        // Get the appropriate background color based on the current earthquake magnitude
-        int magnitudeColor = getMagnitudeColor(currentEq.getMagnitude());
+    /**
+     * Computes list diffs off the UI thread, one at a time.
+     */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
 
-        // Set the color on the magnitude circle
-        magnitudeCircle.setColor(magnitudeColor);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-        // Find the TextView with the ID eq_loc_offset
-        TextView offsetView = listItemView.findViewById(R.id.eq_loc_offset);
+    /**
+     * Bumped on every change to {@link #rows}, so a diff computed against an outdated
+     * snapshot is recognised and recomputed.
+     */
+    private int generation;
 
-        // Parse location offset from the place value or use "Near the" as the offset
-        // place value for the current earthquake as returned in the JSON response
-        final String placeValue = currentEq.getLocation();
+    /**
+     * Custom constructor for a new EarthquakeAdapter object.
+     * The context is used to inflate the layout file and the list is the data we want to populate
+     * into the lists.
+     *
+     * @param context
+     * @param rows
+     */
+    public EarthquakeAdapter(Context context, List<EarthquakeRowModel> rows){
+        this.context = context;
+        this.rows = new ArrayList<>(rows);
+        setHasStableIds(true);
+    }
 
-        // length of the place value string
-        final int placeValueLen = placeValue.length();
+    /**
+     * Set the listener that is told when a row is tapped.
+     */
+    public void setOnEarthquakeClickListener(OnEarthquakeClickListener listener) {
+        clickListener = listener;
+    }
 
-        // index value for the string " of " in the offset string
-        int offsetIndex = placeValue.indexOf(" of ");
+    /**
+     * Remove every earthquake from the list.
+     */
+    public void clear() {
+        generation++;
+        rows.clear();
+        notifyDataSetChanged();
+    }
 
-        // location offset string
-        String locOffset;
+    /**
+     * Append earthquakes to the end of the list, re-binding only the new rows.
+     */
+    public void addAll(List<EarthquakeRowModel> newRows) {
+        generation++;
+        int start = rows.size();
+        rows.addAll(newRows);
+        notifyItemRangeInserted(start, newRows.size());
+    }
 
-        // primary location string
-        String primLoc;
+    /**
+     * Replace the list with a new snapshot. The difference to the current rows is computed on a
+     * background thread and only the inserted, removed, moved and changed rows are notified, so
+     * unchanged rows keep their views and the scroll position is kept.
+     *
+     * @param newRows rows to show
+     */
+    public void submitRows(final List<EarthquakeRowModel> newRows) {
+        final List<EarthquakeRowModel> oldRows = new ArrayList<>(rows);
+        final int expectedGeneration = generation;
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                        new EarthquakeDiffCallback(oldRows, newRows));
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(generation != expectedGeneration) {
+                            // The list changed while the diff was computed; start over
+                            submitRows(newRows);
+                            return;
+                        }
+                        generation++;
+                        rows.clear();
+                        rows.addAll(newRows);
+                        diff.dispatchUpdatesTo(EarthquakeAdapter.this);
+                    }
+                });
+            }
+        });
+    }
 
-        if(offsetIndex != -1){
-            locOffset = placeValue.substring(0, offsetIndex+4);
-        } else {
-            locOffset = "Near the";
-        }
+    public boolean isEmpty() {
+        return getItemCount() == 0;
+    }
 
-        // Display the location offset in the TextView
-        offsetView.setText(locOffset);
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
 
-        // Find the TextView with the ID eq_primary_loc
-        TextView primaryLocView = listItemView.findViewById(R.id.eq_primary_loc);
+    /**
+     * Gets the earthquake at a position of the list.
+     */
+    public Earthquake getItem(int position) {
+        return rows.get(position).getEarthquake();
+    }
 
-        // Parse primary location from the place value
-        if(offsetIndex == -1){
-            primLoc = placeValue;
+    /**
+     * Gets a stable id for a row, so it keeps its id across reloads. The id is a 64-bit hash of
+     * the USGS event id, or of the event's place, time and magnitude if it has none; nothing is
+     * remembered between calls.
+     */
+    @Override
+    public long getItemId(int position) {
+        Earthquake earthquake = rows.get(position).getEarthquake();
+        String eventId = earthquake.getId();
+        long hash;
+        if(eventId != null) {
+            hash = hash(FNV_OFFSET_BASIS, eventId);
         } else {
-            primLoc = placeValue.substring(offsetIndex+4, placeValueLen);
+            hash = hash(FNV_OFFSET_BASIS ^ 1, String.valueOf(earthquake.getLocation()));
+            hash = (hash ^ earthquake.getDateTime()) * FNV_PRIME;
+            hash = (hash ^ Double.doubleToLongBits(earthquake.getMagnitude())) * FNV_PRIME;
         }
-
-        // Display the primary location in the TextView
-        primaryLocView.setText(primLoc);
-
-        // Create a new Date object from the time in milliseconds of the earthquake
-        Date dateObject = new Date(currentEq.getDateTime());
-
-        // Find the TextView with view ID date
-        TextView dateView = listItemView.findViewById(R.id.eq_date);
-
-        // Format the date string
-        String formattedDate = formatDate(dateObject);
-
-        // Display the date in the TextView
-        dateView.setText(formattedDate);
-
-        // Find the TextView with view ID time
-        TextView timeView = listItemView.findViewById(R.id.eq_time);
-
-        // Format the time string
-        String formattedTime = formatTime(dateObject);
-
-        // Display the time in the TextView
-        timeView.setText(formattedTime);
-
-        return listItemView;
+        // NO_ID is -1 and means the row has no stable id
+        return hash == RecyclerView.NO_ID ? 0 : hash;
     }
 
     /**
-     * Return the formatted date string (i.e. "Mar 3, 1984") from a Date object.
+     * Fold the characters of a string into a 64-bit FNV-1a hash.
      */
-    private String formatDate(Date dateObject){
-        SimpleDateFormat dateFormat = new SimpleDateFormat("LLL dd, yyyy");
-        return dateFormat.format(dateObject);
+    private static long hash(long hash, String value) {
+        for(int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
     }
 
-    /**
-     * Return the formatted date string (i.e. "Mar 3, 1984") from a Date object.
-     */
-    private String formatTime(Date dateObject){
-        SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a");
-        return timeFormat.format(dateObject);
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(context).inflate(
+                R.layout.earthquake_listing, parent, false);
+        return new ViewHolder(listItemView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        Metrics.Timer bindTimer = Metrics.start(Metrics.Stage.BIND);
+        try {
+            bindRow(holder, position);
+        } finally {
+            bindTimer.stop();
+        }
+        Metrics.count(Metrics.Counter.ROWS_BOUND, 1);
+    }
+
+    private void bindRow(ViewHolder holder, int position) {
+        // Only assign the values that were formatted off the UI thread
+        EarthquakeRowModel row = rows.get(position);
+        holder.magTV.setText(row.getMagnitude());
+        holder.magnitudeCircle.setColor(row.getMagnitudeColor());
+        holder.offsetView.setText(row.getLocationOffset());
+        holder.primaryLocView.setText(row.getPrimaryLocation());
+        holder.dateView.setText(row.getDate());
+        holder.timeView.setText(row.getTime());
     }
 
     /**
-     * Return color value based on the current earthquake's magnitude.
+     * Holds the views of a row, looked up once when the row is created.
      */
-
-    private int getMagnitudeColor(double magnitude){
-
-        int magInt = (int)magnitude;
-        int magnitudeColor;
-
-        switch(magInt){
-            case 0:
-            case 1:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude1);
-                break;
-            case 2:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude2);
-                break;
-            case 3:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude3);
-                break;
-            case 4:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude4);
-                break;
-            case 5:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude5);
-                break;
-            case 6:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude6);
-                break;
-            case 7:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude7);
-                break;
-            case 8:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude8);
-                break;
-            case 9:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude9);
-                break;
-            default:
-                magnitudeColor = ContextCompat.getColor(getContext(),R.color.magnitude10plus);
-                break;
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView magTV;
+        final GradientDrawable magnitudeCircle;
+        final TextView offsetView;
+        final TextView primaryLocView;
+        final TextView dateView;
+        final TextView timeView;
+
+        ViewHolder(View listItemView) {
+            super(listItemView);
+            // Find the TextViews in the earthquake_listing.xml layout
+            magTV = listItemView.findViewById(R.id.eq_mag);
+            offsetView = listItemView.findViewById(R.id.eq_loc_offset);
+            primaryLocView = listItemView.findViewById(R.id.eq_primary_loc);
+            dateView = listItemView.findViewById(R.id.eq_date);
+            timeView = listItemView.findViewById(R.id.eq_time);
+
+            // The magnitude circle is the TextView's background, which is a GradientDrawable.
+            // Mutate it so recoloring one row does not recolor the rows sharing its state.
+            magnitudeCircle = (GradientDrawable) magTV.getBackground().mutate();
+
+            listItemView.setOnClickListener(this);
         }
 
-        return magnitudeColor;
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if(clickListener != null && position != RecyclerView.NO_POSITION) {
+                clickListener.onEarthquakeClick(getItem(position));
+            }
+        }
     }
 }
-
@@ -0,0 +1,54 @@
+package com.example.android.quakereport;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+/**
+ * Compares two snapshots of the list by USGS event id and update time, so a refresh only
+ * notifies the rows that were inserted, removed, moved or changed.
+ */
+public final class EarthquakeDiffCallback extends DiffUtil.Callback {
+
+    private final List<EarthquakeRowModel> oldRows;
+    private final List<EarthquakeRowModel> newRows;
+
+    /**
+     * Constructs a new callback comparing two snapshots of the list.
+     *
+     * @param oldRows rows currently shown
+     * @param newRows rows to show next
+     */
+    public EarthquakeDiffCallback(List<EarthquakeRowModel> oldRows,
+                                  List<EarthquakeRowModel> newRows) {
+        this.oldRows = oldRows;
+        this.newRows = newRows;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldRows.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newRows.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        Earthquake oldEarthquake = oldRows.get(oldItemPosition).getEarthquake();
+        Earthquake newEarthquake = newRows.get(newItemPosition).getEarthquake();
+        if (oldEarthquake.getId() == null || newEarthquake.getId() == null) {
+            return oldEarthquake == newEarthquake;
+        }
+        return oldEarthquake.getId().equals(newEarthquake.getId());
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        // USGS bumps the update time whenever anything about an event is revised
+        return oldRows.get(oldItemPosition).getEarthquake().getUpdated()
+                == newRows.get(newItemPosition).getEarthquake().getUpdated();
+    }
+}
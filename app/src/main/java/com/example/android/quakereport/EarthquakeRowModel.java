@@ -0,0 +1,164 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.v4.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Everything a row of the list displays for one {@link Earthquake}, already formatted.
+ *
+ * Row models are built by a {@link Factory} on the loader's background thread, so binding a
+ * row on the UI thread only assigns the precomputed strings and colour.
+ */
+public final class EarthquakeRowModel {
+
+    private final Earthquake earthquake;
+    private final String magnitude;
+    private final int magnitudeColor;
+    private final String locationOffset;
+    private final String primaryLocation;
+    private final String date;
+    private final String time;
+
+    private EarthquakeRowModel(Earthquake earthquake, String magnitude, int magnitudeColor,
+                               String locationOffset, String primaryLocation, String date,
+                               String time) {
+        this.earthquake = earthquake;
+        this.magnitude = magnitude;
+        this.magnitudeColor = magnitudeColor;
+        this.locationOffset = locationOffset;
+        this.primaryLocation = primaryLocation;
+        this.date = date;
+        this.time = time;
+    }
+
+    /** Gets the earthquake this row shows. */
+    public Earthquake getEarthquake() {return earthquake;}
+
+    /** Gets the magnitude formatted to one decimal point, e.g. "5.3". */
+    public String getMagnitude() {return magnitude;}
+
+    /** Gets the resolved colour of the magnitude circle. */
+    public int getMagnitudeColor() {return magnitudeColor;}
+
+    /** Gets the location offset, e.g. "74km NW of", or "Near the". */
+    public String getLocationOffset() {return locationOffset;}
+
+    /** Gets the primary location, e.g. "Rumoi, Japan". */
+    public String getPrimaryLocation() {return primaryLocation;}
+
+    /** Gets the formatted date, e.g. "Mar 03, 1984". */
+    public String getDate() {return date;}
+
+    /** Gets the formatted time, e.g. "3:00 PM". */
+    public String getTime() {return time;}
+
+    /**
+     * Builds {@link EarthquakeRowModel}s with formatters and magnitude colours that are created
+     * once per locale and configuration instead of once per row.
+     */
+    public static final class Factory {
+
+        private static Factory sInstance;
+
+        private final String configurationKey;
+        private final EarthquakeFormatter formatter;
+
+        /** Magnitude circle colours, indexed by the whole-number part of the magnitude. */
+        private final int[] magnitudeColors;
+
+        private Factory(Context context, String configurationKey) {
+            this.configurationKey = configurationKey;
+            formatter = new EarthquakeFormatter();
+            magnitudeColors = new int[]{
+                    ContextCompat.getColor(context, R.color.magnitude1),
+                    ContextCompat.getColor(context, R.color.magnitude1),
+                    ContextCompat.getColor(context, R.color.magnitude2),
+                    ContextCompat.getColor(context, R.color.magnitude3),
+                    ContextCompat.getColor(context, R.color.magnitude4),
+                    ContextCompat.getColor(context, R.color.magnitude5),
+                    ContextCompat.getColor(context, R.color.magnitude6),
+                    ContextCompat.getColor(context, R.color.magnitude7),
+                    ContextCompat.getColor(context, R.color.magnitude8),
+                    ContextCompat.getColor(context, R.color.magnitude9),
+                    ContextCompat.getColor(context, R.color.magnitude10plus)};
+        }
+
+        /**
+         * Gets the factory for the context's current locale and configuration, reusing the
+         * previous one if neither has changed.
+         */
+        public static synchronized Factory get(Context context) {
+            Configuration configuration = context.getResources().getConfiguration();
+            String key = Locale.getDefault() + "/" + configuration.uiMode;
+            if (sInstance == null || !sInstance.configurationKey.equals(key)) {
+                sInstance = new Factory(context.getApplicationContext(), key);
+            }
+            return sInstance;
+        }
+
+        /**
+         * Build the row models for a list of earthquakes.
+         */
+        public List<EarthquakeRowModel> createAll(List<Earthquake> earthquakes) {
+            List<EarthquakeRowModel> rows = new ArrayList<>(earthquakes.size());
+            for (Earthquake earthquake : earthquakes) {
+                rows.add(create(earthquake));
+            }
+            return rows;
+        }
+
+        /**
+         * Build the row model for an earthquake.
+         */
+        public EarthquakeRowModel create(Earthquake earthquake) {
+            return new EarthquakeRowModel(earthquake,
+                    formatMagnitude(earthquake.getMagnitude()),
+                    getMagnitudeColor(earthquake.getMagnitude()),
+                    formatLocationOffset(earthquake.getLocationOffset()),
+                    earthquake.getPrimaryLocation(),
+                    formatDate(earthquake.getDateTime()),
+                    formatTime(earthquake.getDateTime()));
+        }
+
+        /**
+         * Return the magnitude formatted to one decimal point.
+         */
+        public String formatMagnitude(double magnitude) {
+            return formatter.formatMagnitude(magnitude);
+        }
+
+        /**
+         * Return the formatted date string (i.e. "Mar 3, 1984") from a time in milliseconds.
+         */
+        public String formatDate(long timeInMillis) {
+            return formatter.formatDate(timeInMillis);
+        }
+
+        /**
+         * Return the formatted time string (i.e. "4:30 PM") from a time in milliseconds.
+         */
+        public String formatTime(long timeInMillis) {
+            return formatter.formatTime(timeInMillis);
+        }
+
+        /**
+         * Return color value based on the earthquake's magnitude.
+         */
+        public int getMagnitudeColor(double magnitude) {
+            int magInt = (int) magnitude;
+            return magnitudeColors[Math.max(0, Math.min(magnitudeColors.length - 1, magInt))];
+        }
+
+        /**
+         * Return the offset of a place that was already split, or "Near the" if it has none.
+         */
+        public String formatLocationOffset(String locationOffset) {
+            return formatter.formatLocationOffset(locationOffset);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.android.quakereport;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local SQLite store of USGS events, keyed by event id.
+ *
+ * The list is always read from this store, so it shows up without a network round trip and is
+ * still there when the device is offline. {@link EarthquakeSync} keeps it up to date by
+ * upserting the events that changed on the server since the last complete sync.
+ *
+ * The store also keeps an {@link EarthquakeAggregator} of every stored event for the summary
+ * above the list. It is filled from the table once, and from then on fed each batch as it is
+ * upserted, so the summary never has to scan the table again.
+ */
+public final class EarthquakeStore {
+
+    private static final String DATABASE_NAME = "earthquakes.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE_EARTHQUAKES = "earthquakes";
+    private static final String COLUMN_ID = "event_id";
+    private static final String COLUMN_MAG = "mag";
+    private static final String COLUMN_PLACE = "place";
+    private static final String COLUMN_TIME = "time";
+    private static final String COLUMN_URL = "url";
+    private static final String COLUMN_UPDATED = "updated";
+    private static final String COLUMN_LATITUDE = "latitude";
+    private static final String COLUMN_LONGITUDE = "longitude";
+    private static final String COLUMN_DEPTH = "depth";
+
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_VALUE = "value";
+    private static final String STATE_SYNCED_UNTIL = "synced_until";
+
+    /** Value of the order-by setting that sorts by time; anything else sorts by magnitude. */
+    private static final String ORDER_BY_TIME = "time";
+
+    private static EarthquakeStore sInstance;
+
+    private final SQLiteOpenHelper dbHelper;
+
+    // Summary of every stored event, filled from the table on first use
+    private final EarthquakeAggregator aggregator = new EarthquakeAggregator(Clock.SYSTEM);
+    private boolean aggregatorFilled;
+
+    private EarthquakeStore(Context context) {
+        dbHelper = new DbHelper(context);
+    }
+
+    /**
+     * Gets the store shared by the whole app.
+     */
+    public static synchronized EarthquakeStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Read one page of earthquakes from the store.
+     *
+     * @param minMagnitude smallest magnitude to include
+     * @param orderBy "time" for most recent first, otherwise largest magnitude first
+     * @param offset number of matching earthquakes to skip
+     * @param limit maximum number of earthquakes to return
+     * @return the earthquakes of the page, possibly empty
+     */
+    public List<Earthquake> query(double minMagnitude, String orderBy, int offset, int limit) {
+        Cursor cursor = query(minMagnitude, orderBy, offset, limit,
+                new String[]{COLUMN_ID, COLUMN_MAG, COLUMN_PLACE, COLUMN_TIME, COLUMN_URL,
+                        COLUMN_UPDATED, COLUMN_LATITUDE, COLUMN_LONGITUDE, COLUMN_DEPTH});
+
+        List<Earthquake> earthquakes = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                earthquakes.add(new Earthquake(cursor.getString(0), cursor.getDouble(1),
+                        cursor.getString(2), cursor.getLong(3), cursor.getString(4),
+                        cursor.getLong(5), getDouble(cursor, 6), getDouble(cursor, 7),
+                        getDouble(cursor, 8)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Read matching earthquakes straight into a columnar {@link EarthquakeTable}, without
+     * creating an {@link Earthquake} per row. Suited to large result sets.
+     *
+     * @param minMagnitude smallest magnitude to include
+     * @param orderBy "time" for most recent first, otherwise largest magnitude first
+     * @param limit maximum number of earthquakes to return
+     * @return table of the matching earthquakes, possibly empty
+     */
+    public EarthquakeTable queryTable(double minMagnitude, String orderBy, int limit) {
+        Cursor cursor = query(minMagnitude, orderBy, 0, limit,
+                new String[]{COLUMN_ID, COLUMN_MAG, COLUMN_PLACE, COLUMN_TIME, COLUMN_UPDATED,
+                        COLUMN_LATITUDE, COLUMN_LONGITUDE, COLUMN_DEPTH});
+        EarthquakeTable table = new EarthquakeTable(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                // The URL is left out; the table derives it from the event id when asked
+                table.add(cursor.getString(0), cursor.getDouble(1), cursor.getString(2),
+                        cursor.getLong(3), null, cursor.getLong(4), getDouble(cursor, 5),
+                        getDouble(cursor, 6), getDouble(cursor, 7));
+            }
+        } finally {
+            cursor.close();
+        }
+        return table;
+    }
+
+    /**
+     * Read a nullable REAL column, mapping NULL to NaN.
+     */
+    private static double getDouble(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+
+    private Cursor query(double minMagnitude, String orderBy, int offset, int limit,
+                         String[] columns) {
+        String order = ORDER_BY_TIME.equals(orderBy)
+                ? COLUMN_TIME + " DESC"
+                : COLUMN_MAG + " DESC, " + COLUMN_TIME + " DESC";
+
+        return dbHelper.getReadableDatabase().query(TABLE_EARTHQUAKES, columns,
+                COLUMN_MAG + " >= ?", new String[]{String.valueOf(minMagnitude)},
+                null, null, order, offset + "," + limit);
+    }
+
+    /**
+     * Gets the number of events in the store.
+     */
+    public long count() {
+        return DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), TABLE_EARTHQUAKES);
+    }
+
+    /**
+     * Gets the summary statistics of every stored event. The first call reads the magnitude
+     * and time of every row, so it must not run on the main thread; later calls only copy the
+     * counters.
+     */
+    public EarthquakeAggregator.Snapshot summarize() {
+        synchronized (aggregator) {
+            if (!aggregatorFilled) {
+                fillAggregator();
+                aggregatorFilled = true;
+            }
+            return aggregator.snapshot();
+        }
+    }
+
+    private void fillAggregator() {
+        Cursor cursor = dbHelper.getReadableDatabase().query(TABLE_EARTHQUAKES,
+                new String[]{COLUMN_ID, COLUMN_MAG, COLUMN_TIME},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                aggregator.add(cursor.getString(0), cursor.getDouble(1), cursor.getLong(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets the server time up to which every update has been synced, which is where the next
+     * delta sync picks up.
+     *
+     * This is kept apart from the update times of the stored events: the live poller writes
+     * recent events outside of syncs, and a sync that failed or was cut short stores recent
+     * events before older ones, so the newest update time in the table says nothing about
+     * what older updates have been fetched.
+     *
+     * @return server time in milliseconds, or 0 if the store has never been synced
+     */
+    public long getSyncedUntil() {
+        Cursor cursor = dbHelper.getReadableDatabase().query(TABLE_SYNC_STATE,
+                new String[]{COLUMN_VALUE}, COLUMN_NAME + " = ?",
+                new String[]{STATE_SYNCED_UNTIL}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Record that every update up to the given server time is in the store. Only a sync that
+     * fetched all of them may call this.
+     *
+     * @param serverTime server time in milliseconds
+     */
+    public void setSyncedUntil(long serverTime) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME, STATE_SYNCED_UNTIL);
+        values.put(COLUMN_VALUE, serverTime);
+        dbHelper.getWritableDatabase().insertWithOnConflict(TABLE_SYNC_STATE, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Insert or replace a batch of events in a single transaction. Events without an id
+     * cannot be matched against later updates and are skipped.
+     *
+     * @param earthquakes events to store
+     */
+    public void upsert(List<Earthquake> earthquakes) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO "
+                + TABLE_EARTHQUAKES + " (" + COLUMN_ID + ", " + COLUMN_MAG + ", " + COLUMN_PLACE
+                + ", " + COLUMN_TIME + ", " + COLUMN_URL + ", " + COLUMN_UPDATED
+                + ", " + COLUMN_LATITUDE + ", " + COLUMN_LONGITUDE + ", " + COLUMN_DEPTH
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Earthquake earthquake : earthquakes) {
+                if (earthquake.getId() == null) {
+                    continue;
+                }
+                statement.bindString(1, earthquake.getId());
+                statement.bindDouble(2, earthquake.getMagnitude());
+                statement.bindString(3, earthquake.getLocation());
+                statement.bindLong(4, earthquake.getDateTime());
+                statement.bindString(5, earthquake.getWebsite());
+                statement.bindLong(6, earthquake.getUpdated());
+                bindDouble(statement, 7, earthquake.getLatitude());
+                bindDouble(statement, 8, earthquake.getLongitude());
+                bindDouble(statement, 9, earthquake.getDepth());
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+
+        // Fed only once the batch is committed. Holding the lock keeps a first fill that read a
+        // row before this batch replaced it from undoing the revision.
+        synchronized (aggregator) {
+            for (Earthquake earthquake : earthquakes) {
+                if (earthquake.getId() != null) {
+                    aggregator.add(earthquake);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bind a nullable REAL parameter, mapping NaN to NULL.
+     */
+    private static void bindDouble(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static final class DbHelper extends SQLiteOpenHelper {
+
+        private DbHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_EARTHQUAKES + " ("
+                    + COLUMN_ID + " TEXT PRIMARY KEY NOT NULL, "
+                    + COLUMN_MAG + " REAL NOT NULL, "
+                    + COLUMN_PLACE + " TEXT NOT NULL, "
+                    + COLUMN_TIME + " INTEGER NOT NULL, "
+                    + COLUMN_URL + " TEXT NOT NULL, "
+                    + COLUMN_UPDATED + " INTEGER NOT NULL, "
+                    + COLUMN_LATITUDE + " REAL, "
+                    + COLUMN_LONGITUDE + " REAL, "
+                    + COLUMN_DEPTH + " REAL)");
+
+            // Both list orders and the minimum magnitude filter are served from these indexes
+            db.execSQL("CREATE INDEX idx_" + TABLE_EARTHQUAKES + "_" + COLUMN_TIME
+                    + " ON " + TABLE_EARTHQUAKES + " (" + COLUMN_TIME + ")");
+            db.execSQL("CREATE INDEX idx_" + TABLE_EARTHQUAKES + "_" + COLUMN_MAG
+                    + " ON " + TABLE_EARTHQUAKES + " (" + COLUMN_MAG + ", " + COLUMN_TIME + ")");
+            db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                    + COLUMN_NAME + " TEXT PRIMARY KEY NOT NULL, "
+                    + COLUMN_VALUE + " INTEGER NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // The store is only a cache of server data, so it can simply be rebuilt
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_EARTHQUAKES);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+            onCreate(db);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the {@link EarthquakeStore} up to date with the USGS.
+ *
+ * Only events updated since the last complete sync are requested, using the USGS updatedafter
+ * parameter. A sync first asks the count endpoint how many events changed, which costs a few
+ * bytes and ends the sync when nothing did. It then fetches them oldest first, a page of
+ * 20000 at a time. Events are written to the store in batches while they are
+ * being decoded, so a large first sync never holds the whole response in memory. The store only
+ * keeps fields the CSV format carries, so syncs request CSV, which is about a third of the size
+ * of the same events as GeoJSON.
+ *
+ * Where the next sync starts is the server's time at the count, and it is only stored once
+ * every page has been written. A sync that fails or is cancelled keeps the batches it wrote,
+ * and the next one fetches the same updates again rather than skip the ones it missed.
+ */
+public final class EarthquakeSync {
+
+    private static final String USGS_REQUEST_URL =
+            "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    private static final String USGS_COUNT_URL =
+            "https://earthquake.usgs.gov/fdsnws/event/1/count";
+
+    /** Format syncs are requested in; the response is decoded by whichever format it is in. */
+    private static final String SYNC_FORMAT = CsvDecoder.FORMAT;
+
+    /** Largest number of events the USGS returns for a single query. */
+    private static final int SYNC_LIMIT = 20000;
+
+    /** Number of events written per transaction. */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link EarthquakeSync}
+     * object.
+     */
+    private EarthquakeSync() {
+    }
+
+    /**
+     * Fetch the events that changed since the last sync and upsert them into the store.
+     *
+     * @param store store to bring up to date
+     * @return number of events written, or -1 if the sync failed
+     */
+    public static int sync(EarthquakeStore store) {
+        return sync(store, null);
+    }
+
+    /**
+     * Fetch the events that changed since the last sync and upsert them into the store,
+     * stopping as soon as the sync is cancelled. Batches written before that are kept.
+     *
+     * @param store store to bring up to date
+     * @param cancellation cancels the sync, or null if it cannot be cancelled
+     * @return number of events written, 0 if nothing changed, or -1 if the sync failed or was
+     *         cancelled
+     */
+    public static int sync(EarthquakeStore store, Cancellation cancellation) {
+        long syncedUntil = store.getSyncedUntil();
+        QueryUtils.Count changes = QueryUtils.fetchCountAndTime(buildCountUrl(syncedUntil),
+                cancellation);
+        if (changes == null) {
+            return -1;
+        }
+
+        // The pages are ordered oldest first, so events that change while they are fetched
+        // keep their place, and events that are new since the count only add to the end
+        int written = 0;
+        for (int offset = 1; changes.getCount() > 0; offset += SYNC_LIMIT) {
+            int page = syncPage(store, buildSyncUrl(syncedUntil, offset), cancellation);
+            if (page < 0) {
+                return -1;
+            }
+            written += page;
+            // A short page can have lost rows to the decoder, so only stop past the count
+            if (page < SYNC_LIMIT && offset - 1 + SYNC_LIMIT >= changes.getCount()) {
+                break;
+            }
+        }
+
+        // Updates made after the count are fetched by the next sync
+        store.setSyncedUntil(changes.getServerTime());
+        return written;
+    }
+
+    /**
+     * Fetch one page of a sync and upsert its events in batches.
+     *
+     * @return number of events written, or -1 if the page could not be fetched to the end
+     */
+    private static int syncPage(final EarthquakeStore store, String requestUrl,
+                                Cancellation cancellation) {
+        final List<Earthquake> batch = new ArrayList<>(BATCH_SIZE);
+        final int[] written = {0};
+
+        boolean success = QueryUtils.fetchEarthquakeData(requestUrl,
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        batch.add(earthquake);
+                        if (batch.size() == BATCH_SIZE) {
+                            store.upsert(batch);
+                            written[0] += batch.size();
+                            batch.clear();
+                        }
+                    }
+                }, cancellation);
+
+        // Keep what was decoded before a failure; the next sync fetches it again
+        if (!batch.isEmpty()) {
+            store.upsert(batch);
+            written[0] += batch.size();
+        }
+        return success ? written[0] : -1;
+    }
+
+    /**
+     * Fetch every event of a past time range and upsert it into the store, e.g. to analyse a
+     * whole year of activity. The range is fetched in concurrent windows by a
+     * {@link ShardedFetcher}.
+     *
+     * @param store store to write to
+     * @param fetcher engine that fetches the range
+     * @param startTime earliest time to include, in milliseconds
+     * @param endTime time to stop before, in milliseconds
+     * @param minMagnitude smallest magnitude to include
+     * @return number of events written, or -1 if the range could not be fetched
+     */
+    public static int backfill(EarthquakeStore store, ShardedFetcher fetcher, long startTime,
+                               long endTime, double minMagnitude) {
+        List<Earthquake> earthquakes = fetcher.fetch(startTime, endTime, minMagnitude, "time");
+        if (earthquakes == null) {
+            return -1;
+        }
+        for (int start = 0; start < earthquakes.size(); start += BATCH_SIZE) {
+            store.upsert(earthquakes.subList(start,
+                    Math.min(earthquakes.size(), start + BATCH_SIZE)));
+        }
+        return earthquakes.size();
+    }
+
+    /**
+     * Build the request for one page of the events updated after the given time, or of the
+     * server's default time window when nothing has been synced yet.
+     *
+     * @param syncedUntil server time of the last complete sync, or 0
+     * @param offset 1-based position of the first event of the page
+     */
+    static String buildSyncUrl(long syncedUntil, int offset) {
+        QueryUrlBuilder uriBuilder = new QueryUrlBuilder(USGS_REQUEST_URL);
+        uriBuilder.appendQueryParameter("format", SYNC_FORMAT);
+        uriBuilder.appendQueryParameter("eventtype", "earthquake");
+        uriBuilder.appendQueryParameter("orderby", "time-asc");
+        uriBuilder.appendQueryParameter("offset", String.valueOf(offset));
+        uriBuilder.appendQueryParameter("limit", String.valueOf(SYNC_LIMIT));
+        if (syncedUntil > 0) {
+            uriBuilder.appendQueryParameter("updatedafter",
+                    QueryUrlBuilder.formatIsoTime(syncedUntil));
+        }
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Build the request counting the events a sync from the given time would fetch.
+     *
+     * @param syncedUntil server time of the last complete sync, or 0
+     */
+    static String buildCountUrl(long syncedUntil) {
+        QueryUrlBuilder uriBuilder = new QueryUrlBuilder(USGS_COUNT_URL);
+        uriBuilder.appendQueryParameter("eventtype", "earthquake");
+        if (syncedUntil > 0) {
+            uriBuilder.appendQueryParameter("updatedafter",
+                    QueryUrlBuilder.formatIsoTime(syncedUntil));
+        }
+        return uriBuilder.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * Runs the background sync when one of the jobs of {@link SyncScheduler} is started. A job
+ * that finds the sync is not due, e.g. because the app or the other job synced since it was
+ * scheduled, finishes without touching the network.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class EarthquakeSyncJobService extends JobService {
+
+    private static final String LOG_TAG = EarthquakeSyncJobService.class.getSimpleName();
+
+    private final Handler handler = new Handler();
+
+    // Syncs in progress, by job id
+    private final SparseArray<LoadPipeline<String, Integer>.Subscription> running =
+            new SparseArray<>();
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        // Route the core engine's logging, tracing and response caching to the platform, as
+        // the process may have been started just for this job
+        AndroidPlatform.install(this);
+
+        final SyncScheduler scheduler = SyncScheduler.get(this);
+        if(!scheduler.shouldSyncInBackground()) {
+            // Reschedule once this job has finished; rescheduling it now would stop it
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    scheduler.schedule();
+                }
+            });
+            return false;
+        }
+
+        running.put(params.getJobId(), scheduler.sync(new LoadPipeline.Callback<Integer>() {
+            @Override
+            public void onLoaded(Integer written) {
+                running.remove(params.getJobId());
+                // The policy reschedules both jobs, so the system need not retry this one
+                jobFinished(params, false);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                running.remove(params.getJobId());
+                Log.e(LOG_TAG, "Background sync failed", e);
+                jobFinished(params, false);
+            }
+        }));
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints no longer hold, e.g. the device left Wi-Fi. Batches written so far
+        // are kept, but the retry fetches the same updates again, as the sync did not finish.
+        LoadPipeline<String, Integer>.Subscription subscription = running.get(params.getJobId());
+        running.remove(params.getJobId());
+        if(subscription != null) {
+            subscription.cancel();
+        }
+        return true;
+    }
+}
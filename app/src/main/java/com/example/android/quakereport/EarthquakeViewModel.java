@@ -0,0 +1,589 @@
+package com.example.android.quakereport;
+
+import android.app.Application;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the list of earthquakes shown by {@link EarthquakeActivity} and keeps it across
+ * configuration changes.
+ *
+ * Pages are read from the local store through a process-wide {@link LoadPipeline}, so
+ * identical loads requested at the same time share one run. The store is synced through
+ * {@link SyncScheduler}, which shares a run with a background sync in flight. Loads this model
+ * no longer needs, because the query changed or the screen went away, are cancelled: a page
+ * load stops between its stages, and a sync aborts its socket read and its decoder. The
+ * activity observes {@link #getList()}, which only delivers while it is started.
+ *
+ * {@link #getSummary()} holds the statistics of every stored event for the header above the
+ * list. They are taken from the store's aggregator whenever the list is reloaded, which costs
+ * a copy of its counters rather than a scan of the events.
+ */
+public class EarthquakeViewModel extends AndroidViewModel {
+
+    private static final String LOG_TAG = EarthquakeViewModel.class.getSimpleName();
+
+    // Number of pages kept in memory, and how long before a kept page is refreshed
+    private static final int RESULT_CACHE_SIZE = 16;
+    private static final long RESULT_CACHE_TTL_MILLIS = 5 * 60 * 1000;
+
+    // Largest superset the planner holds in memory
+    private static final int SUPERSET_LIMIT = 20000;
+
+    // Binary copy of the last first page, shown on the next launch before the store is read
+    private static final String SNAPSHOT_FILE = "first-page.snapshot";
+
+    // Prefix of the summary load's key, followed by the store version
+    private static final String SUMMARY_KEY = "summary";
+
+    // Runs page loads and summaries; two threads, so the first summary, which reads the whole
+    // store, does not hold up the list
+    private static final Executor WORK_EXECUTOR = Executors.newFixedThreadPool(2);
+
+    private static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    private static final LoadPipeline<String, Page> pages =
+            new LoadPipeline<>(WORK_EXECUTOR, MAIN_THREAD);
+
+    private static final LoadPipeline<String, EarthquakeAggregator.Snapshot> summaries =
+            new LoadPipeline<>(WORK_EXECUTOR, MAIN_THREAD);
+
+    // Pages loaded recently, shared by every model in the process, so switching back to
+    // recently used settings shows the list instantly
+    private static final QueryResultCache<List<EarthquakeRowModel>> resultCache =
+            new QueryResultCache<>(RESULT_CACHE_SIZE, RESULT_CACHE_TTL_MILLIS, Clock.SYSTEM);
+
+    // Sizes pages from the measured load time; shared so it outlives the model
+    private static final PageSizer pageSizer = new PageSizer();
+
+    // Answers pages from an in-memory superset of the store when it covers the query
+    private static QueryPlanner planner;
+
+    // Bumped whenever the store changes, so a load started before the change is never shared
+    // with one requested after it
+    private static int storeVersion;
+
+    private final File snapshotFile;
+    private final MutableLiveData<ListState> list = new MutableLiveData<>();
+    private final MutableLiveData<EarthquakeAggregator.Snapshot> summary =
+            new MutableLiveData<>();
+
+    // Query the list shows, and its rows so far
+    private double minMagnitude;
+    private String orderBy;
+    private String queryKey;
+    private List<EarthquakeRowModel> rows = Collections.emptyList();
+    private int nextOffset;
+    private boolean hasMorePages;
+
+    private LoadPipeline<String, Page>.Subscription firstPageLoad;
+    private LoadPipeline<String, Page>.Subscription nextPageLoad;
+    private LoadPipeline<String, Integer>.Subscription syncLoad;
+    private LoadPipeline<String, EarthquakeAggregator.Snapshot>.Subscription summaryLoad;
+    private boolean syncRequested;
+
+    public EarthquakeViewModel(Application application) {
+        super(application);
+        snapshotFile = new File(application.getCacheDir(), SNAPSHOT_FILE);
+    }
+
+    /**
+     * Gets the list to show. Each value holds every row loaded so far.
+     */
+    public LiveData<ListState> getList() {
+        return list;
+    }
+
+    /**
+     * Gets the statistics of every stored event, whatever the query. Updated whenever the
+     * list is reloaded.
+     */
+    public LiveData<EarthquakeAggregator.Snapshot> getSummary() {
+        return summary;
+    }
+
+    /**
+     * Show the list for a query. Nothing is reloaded if the list already shows it; otherwise
+     * the loads for the previous query are cancelled.
+     *
+     * @param minMagnitude smallest magnitude to include
+     * @param orderBy value of the order-by setting
+     */
+    public void setQuery(double minMagnitude, String orderBy) {
+        String key = queryKey(minMagnitude, orderBy);
+        if(key.equals(queryKey)) {
+            return;
+        }
+        this.minMagnitude = minMagnitude;
+        this.orderBy = orderBy;
+        this.queryKey = key;
+        reload();
+    }
+
+    /**
+     * Load the first page of the list again, e.g. after the store changed. Rows on screen stay
+     * until the new page replaces them.
+     */
+    public void reload() {
+        if(queryKey == null) {
+            return;
+        }
+        cancel(firstPageLoad);
+        // A page fetched for the previous list would no longer line up with this one
+        cancel(nextPageLoad);
+        firstPageLoad = null;
+        nextPageLoad = null;
+        refreshSummary();
+
+        int limit = pageSizer.getPageSize();
+        QueryResultCache.Entry<List<EarthquakeRowModel>> cached =
+                resultCache.get(cacheKey(queryKey, 0, limit));
+        if(cached != null) {
+            // Show the cached page right away, and keep it if it is recent enough
+            showFirstPage(cached.getValue(), limit, cached.isStale());
+            if(!cached.isStale()) {
+                return;
+            }
+        } else if(rows.isEmpty()) {
+            // First load since launch: show the snapshot of the last first page while the
+            // store is read, unless the settings have changed since it was saved
+            List<EarthquakeRowModel> snapshotRows = readSnapshot();
+            if(snapshotRows != null) {
+                showFirstPage(snapshotRows, limit, true);
+            }
+        }
+
+        firstPageLoad = pages.submit(pageKey(0, limit),
+                pageTask(getApplication(), minMagnitude, orderBy, 0, limit),
+                new LoadPipeline.Callback<Page>() {
+                    @Override
+                    public void onLoaded(Page page) {
+                        firstPageLoad = null;
+                        onPageMeasured(page);
+                        showFirstPage(page.rows, page.limit, false);
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        firstPageLoad = null;
+                        Log.e(LOG_TAG, "Could not load the list", e);
+                        publish(-1);
+                    }
+                });
+        publish(-1);
+    }
+
+    /**
+     * Start loading the next page in the background, unless one is already on its way or the
+     * last page has been reached.
+     */
+    public void loadNextPage() {
+        if(nextPageLoad != null || !hasMorePages || rows.isEmpty()) {
+            return;
+        }
+        int offset = nextOffset;
+        int limit = pageSizer.getPageSize();
+        nextPageLoad = pages.submit(pageKey(offset, limit),
+                pageTask(getApplication(), minMagnitude, orderBy, offset, limit),
+                new LoadPipeline.Callback<Page>() {
+                    @Override
+                    public void onLoaded(Page page) {
+                        nextPageLoad = null;
+                        onPageMeasured(page);
+                        // Ignore pages that no longer line up with the list
+                        if(page.offset == nextOffset) {
+                            appendPage(page);
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        nextPageLoad = null;
+                        Log.e(LOG_TAG, "Could not load the next page", e);
+                    }
+                });
+    }
+
+    /**
+     * Bring the local store up to date with the USGS, once per model, and reload the list
+     * when anything changed. Nothing is fetched while the background sync keeps the store
+     * fresh.
+     */
+    public void requestSync() {
+        if(syncRequested) {
+            return;
+        }
+        syncRequested = true;
+        SyncScheduler scheduler = SyncScheduler.get(getApplication());
+        if(scheduler.isFresh()) {
+            return;
+        }
+        syncLoad = scheduler.sync(new LoadPipeline.Callback<Integer>() {
+            @Override
+            public void onLoaded(Integer written) {
+                syncLoad = null;
+                if(written > 0) {
+                    // Re-read the first page now that the store holds newer events; the sync
+                    // has already dropped the pages cached before
+                    reload();
+                } else {
+                    publish(-1);
+                }
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                syncLoad = null;
+                Log.e(LOG_TAG, "Sync failed", e);
+                publish(-1);
+            }
+        });
+        publish(-1);
+    }
+
+    @Override
+    protected void onCleared() {
+        // Nobody will see these results any more
+        cancel(firstPageLoad);
+        cancel(nextPageLoad);
+        cancel(syncLoad);
+        cancel(summaryLoad);
+        firstPageLoad = null;
+        nextPageLoad = null;
+        syncLoad = null;
+        summaryLoad = null;
+    }
+
+    /**
+     * Drop every cached page, e.g. after the local store changed. Can be called from any
+     * thread.
+     */
+    static void invalidateResults() {
+        synchronized (EarthquakeViewModel.class) {
+            storeVersion++;
+            // Cleared under the same lock page loads put their rows under, so a page read
+            // before the change cannot land in the cache after it was cleared
+            resultCache.clear();
+            if(planner != null) {
+                planner.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Read and format the first page of a query without showing it, e.g. right after a
+     * background sync. The page is kept in the result cache and saved as the snapshot the next
+     * launch shows. Runs on the calling thread.
+     *
+     * @throws IOException if the prefetch was cancelled
+     */
+    static void prefetchFirstPage(Context context, double minMagnitude, String orderBy,
+                                  Cancellation cancellation) throws IOException {
+        pageTask(context, minMagnitude, orderBy, 0, pageSizer.getPageSize()).load(cancellation);
+    }
+
+    /**
+     * Gets the process-wide cache of loaded pages, e.g. to read its counters.
+     */
+    static QueryResultCache<List<EarthquakeRowModel>> getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Gets the current page size.
+     */
+    static int getPageSize() {
+        return pageSizer.getPageSize();
+    }
+
+    /**
+     * Take a fresh snapshot of the store's statistics. The first one reads the store, so it is
+     * always taken on the work executor.
+     */
+    private void refreshSummary() {
+        cancel(summaryLoad);
+        final EarthquakeStore store = EarthquakeStore.get(getApplication());
+        String key;
+        synchronized (EarthquakeViewModel.class) {
+            key = SUMMARY_KEY + "#" + storeVersion;
+        }
+        summaryLoad = summaries.submit(key,
+                new LoadPipeline.Task<EarthquakeAggregator.Snapshot>() {
+            @Override
+            public EarthquakeAggregator.Snapshot load(Cancellation cancellation) {
+                return store.summarize();
+            }
+        }, new LoadPipeline.Callback<EarthquakeAggregator.Snapshot>() {
+            @Override
+            public void onLoaded(EarthquakeAggregator.Snapshot snapshot) {
+                summaryLoad = null;
+                summary.setValue(snapshot);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                summaryLoad = null;
+                Log.e(LOG_TAG, "Could not summarize the store", e);
+            }
+        });
+    }
+
+    private void showFirstPage(List<EarthquakeRowModel> firstPage, int limit,
+                               boolean provisional) {
+        rows = firstPage;
+        nextOffset = firstPage.size();
+        hasMorePages = firstPage.size() >= limit;
+        if(!provisional) {
+            // The cached or snapshot copy shown before is replaced; its next page may not
+            // line up with this one
+            cancel(nextPageLoad);
+            nextPageLoad = null;
+        }
+        publish(-1);
+    }
+
+    private void appendPage(Page page) {
+        int start = rows.size();
+        List<EarthquakeRowModel> appended = new ArrayList<>(start + page.rows.size());
+        appended.addAll(rows);
+        appended.addAll(page.rows);
+        rows = appended;
+        nextOffset += page.rows.size();
+
+        // A short page means the store has nothing more for this query
+        hasMorePages = page.rows.size() >= page.limit;
+        publish(start);
+    }
+
+    private void publish(int appendedFrom) {
+        list.setValue(new ListState(Collections.unmodifiableList(rows), appendedFrom,
+                firstPageLoad != null, syncLoad != null));
+    }
+
+    private static void onPageMeasured(Page page) {
+        // Let the load time of this page decide the size of the next one
+        pageSizer.onPageLoaded(page.limit, page.elapsedMillis);
+    }
+
+    private static void cancel(LoadPipeline<?, ?>.Subscription subscription) {
+        if(subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Build the key of a query from its normalised parameters, so that e.g. "2", "2.0" and
+     * "2.00" as minimum magnitude share an entry.
+     */
+    private static String queryKey(double minMagnitude, String orderBy) {
+        return "minmag=" + minMagnitude
+                + "&orderby=" + (orderBy == null ? "" : orderBy.trim().toLowerCase(Locale.US));
+    }
+
+    /**
+     * Build the cache key of a page from its normalised query parameters.
+     */
+    private static String cacheKey(String queryKey, int offset, int limit) {
+        return queryKey
+                + "&offset=" + offset
+                + "&limit=" + limit;
+    }
+
+    /**
+     * Build the key a page load is shared under, which also names the state of the store.
+     */
+    private String pageKey(int offset, int limit) {
+        synchronized (EarthquakeViewModel.class) {
+            return cacheKey(queryKey, offset, limit) + "#" + storeVersion;
+        }
+    }
+
+    /**
+     * Gets the process-wide query planner, which reads its supersets from the local store.
+     */
+    private static synchronized QueryPlanner getPlanner(Context context) {
+        if(planner == null) {
+            final EarthquakeStore store = EarthquakeStore.get(context);
+            planner = new QueryPlanner(new QueryPlanner.Source() {
+                @Override
+                public EarthquakeTable fetch(QueryPlanner.Query query, int limit) {
+                    // Sorted like the query, so the rows the limit cuts off come last in it
+                    return store.queryTable(query.minMagnitude, query.orderBy, limit);
+                }
+
+                @Override
+                public List<Earthquake> fetchPage(QueryPlanner.Query query, int offset,
+                                                  int limit) {
+                    return store.query(query.minMagnitude, query.orderBy, offset, limit);
+                }
+            }, SUPERSET_LIMIT);
+        }
+        return planner;
+    }
+
+    /**
+     * Create the work that reads one page from the store and formats its rows. It holds no
+     * reference to the model, so a load shared with another model does not keep this one.
+     */
+    private static LoadPipeline.Task<Page> pageTask(final Context context,
+                                                    final double minMagnitude,
+                                                    final String orderBy, final int offset,
+                                                    final int limit) {
+        final File snapshotFile = new File(context.getCacheDir(), SNAPSHOT_FILE);
+        return new LoadPipeline.Task<Page>() {
+            @Override
+            public Page load(Cancellation cancellation) throws IOException {
+                int version;
+                synchronized (EarthquakeViewModel.class) {
+                    version = storeVersion;
+                }
+                long start = SystemClock.elapsedRealtime();
+                List<Earthquake> earthquakesList;
+                Metrics.Timer queryTimer = Metrics.start(Metrics.Stage.STORE_QUERY);
+                try {
+                    earthquakesList = getPlanner(context).query(
+                            new QueryPlanner.Query(minMagnitude, orderBy), offset, limit);
+                } finally {
+                    queryTimer.stop();
+                }
+                long elapsedMillis = SystemClock.elapsedRealtime() - start;
+                cancellation.throwIfCancelled();
+
+                String queryKey = queryKey(minMagnitude, orderBy);
+                if(offset == 0) {
+                    writeSnapshot(snapshotFile, queryKey, earthquakesList);
+                }
+
+                // Format every row here, so binding on the UI thread only assigns values
+                List<EarthquakeRowModel> rows;
+                Metrics.Timer formatTimer = Metrics.start(Metrics.Stage.FORMAT);
+                try {
+                    rows = EarthquakeRowModel.Factory.get(context).createAll(earthquakesList);
+                } finally {
+                    formatTimer.stop();
+                }
+                synchronized (EarthquakeViewModel.class) {
+                    // Rows read before the store changed are shown, but not kept as fresh
+                    if(version == storeVersion) {
+                        resultCache.put(cacheKey(queryKey, offset, limit), rows);
+                    }
+                }
+                return new Page(rows, offset, limit, elapsedMillis);
+            }
+        };
+    }
+
+    /**
+     * Map the snapshot of the last first page and format its rows, if it was saved for the
+     * current query.
+     *
+     * @return the rows, or null if there is no usable snapshot
+     */
+    private List<EarthquakeRowModel> readSnapshot() {
+        if(!snapshotFile.exists()) {
+            return null;
+        }
+        EarthquakeSnapshot snapshot;
+        try {
+            snapshot = EarthquakeSnapshot.read(snapshotFile);
+        } catch(IOException e) {
+            // Corrupt or from an older version; the next load writes a fresh one
+            Log.w(LOG_TAG, "Discarding snapshot", e);
+            snapshotFile.delete();
+            return null;
+        }
+        if(!queryKey.equals(snapshot.getKey())) {
+            return null;
+        }
+        EarthquakeTable table = snapshot.getTable();
+        List<Earthquake> earthquakes = new ArrayList<>(table.size());
+        for(int position = 0; position < table.size(); position++) {
+            earthquakes.add(table.get(position));
+        }
+        return EarthquakeRowModel.Factory.get(getApplication()).createAll(earthquakes);
+    }
+
+    /**
+     * Save the first page, so the next launch can show it straight away.
+     */
+    private static void writeSnapshot(File snapshotFile, String queryKey,
+                                      List<Earthquake> earthquakes) {
+        try {
+            EarthquakeSnapshot.write(snapshotFile, queryKey, earthquakes);
+        } catch(IOException e) {
+            Log.w(LOG_TAG, "Could not save snapshot", e);
+        }
+    }
+
+    /**
+     * One page read from the store.
+     */
+    private static final class Page {
+        final List<EarthquakeRowModel> rows;
+        final int offset;
+        final int limit;
+        final long elapsedMillis;
+
+        Page(List<EarthquakeRowModel> rows, int offset, int limit, long elapsedMillis) {
+            this.rows = rows;
+            this.offset = offset;
+            this.limit = limit;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    /**
+     * What the list shows at one moment.
+     */
+    public static final class ListState {
+        private final List<EarthquakeRowModel> rows;
+        private final int appendedFrom;
+        private final boolean isLoading;
+        private final boolean isSyncing;
+
+        ListState(List<EarthquakeRowModel> rows, int appendedFrom, boolean isLoading,
+                  boolean isSyncing) {
+            this.rows = rows;
+            this.appendedFrom = appendedFrom;
+            this.isLoading = isLoading;
+            this.isSyncing = isSyncing;
+        }
+
+        /** Every row loaded so far. */
+        public List<EarthquakeRowModel> getRows() {return rows;}
+
+        /**
+         * Position of the first row appended since the previous state, or -1 if the rows were
+         * replaced.
+         */
+        public int getAppendedFrom() {return appendedFrom;}
+
+        /** Whether the first page of the query is still being read. */
+        public boolean isLoading() {return isLoading;}
+
+        /** Whether the store is being synced with the USGS. */
+        public boolean isSyncing() {return isSyncing;}
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.android.quakereport;
 
+import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.ListPreference;
@@ -19,6 +20,30 @@ public class SettingsActivity extends AppCompatActivity{
         setContentView(R.layout.settings_activity);
     }
 
+    /**
+     * Read the minimum magnitude setting, falling back to 0 if it is not a number.
+     */
+    static double readMinMagnitude(Context context, SharedPreferences sharedPrefs) {
+        // getString retrieves a String value from the preferences. The second parameter is the
+        // default value for this preference.
+        String minMagnitude = sharedPrefs.getString(
+                context.getString(R.string.settings_min_magnitude_key),
+                context.getString(R.string.settings_min_magnitude_default));
+        try {
+            return Double.parseDouble(minMagnitude);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Read the order-by setting.
+     */
+    static String readOrderBy(Context context, SharedPreferences sharedPrefs) {
+        return sharedPrefs.getString(context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+    }
+
     public static class EarthquakePreferenceFragment extends PreferenceFragment
         implements Preference.OnPreferenceChangeListener{
         @Override
@@ -0,0 +1,85 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Draws a series of counts as a small line, e.g. the number of earthquakes per hour. The line
+ * is scaled so the largest count touches the top of the view.
+ */
+public class SparklineView extends View {
+
+    private static final float STROKE_WIDTH_DP = 1.5f;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // Built once per size and series, so drawing does not allocate
+    private final Path path = new Path();
+    private boolean pathValid;
+
+    private int[] counts = new int[0];
+
+    public SparklineView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(STROKE_WIDTH_DP * getResources().getDisplayMetrics().density);
+        paint.setColor(ContextCompat.getColor(context, R.color.colorAccent));
+    }
+
+    /**
+     * Show a series of counts, oldest first.
+     */
+    public void setCounts(int[] counts) {
+        this.counts = counts;
+        pathValid = false;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        pathValid = false;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if(counts.length < 2) {
+            return;
+        }
+        if(!pathValid) {
+            buildPath();
+            pathValid = true;
+        }
+        canvas.drawPath(path, paint);
+    }
+
+    private void buildPath() {
+        path.rewind();
+        int max = 1;
+        for(int count : counts) {
+            max = Math.max(max, count);
+        }
+
+        // Keep the stroke inside the view at the top and bottom
+        float inset = paint.getStrokeWidth() / 2;
+        float left = getPaddingLeft();
+        float top = getPaddingTop() + inset;
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float height = getHeight() - getPaddingTop() - getPaddingBottom() - 2 * inset;
+        float step = width / (counts.length - 1);
+        for(int i = 0; i < counts.length; i++) {
+            float x = left + i * step;
+            float y = top + height * (1 - (float) counts[i] / max);
+            if(i == 0) {
+                path.moveTo(x, y);
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+    }
+}
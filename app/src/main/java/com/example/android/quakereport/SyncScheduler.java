@@ -0,0 +1,254 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the local store up to date in the background, so opening the app is nearly always a
+ * read of the store.
+ *
+ * Every sync, in the background or the foreground, runs the same batch in one wake-up: it asks
+ * the USGS whether anything changed since the last sync and stops there if not; otherwise it
+ * syncs the store and formats the first page of the saved settings, which the next launch shows
+ * from its snapshot. The store holds every event whatever the settings, so one sync serves all
+ * of them. Concurrent syncs share one run.
+ *
+ * When to sync is decided by a {@link SyncPolicy}, whose delays become two JobScheduler jobs:
+ * one on an unmetered network while charging, and a fallback on any network once the data is
+ * stale. Background sync needs JobScheduler, so before Lollipop the app only syncs when opened.
+ */
+public final class SyncScheduler {
+
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    static final int PREFERRED_JOB_ID = 1;
+    static final int FALLBACK_JOB_ID = 2;
+
+    // Policy state, kept across process deaths
+    private static final String STATE_PREFS = "sync_state";
+    private static final String KEY_LAST_SUCCESS_AT = "last_success_at";
+    private static final String KEY_CONSECUTIVE_FAILURES = "consecutive_failures";
+    private static final String KEY_RETRY_AT = "retry_at";
+
+    // Every sync fetches the same thing, so concurrent ones always share a run
+    private static final String SYNC_KEY = "sync";
+
+    private static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    // One sync at a time; a page load never waits for one
+    private static final LoadPipeline<String, Integer> syncs =
+            new LoadPipeline<>(Executors.newSingleThreadExecutor(), MAIN_THREAD);
+
+    private static SyncScheduler sInstance;
+
+    private final Context context;
+    private final SharedPreferences state;
+    private final SyncPolicy policy;
+
+    private SyncScheduler(Context context) {
+        this.context = context;
+        state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+        policy = new SyncPolicy(Clock.SYSTEM, new DeviceNetworkState(context),
+                state.getLong(KEY_LAST_SUCCESS_AT, 0),
+                state.getInt(KEY_CONSECUTIVE_FAILURES, 0),
+                state.getLong(KEY_RETRY_AT, 0));
+    }
+
+    /**
+     * Gets the scheduler shared by the whole app.
+     */
+    public static synchronized SyncScheduler get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncScheduler(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Whether the store is recent enough that opening the app does not need to sync.
+     */
+    public boolean isFresh() {
+        return policy.isFresh();
+    }
+
+    /**
+     * Whether a background job that just woke up should sync.
+     */
+    boolean shouldSyncInBackground() {
+        return policy.shouldSync();
+    }
+
+    /**
+     * Run the sync batch, or join the one in flight. The jobs are rescheduled from its outcome
+     * once the callback has run.
+     *
+     * @param callback receives the number of events written, 0 if nothing changed, or -1 if
+     *                 the sync failed
+     * @return subscription to cancel when the result is no longer wanted
+     */
+    public LoadPipeline<String, Integer>.Subscription sync(
+            final LoadPipeline.Callback<Integer> callback) {
+        return syncs.submit(SYNC_KEY, new LoadPipeline.Task<Integer>() {
+            @Override
+            public Integer load(Cancellation cancellation) throws IOException {
+                return runBatch(cancellation);
+            }
+        }, new LoadPipeline.Callback<Integer>() {
+            @Override
+            public void onLoaded(Integer written) {
+                callback.onLoaded(written);
+                // Only now, as rescheduling a job that is still running would stop it
+                schedule();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                callback.onFailed(e);
+                schedule();
+            }
+        });
+    }
+
+    /**
+     * Schedule the background jobs unless they already are, e.g. on first launch or after the
+     * app's data was cleared. Scheduled jobs survive reboots.
+     */
+    public void ensureScheduled() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        boolean preferred = false;
+        boolean fallback = false;
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            preferred |= job.getId() == PREFERRED_JOB_ID;
+            fallback |= job.getId() == FALLBACK_JOB_ID;
+        }
+        if (!preferred || !fallback) {
+            schedule();
+        }
+    }
+
+    /**
+     * Schedule both background jobs from the current state of the policy, replacing the jobs
+     * scheduled before.
+     */
+    void schedule() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJobs();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void scheduleJobs() {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        ComponentName service = new ComponentName(context, EarthquakeSyncJobService.class);
+
+        jobScheduler.schedule(new JobInfo.Builder(PREFERRED_JOB_ID, service)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setMinimumLatency(policy.getPreferredDelayMillis())
+                .setPersisted(true)
+                .build());
+
+        JobInfo.Builder fallback = new JobInfo.Builder(FALLBACK_JOB_ID, service)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setMinimumLatency(policy.getFallbackDelayMillis())
+                .setPersisted(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            fallback.setRequiresBatteryNotLow(true);
+        }
+        jobScheduler.schedule(fallback.build());
+    }
+
+    /**
+     * Check for changes, sync and prefetch, on the sync executor.
+     */
+    private int runBatch(Cancellation cancellation) throws IOException {
+        EarthquakeStore store = EarthquakeStore.get(context);
+
+        // The sync asks the count endpoint first, and stops there if nothing changed
+        int written = EarthquakeSync.sync(store, cancellation);
+        cancellation.throwIfCancelled();
+        if (written == 0) {
+            Log.d(LOG_TAG, "Nothing changed upstream since the last sync");
+        }
+
+        policy.onSyncFinished(written >= 0);
+        state.edit()
+                .putLong(KEY_LAST_SUCCESS_AT, policy.getLastSuccessAt())
+                .putInt(KEY_CONSECUTIVE_FAILURES, policy.getConsecutiveFailures())
+                .putLong(KEY_RETRY_AT, policy.getRetryAt())
+                .apply();
+
+        if (written > 0) {
+            EarthquakeViewModel.invalidateResults();
+            prefetchSavedQuery(cancellation);
+        }
+        return written;
+    }
+
+    /**
+     * Format the first page of the saved settings, which also saves it as the snapshot the
+     * next launch shows.
+     */
+    private void prefetchSavedQuery(Cancellation cancellation) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        try {
+            EarthquakeViewModel.prefetchFirstPage(context,
+                    SettingsActivity.readMinMagnitude(context, sharedPrefs),
+                    SettingsActivity.readOrderBy(context, sharedPrefs), cancellation);
+        } catch (IOException e) {
+            // The store is synced either way; the next launch reads the page itself
+            Log.w(LOG_TAG, "Could not prefetch the first page", e);
+        }
+    }
+
+    /**
+     * Network state as seen by the platform's connectivity service.
+     */
+    private static final class DeviceNetworkState implements SyncPolicy.NetworkState {
+        private final ConnectivityManager connectivityManager;
+
+        DeviceNetworkState(Context context) {
+            connectivityManager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        }
+
+        @Override
+        public boolean isConnected() {
+            NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+            return activeNetwork != null && activeNetwork.isConnected();
+        }
+
+        @Override
+        public boolean isMetered() {
+            return ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the header statistics up to date as events are revised, with the incremental
+ * {@link EarthquakeAggregator} and by rescanning the whole list after every change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregatorBenchmark {
+
+    /** Number of events summarised. */
+    @Param({"1000", "100000"})
+    public int size;
+
+    private List<Earthquake> earthquakes;
+    private Clock clock;
+    private EarthquakeAggregator aggregator;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        earthquakes = Fixtures.earthquakes(size);
+        // End the sparklines at the newest event, so they cover the generated events
+        final long now = earthquakes.get(0).getDateTime();
+        clock = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        };
+        aggregator = new EarthquakeAggregator(clock);
+        aggregator.addAll(earthquakes);
+    }
+
+    /**
+     * Feed every event to an empty aggregator, as on the first sync.
+     */
+    @Benchmark
+    public EarthquakeAggregator.Snapshot aggregateAll() {
+        EarthquakeAggregator fresh = new EarthquakeAggregator(clock);
+        fresh.addAll(earthquakes);
+        return fresh.snapshot();
+    }
+
+    /**
+     * Revise one event and take a snapshot for the header.
+     */
+    @Benchmark
+    public EarthquakeAggregator.Snapshot reviseIncremental() {
+        Earthquake earthquake = revised();
+        aggregator.add(earthquake);
+        return aggregator.snapshot();
+    }
+
+    /**
+     * Revise one event and compute the statistics again from the whole list.
+     */
+    @Benchmark
+    public EarthquakeAggregator.Snapshot reviseRescan() {
+        Earthquake earthquake = revised();
+        earthquakes.set(next % size, earthquake);
+        EarthquakeAggregator rescan = new EarthquakeAggregator(clock);
+        rescan.addAll(earthquakes);
+        return rescan.snapshot();
+    }
+
+    /**
+     * Take a snapshot without any change.
+     */
+    @Benchmark
+    public EarthquakeAggregator.Snapshot snapshot() {
+        return aggregator.snapshot();
+    }
+
+    /**
+     * Gets the next event of the list with its magnitude moved by a tenth, up or down in turn.
+     */
+    private Earthquake revised() {
+        next++;
+        Earthquake earthquake = earthquakes.get(next % size);
+        double step = (next / size) % 2 == 0 ? 0.1 : -0.1;
+        return new Earthquake(earthquake.getId(), earthquake.getMagnitude() + step,
+                earthquake.getLocation(), earthquake.getDateTime(), earthquake.getWebsite(),
+                earthquake.getUpdated() + 1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the same events from a GeoJSON and a CSV response with the decoder
+ * {@link QueryUtils} negotiates for each format. Besides the number of responses decoded per
+ * second, every result reports {@code responseBytes}, the response bytes consumed per second;
+ * dividing the two gives the bytes a sync of these events transfers uncompressed. Run with the
+ * GC profiler to compare how much each decoder allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DecoderBenchmark {
+
+    /** Number of events in the response. */
+    @Param({"1000", "20000"})
+    public int size;
+
+    /** Value of the USGS format parameter of the request. */
+    @Param({"geojson", "csv"})
+    public String format;
+
+    private byte[] document;
+    private QueryUtils.ResponseDecoder decoder;
+
+    /**
+     * Counts the response bytes decoded, next to the responses decoded.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Transfer {
+        public long responseBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            responseBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        document = "csv".equals(format) ? Fixtures.csv(size) : Fixtures.geoJson(size);
+        decoder = QueryUtils.negotiateDecoder(
+                "https://earthquake.usgs.gov/fdsnws/event/1/query?format=" + format, null);
+    }
+
+    /**
+     * Decode every event of the response.
+     */
+    @Benchmark
+    public int decode(Transfer transfer, final Blackhole blackhole) throws IOException {
+        transfer.responseBytes += document.length;
+        return decoder.decode(new ByteArrayInputStream(document),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        blackhole.consume(earthquake);
+                    }
+                });
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * USGS GeoJSON and CSV documents the benchmarks decode.
+ *
+ * The 10-feature documents are checked in under {@code src/jmh/resources/fixtures}. Larger ones
+ * are generated from the GeoJSON sample: every feature has the same properties in the same order
+ * as the sample, with magnitudes, places, times and coordinates drawn from a fixed seed, so a
+ * given size is the same document byte for byte on every run and results can be compared across
+ * commits. The CSV document of a size holds the same events as the GeoJSON one, with the columns
+ * of a USGS CSV response.
+ */
+final class Fixtures {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SAMPLE = "/fixtures/usgs-10.geojson";
+    private static final String CSV_SAMPLE = "/fixtures/usgs-10.csv";
+    private static final int SAMPLE_SIZE = 10;
+
+    private static final String[] DIRECTIONS = {
+            "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE",
+            "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"};
+
+    /** Newest event time of the generated documents: 2018-03-04T00:00:00Z. */
+    private static final long NEWEST_TIME = 1520121600000L;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Fixtures} object.
+     */
+    private Fixtures() {
+    }
+
+    /**
+     * Gets the UTF-8 bytes of a document with the given number of features.
+     */
+    static byte[] geoJson(int size) throws IOException {
+        byte[] sample = readSample(SAMPLE);
+        if (size == SAMPLE_SIZE) {
+            return sample;
+        }
+        return generateGeoJson(generate(size, places(sample))).getBytes(UTF_8);
+    }
+
+    /**
+     * Gets the UTF-8 bytes of a CSV document with the same events as the GeoJSON document of
+     * the given size.
+     */
+    static byte[] csv(int size) throws IOException {
+        if (size == SAMPLE_SIZE) {
+            return readSample(CSV_SAMPLE);
+        }
+        return generateCsv(generate(size, places(readSample(SAMPLE)))).getBytes(UTF_8);
+    }
+
+    /**
+     * Decode a document with the given number of features.
+     */
+    static List<Earthquake> earthquakes(int size) throws IOException {
+        return QueryUtils.extractEarthquakes(new String(geoJson(size), UTF_8));
+    }
+
+    /**
+     * Gets the UTF-8 bytes of a GeoJSON document of the given events, with the properties the
+     * app reads.
+     */
+    static byte[] geoJson(List<Earthquake> earthquakes) {
+        StringBuilder json = new StringBuilder(earthquakes.size() * 320);
+        json.append("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":")
+                    .append(earthquake.getMagnitude())
+                    .append(",\"place\":\"").append(earthquake.getLocation())
+                    .append("\",\"time\":").append(earthquake.getDateTime())
+                    .append(",\"updated\":").append(earthquake.getUpdated())
+                    .append(",\"url\":\"").append(earthquake.getWebsite())
+                    .append("\",\"type\":\"earthquake\"")
+                    .append("},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(earthquake.getLongitude()).append(',')
+                    .append(earthquake.getLatitude()).append(',')
+                    .append(earthquake.getDepth())
+                    .append("]},\"id\":\"").append(earthquake.getId()).append("\"}");
+        }
+        return json.append("]}\n").toString().getBytes(UTF_8);
+    }
+
+    private static byte[] readSample(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Gets the region names of the sample, e.g. "Sola, Vanuatu" or "Mid-Atlantic Ridge".
+     */
+    private static List<String> places(byte[] sample) throws IOException {
+        Map<String, Object> root = JsonTree.asObject(JsonTree.parse(new String(sample, UTF_8)));
+        List<String> places = new ArrayList<>();
+        for (Object feature : JsonTree.getArray(root, "features")) {
+            Map<String, Object> properties =
+                    JsonTree.getObject(JsonTree.asObject(feature), "properties");
+            String place = JsonTree.getString(properties, "place");
+            int offsetIndex = place.indexOf(" of ");
+            places.add(offsetIndex != -1 ? place.substring(offsetIndex + 4) : place);
+        }
+        return places;
+    }
+
+    /**
+     * Draw the events of a document, newest first like the default orderby=time.
+     */
+    private static List<Event> generate(int size, List<String> places) {
+        Random random = new Random(size);
+        List<Event> events = new ArrayList<>(size);
+        long time = NEWEST_TIME;
+        for (int i = 0; i < size; i++) {
+            Event event = new Event();
+            time -= 1000 + random.nextInt(600000);
+            event.time = time;
+            event.magnitude = Math.round((2.5 + random.nextDouble() * random.nextDouble() * 6) * 10)
+                    / 10.0;
+            event.latitude = round(-70 + random.nextDouble() * 140, 4);
+            event.longitude = round(-180 + random.nextDouble() * 360, 4);
+            event.depth = round(random.nextDouble() * random.nextDouble() * 650, 2);
+            String region = places.get(random.nextInt(places.size()));
+            event.place = random.nextInt(8) == 0 ? region
+                    : (1 + random.nextInt(300)) + "km "
+                    + DIRECTIONS[random.nextInt(DIRECTIONS.length)] + " of " + region;
+            event.id = "us" + Integer.toString(200000000 + i, 36);
+            event.updated = time + random.nextInt(86400000);
+            event.dmin = random.nextDouble() * 10;
+            event.rms = random.nextDouble() * 1.5;
+            event.gap = random.nextInt(180);
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static String generateGeoJson(List<Event> events) {
+        StringBuilder json = new StringBuilder(events.size() * 1100);
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":")
+                .append(NEWEST_TIME)
+                .append(",\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query\"")
+                .append(",\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.5.8\"")
+                .append(",\"count\":").append(events.size()).append("},\"features\":[");
+
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            String id = event.id;
+            double magnitude = event.magnitude;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":").append(magnitude)
+                    .append(",\"place\":\"").append(event.place)
+                    .append("\",\"time\":").append(event.time)
+                    .append(",\"updated\":").append(event.updated)
+                    .append(",\"tz\":null,\"url\":\"")
+                    .append("https://earthquake.usgs.gov/earthquakes/eventpage/").append(id)
+                    .append("\",\"detail\":\"")
+                    .append("https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=").append(id)
+                    .append("&format=geojson\",\"felt\":null,\"cdi\":null,\"mmi\":null")
+                    .append(",\"alert\":null")
+                    .append(",\"status\":\"reviewed\",\"tsunami\":0,\"sig\":")
+                    .append((int) (magnitude * magnitude * 15))
+                    .append(",\"net\":\"us\",\"code\":\"").append(id.substring(2))
+                    .append("\",\"ids\":\",").append(id)
+                    .append(",\",\"sources\":\",us,\",\"types\":\",geoserve,origin,phase-data,\"")
+                    .append(",\"nst\":null,\"dmin\":")
+                    .append(String.format(Locale.US, "%.3f", event.dmin))
+                    .append(",\"rms\":")
+                    .append(String.format(Locale.US, "%.2f", event.rms))
+                    .append(",\"gap\":").append(event.gap)
+                    .append(",\"magType\":\"").append(magType(magnitude))
+                    .append("\",\"type\":\"earthquake\",\"title\":\"M ").append(magnitude)
+                    .append(" - ").append(event.place)
+                    .append("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(event.longitude).append(',').append(event.latitude).append(',')
+                    .append(event.depth)
+                    .append("]},\"id\":\"").append(id).append("\"}");
+        }
+        return json.append("]}\n").toString();
+    }
+
+    private static String generateCsv(List<Event> events) {
+        SimpleDateFormat isoFormat =
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder csv = new StringBuilder(events.size() * 220);
+        csv.append("time,latitude,longitude,depth,mag,magType,nst,gap,dmin,rms,net,id,updated,")
+                .append("place,type,horizontalError,depthError,magError,magNst,status,")
+                .append("locationSource,magSource\n");
+
+        for (Event event : events) {
+            // Error estimates are not in the GeoJSON document; derive plausible ones
+            int hash = event.id.hashCode() & 0x7fffffff;
+            csv.append(isoFormat.format(new Date(event.time))).append(',')
+                    .append(event.latitude).append(',')
+                    .append(event.longitude).append(',')
+                    .append(event.depth).append(',')
+                    .append(event.magnitude).append(',')
+                    .append(magType(event.magnitude)).append(",,")
+                    .append(event.gap).append(',')
+                    .append(String.format(Locale.US, "%.3f", event.dmin)).append(',')
+                    .append(String.format(Locale.US, "%.2f", event.rms)).append(",us,")
+                    .append(event.id).append(',')
+                    .append(isoFormat.format(new Date(event.updated))).append(',');
+            if (event.place.indexOf(',') >= 0) {
+                csv.append('"').append(event.place.replace("\"", "\"\"")).append('"');
+            } else {
+                csv.append(event.place);
+            }
+            csv.append(",earthquake,")
+                    .append(String.format(Locale.US, "%.1f", 2 + hash % 90 / 10.0)).append(',')
+                    .append(String.format(Locale.US, "%.1f", 1 + hash % 70 / 10.0)).append(',')
+                    .append(String.format(Locale.US, "%.3f", 0.02 + hash % 200 / 1000.0))
+                    .append(',').append(10 + hash % 300)
+                    .append(",reviewed,us,us\n");
+        }
+        return csv.toString();
+    }
+
+    private static String magType(double magnitude) {
+        return magnitude >= 5.5 ? "mww" : "mb";
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+
+    /**
+     * One generated event, drawn once and written in either format.
+     */
+    private static final class Event {
+        long time;
+        double magnitude;
+        double latitude;
+        double longitude;
+        double depth;
+        String place;
+        String id;
+        long updated;
+        double dmin;
+        double rms;
+        int gap;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats the text of list rows the way the row models do. Scores are per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private EarthquakeFormatter formatter;
+    private Earthquake[] earthquakes;
+
+    @Setup
+    public void setUp() throws IOException {
+        formatter = new EarthquakeFormatter();
+        List<Earthquake> decoded = Fixtures.earthquakes(ROWS);
+        earthquakes = decoded.toArray(new Earthquake[decoded.size()]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void formatMagnitude(Blackhole blackhole) {
+        for (Earthquake earthquake : earthquakes) {
+            blackhole.consume(formatter.formatMagnitude(earthquake.getMagnitude()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void formatDateAndTime(Blackhole blackhole) {
+        for (Earthquake earthquake : earthquakes) {
+            blackhole.consume(formatter.formatDate(earthquake.getDateTime()));
+            blackhole.consume(formatter.formatTime(earthquake.getDateTime()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void splitPlace(Blackhole blackhole) {
+        for (Earthquake earthquake : earthquakes) {
+            blackhole.consume(formatter.getLocationOffset(earthquake.getLocation()));
+            blackhole.consume(formatter.getPrimaryLocation(earthquake.getLocation()));
+        }
+    }
+
+    /**
+     * Everything a row shows, as a row model is built.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void formatRow(Blackhole blackhole) {
+        for (Earthquake earthquake : earthquakes) {
+            String place = earthquake.getLocation();
+            blackhole.consume(formatter.formatMagnitude(earthquake.getMagnitude()));
+            blackhole.consume(formatter.getLocationOffset(place));
+            blackhole.consume(formatter.getPrimaryLocation(place));
+            blackhole.consume(formatter.formatDate(earthquake.getDateTime()));
+            blackhole.consume(formatter.formatTime(earthquake.getDateTime()));
+        }
+    }
+}
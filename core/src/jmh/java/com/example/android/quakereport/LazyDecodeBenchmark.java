@@ -0,0 +1,88 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time until the first event of a response can be shown, decoding every event up front with the
+ * streaming decoder and indexing the response with {@link GeoJsonIndex}. Run with the GC
+ * profiler to compare how much each path allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LazyDecodeBenchmark {
+
+    /** Number of rows on a screen, decoded when a list is first shown. */
+    private static final int SCREEN_ROWS = 20;
+
+    /** Number of features in the response. */
+    @Param({"1000", "50000"})
+    public int size;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = Fixtures.geoJson(size);
+    }
+
+    /**
+     * Decode every event, then read the first, as a loader returning a list does.
+     */
+    @Benchmark
+    public Earthquake firstRowDecoded() throws IOException {
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        GeoJsonStreamDecoder.decode(new ByteArrayInputStream(document),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        earthquakes.add(earthquake);
+                    }
+                });
+        return earthquakes.get(0);
+    }
+
+    /**
+     * Index the response, then decode the first event.
+     */
+    @Benchmark
+    public Earthquake firstRowIndexed() throws IOException {
+        return GeoJsonIndex.scan(document).get(0);
+    }
+
+    /**
+     * Index the response, then decode a screenful of events.
+     */
+    @Benchmark
+    public void screenIndexed(Blackhole blackhole) throws IOException {
+        GeoJsonIndex index = GeoJsonIndex.scan(document);
+        for (int i = 0; i < Math.min(SCREEN_ROWS, index.size()); i++) {
+            blackhole.consume(index.get(i));
+        }
+    }
+
+    /**
+     * Index the response, then decode every event, the worst case for the index.
+     */
+    @Benchmark
+    public void allRowsIndexed(Blackhole blackhole) throws IOException {
+        GeoJsonIndex index = GeoJsonIndex.scan(document);
+        for (int i = 0; i < index.size(); i++) {
+            blackhole.consume(index.get(i));
+        }
+    }
+}
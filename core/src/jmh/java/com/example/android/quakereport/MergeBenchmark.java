@@ -0,0 +1,106 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares and merges snapshots of the list: the diff of two polls of the live feed, and the
+ * k-way merge of time-window shards. A poll is measured the way the poller runs it: the
+ * response is indexed, then only the new and updated events are decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MergeBenchmark {
+
+    private static final int SHARDS = 8;
+
+    /** Number of events in each snapshot. */
+    @Param({"10", "1000", "20000", "100000"})
+    public int size;
+
+    private byte[] previousFeed;
+    private byte[] nextFeed;
+    private LiveFeedPoller poller;
+    private boolean pollNext;
+
+    private List<List<Earthquake>> shards;
+    private Comparator<Earthquake> order;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Earthquake> previous = Fixtures.earthquakes(size);
+
+        // The next snapshot revises one event in ten and drops the oldest one in a hundred for
+        // as many new ones
+        Random random = new Random(size);
+        List<Earthquake> next = new ArrayList<>(size);
+        int dropped = size / 100;
+        for (int i = 0; i < dropped; i++) {
+            Earthquake template = previous.get(random.nextInt(size));
+            next.add(new Earthquake("new" + i, template.getMagnitude(), template.getLocation(),
+                    template.getDateTime() + 1, template.getWebsite(), template.getUpdated() + 1,
+                    template.getLatitude(), template.getLongitude(), template.getDepth()));
+        }
+        for (Earthquake earthquake : previous.subList(0, size - dropped)) {
+            next.add(random.nextInt(10) == 0 ? revise(earthquake) : earthquake);
+        }
+
+        poller = new LiveFeedPoller("", Clock.SYSTEM, new LiveFeedPoller.Listener() {
+            @Override
+            public void onEventsChanged(List<Earthquake> changed) {
+            }
+        });
+        previousFeed = Fixtures.geoJson(previous);
+        nextFeed = Fixtures.geoJson(next);
+        poller.merge(GeoJsonIndex.scan(previousFeed));
+
+        // Contiguous windows that overlap by a few events at each edge, the way neighbouring
+        // requests do when an event's time is revised in between
+        order = ShardedFetcher.comparatorFor("time");
+        shards = new ArrayList<>(SHARDS);
+        int shardSize = (size + SHARDS - 1) / SHARDS;
+        for (int start = 0; start < size; start += shardSize) {
+            int from = Math.max(0, start - 2);
+            shards.add(new ArrayList<>(previous.subList(from, Math.min(size, start + shardSize))));
+        }
+    }
+
+    /**
+     * Index a poll of the feed and diff it against the previous one. Each call swaps the two
+     * snapshots, so every call diffs the same pair in one direction or the other.
+     */
+    @Benchmark
+    public List<Earthquake> diffFeed() throws IOException {
+        pollNext = !pollNext;
+        return poller.merge(GeoJsonIndex.scan(pollNext ? nextFeed : previousFeed));
+    }
+
+    /**
+     * Merge sorted, overlapping shards into one list without duplicates.
+     */
+    @Benchmark
+    public List<Earthquake> mergeShards() {
+        return ShardedFetcher.merge(shards, order);
+    }
+
+    private static Earthquake revise(Earthquake earthquake) {
+        return new Earthquake(earthquake.getId(), earthquake.getMagnitude() + 0.1,
+                earthquake.getLocation(), earthquake.getDateTime(), earthquake.getWebsite(),
+                earthquake.getUpdated() + 60000, earthquake.getLatitude(),
+                earthquake.getLongitude(), earthquake.getDepth());
+    }
+}
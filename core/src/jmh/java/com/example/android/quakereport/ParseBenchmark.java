@@ -0,0 +1,68 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a whole USGS response, with the streaming decoder and with the String-based fallback
+ * of {@link QueryUtils}. Run with the GC profiler to see the allocation rate of each path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+
+    /** Number of features in the response. */
+    @Param({"10", "1000", "20000", "100000"})
+    public int size;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = Fixtures.geoJson(size);
+    }
+
+    /**
+     * Stream the events straight out of the response bytes.
+     */
+    @Benchmark
+    public int streamingDecode(final Blackhole blackhole) throws IOException {
+        return GeoJsonStreamDecoder.decode(new ByteArrayInputStream(document),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        blackhole.consume(earthquake);
+                    }
+                });
+    }
+
+    /**
+     * Read the response into a String, the first half of the fallback path.
+     */
+    @Benchmark
+    public String readFromStream() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(document));
+    }
+
+    /**
+     * Read the response into a String and parse it as a tree, the whole fallback path.
+     */
+    @Benchmark
+    public List<Earthquake> readAndExtract() throws IOException {
+        return QueryUtils.extractEarthquakes(
+                QueryUtils.readFromStream(new ByteArrayInputStream(document)));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap a decoded result set keeps alive, as an {@code ArrayList<Earthquake>} and
+ * as an {@link EarthquakeTable}. Each call decodes the response into a new container and
+ * measures the used heap after a full collection with and without it. Every result reports
+ * {@code retainedBytes}, summed over the containers built, and {@code containers}, their
+ * number; dividing the two gives the retained size of one. The time per call is dominated by
+ * the forced collections and means nothing. Runs on the parallel collector, whose used heap
+ * after a full collection is exact; the serial collector's lags a collection behind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+UseParallelGC", "-Xmx1g"})
+public class RetainedHeapBenchmark {
+
+    /** Number of events in the result set. */
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    /** Container to decode into: "list" or "table". */
+    @Param({"list", "table"})
+    public String container;
+
+    private byte[] document;
+
+    // Keeps the container being measured reachable
+    private Object retained;
+
+    /**
+     * Sums the heap retained by the containers built, next to their number.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+        public long retainedBytes;
+        public long containers;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytes = 0;
+            containers = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        document = Fixtures.geoJson(size);
+    }
+
+    /**
+     * Decode the response into a new container and measure what it retains.
+     */
+    @Benchmark
+    public int measure(Heap heap) throws IOException {
+        long before = usedHeap();
+        retained = "table".equals(container) ? decodeTable() : decodeList();
+        long after = usedHeap();
+
+        heap.retainedBytes += after - before;
+        heap.containers++;
+        retained = null;
+        return (int) (after - before);
+    }
+
+    private List<Earthquake> decodeList() throws IOException {
+        final List<Earthquake> earthquakes = new ArrayList<>(size);
+        GeoJsonStreamDecoder.decode(new ByteArrayInputStream(document),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        earthquakes.add(earthquake);
+                    }
+                });
+        return earthquakes;
+    }
+
+    private EarthquakeTable decodeTable() throws IOException {
+        final EarthquakeTable table = new EarthquakeTable(size);
+        GeoJsonStreamDecoder.decode(new ByteArrayInputStream(document),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        table.add(earthquake);
+                    }
+                });
+        return table;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        // A second collection picks up what finalization or reference processing released
+        for (int i = 0; i < 2; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
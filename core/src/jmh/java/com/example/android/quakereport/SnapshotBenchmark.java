@@ -0,0 +1,75 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a saved result set from its binary snapshot, and from the cached JSON response the way
+ * a launch without a snapshot would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+
+    /** Number of events in the result set. */
+    @Param({"10", "1000", "20000", "100000"})
+    public int size;
+
+    private File snapshotFile;
+    private File jsonFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] json = Fixtures.geoJson(size);
+        jsonFile = File.createTempFile("usgs-" + size, ".geojson");
+        FileOutputStream out = new FileOutputStream(jsonFile);
+        try {
+            out.write(json);
+        } finally {
+            out.close();
+        }
+
+        snapshotFile = File.createTempFile("usgs-" + size, ".snapshot");
+        EarthquakeSnapshot.write(snapshotFile, "minmag=0.0&orderby=time",
+                Fixtures.earthquakes(size));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jsonFile.delete();
+        snapshotFile.delete();
+    }
+
+    @Benchmark
+    public EarthquakeTable loadSnapshot() throws IOException {
+        return EarthquakeSnapshot.read(snapshotFile).getTable();
+    }
+
+    @Benchmark
+    public EarthquakeTable reparseJson() throws IOException {
+        final EarthquakeTable table = new EarthquakeTable(size);
+        GeoJsonStreamDecoder.decode(new BufferedInputStream(new FileInputStream(jsonFile)),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        table.add(earthquake);
+                    }
+                });
+        return table;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers radius and nearest-neighbour queries with the {@link SpatialIndex} and with a linear
+ * scan of the table, to show where the index pays for itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialQueryBenchmark {
+
+    private static final double RADIUS_KM = 500;
+    private static final int NEAREST = 20;
+
+    /** Number of events in the table. */
+    @Param({"10", "1000", "20000", "100000"})
+    public int size;
+
+    private EarthquakeTable table;
+    private SpatialIndex index;
+
+    /** Query centers, cycled through so a run does not keep hitting the same cells. */
+    private double[] latitudes;
+    private double[] longitudes;
+    private int nextCenter;
+
+    @Setup
+    public void setUp() throws IOException {
+        table = new EarthquakeTable(size);
+        table.addAll(Fixtures.earthquakes(size));
+        index = new SpatialIndex(table);
+
+        Random random = new Random(42);
+        latitudes = new double[64];
+        longitudes = new double[64];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = -60 + random.nextDouble() * 120;
+            longitudes[i] = -180 + random.nextDouble() * 360;
+        }
+    }
+
+    @Benchmark
+    public SpatialIndex buildIndex() {
+        return new SpatialIndex(table);
+    }
+
+    @Benchmark
+    public int[] radiusIndexed() {
+        int center = nextCenter();
+        return index.radius(latitudes[center], longitudes[center], RADIUS_KM, null);
+    }
+
+    @Benchmark
+    public int[] radiusScan() {
+        int center = nextCenter();
+        double latitude = latitudes[center];
+        double longitude = longitudes[center];
+        int[] matches = new int[table.size()];
+        int count = 0;
+        for (int position = 0; position < table.size(); position++) {
+            if (distanceKm(latitude, longitude, position) <= RADIUS_KM) {
+                matches[count++] = position;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    @Benchmark
+    public int[] nearestIndexed() {
+        int center = nextCenter();
+        return index.nearest(latitudes[center], longitudes[center], NEAREST, null);
+    }
+
+    @Benchmark
+    public int[] nearestScan() {
+        int center = nextCenter();
+        double latitude = latitudes[center];
+        double longitude = longitudes[center];
+
+        // Insertion into a short sorted array of the k closest rows seen so far
+        int k = Math.min(NEAREST, table.size());
+        int[] closest = new int[k];
+        double[] distances = new double[k];
+        int count = 0;
+        for (int position = 0; position < table.size(); position++) {
+            double distance = distanceKm(latitude, longitude, position);
+            if (count == k && distance >= distances[k - 1]) {
+                continue;
+            }
+            int slot = count < k ? count++ : k - 1;
+            while (slot > 0 && distances[slot - 1] > distance) {
+                distances[slot] = distances[slot - 1];
+                closest[slot] = closest[slot - 1];
+                slot--;
+            }
+            distances[slot] = distance;
+            closest[slot] = position;
+        }
+        return Arrays.copyOf(closest, count);
+    }
+
+    private int nextCenter() {
+        nextCenter = (nextCenter + 1) & (latitudes.length - 1);
+        return nextCenter;
+    }
+
+    private double distanceKm(double latitude, double longitude, int position) {
+        double rowLatitude = table.getLatitude(position);
+        double sinHalfLat = Math.sin(Math.toRadians(rowLatitude - latitude) / 2);
+        double sinHalfLon = Math.sin(Math.toRadians(table.getLongitude(position) - longitude) / 2);
+        double a = sinHalfLat * sinHalfLat + Math.cos(Math.toRadians(latitude))
+                * Math.cos(Math.toRadians(rowLatitude)) * sinHalfLon * sinHalfLon;
+        return 2 * SpatialIndex.EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fetches the same response over and over from a local server, through the pooled, gzip-aware
+ * {@link UrlConnectionTransport} and through a transport that makes requests the way the app
+ * used to: uncompressed, on a new connection each time. Every result reports
+ * {@code wireBytes}, the body bytes the server sent per second, and {@code connections}, the
+ * connections it accepted per second; dividing each by the fetches per second gives the cost of
+ * one fetch. The loopback link has no latency, so the wall-clock gap understates the one over a
+ * mobile network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransportBenchmark {
+
+    /** Number of events in the response. */
+    @Param({"100", "1000"})
+    public int size;
+
+    /** Transport to fetch with: "pooled" for the app's, "disconnect" for the old way. */
+    @Param({"pooled", "disconnect"})
+    public String transport;
+
+    private HttpServer server;
+    private String requestUrl;
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private volatile int lastPort;
+
+    /**
+     * Counts what the server sent, next to the fetches made.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Transfer {
+        public long wireBytes;
+        public long connections;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+            connections = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] plain = Fixtures.geoJson(size);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(plain);
+        gzip.close();
+        final byte[] gzipped = compressed.toByteArray();
+
+        // Send the headers and body without waiting on delayed ACKs, as a real server would
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                byte[] body = plain;
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    body = gzipped;
+                }
+                // Count before sending, so the fetch that receives it sees the count
+                wireBytes.addAndGet(body.length);
+                // Requests come one at a time, so a new client port means a new connection
+                int port = exchange.getRemoteAddress().getPort();
+                if (port != lastPort) {
+                    lastPort = port;
+                    connections.incrementAndGet();
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        requestUrl = "http://127.0.0.1:" + server.getAddress().getPort()
+                + "/fdsnws/event/1/query?format=geojson";
+
+        QueryUtils.setTransport("pooled".equals(transport) ? new UrlConnectionTransport()
+                : new DisconnectingTransport());
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        QueryUtils.setTransport(new ResilientTransport());
+    }
+
+    /**
+     * Fetch and decode the response.
+     */
+    @Benchmark
+    public boolean fetch(Transfer transfer, final Blackhole blackhole) {
+        boolean success = QueryUtils.fetchEarthquakeData(requestUrl,
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        blackhole.consume(earthquake);
+                    }
+                });
+        transfer.wireBytes += wireBytes.getAndSet(0);
+        transfer.connections += connections.getAndSet(0);
+        return success;
+    }
+
+    /**
+     * Requests the way the app did before it had a transport: no compression, and the
+     * connection is disconnected after every response.
+     */
+    private static final class DisconnectingTransport implements HttpTransport {
+        @Override
+        public Response get(URL url, Map<String, String> headers) throws IOException {
+            final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setConnectTimeout(UrlConnectionTransport.DEFAULT_CONNECT_TIMEOUT);
+            urlConnection.setReadTimeout(UrlConnectionTransport.DEFAULT_READ_TIMEOUT);
+            urlConnection.setRequestMethod("GET");
+            // The desktop JDK keeps a fully read connection even through disconnect(), while
+            // Android closes it; asking the server to close it reproduces Android here
+            urlConnection.setRequestProperty("Connection", "close");
+            urlConnection.connect();
+            final int code = urlConnection.getResponseCode();
+            return new Response() {
+                @Override
+                public int getCode() {return code;}
+
+                @Override
+                public String getHeader(String name) {
+                    return urlConnection.getHeaderField(name);
+                }
+
+                @Override
+                public InputStream getBody() throws IOException {
+                    return urlConnection.getInputStream();
+                }
+
+                @Override
+                public void abort() {
+                    urlConnection.disconnect();
+                }
+
+                @Override
+                public void close() {
+                    urlConnection.disconnect();
+                }
+            };
+        }
+    }
+}
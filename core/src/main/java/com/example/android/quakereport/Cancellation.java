@@ -0,0 +1,121 @@
+package com.example.android.quakereport;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets one thread stop work that runs on another, e.g. a request whose result nobody wants
+ * any more.
+ *
+ * Cancelling closes every {@link Closeable} registered with {@link #register(Closeable)}, which
+ * makes a read blocked on a socket fail straight away, and makes {@link #throwIfCancelled()}
+ * throw, so decoders reading through {@link #wrap(InputStream)} stop at their next read.
+ */
+public final class Cancellation {
+
+    private static final String LOG_TAG = Cancellation.class.getSimpleName();
+
+    private boolean cancelled;
+    private final List<Closeable> closeables = new ArrayList<>();
+
+    /**
+     * Cancel the work. Calling this again has no effect.
+     */
+    public void cancel() {
+        List<Closeable> toClose;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toClose = new ArrayList<>(closeables);
+            closeables.clear();
+        }
+        for (Closeable closeable : toClose) {
+            closeQuietly(closeable);
+        }
+    }
+
+    public synchronized boolean isCancelled() {return cancelled;}
+
+    /**
+     * Throw if the work has been cancelled, e.g. between two stages of a load.
+     *
+     * @throws CancelledException if the work has been cancelled
+     */
+    public void throwIfCancelled() throws CancelledException {
+        if (isCancelled()) {
+            throw new CancelledException();
+        }
+    }
+
+    /**
+     * Close a resource when the work is cancelled, or right away if it already is.
+     */
+    public void register(Closeable closeable) {
+        synchronized (this) {
+            if (!cancelled) {
+                closeables.add(closeable);
+                return;
+            }
+        }
+        closeQuietly(closeable);
+    }
+
+    /**
+     * Stop tracking a resource, e.g. once it has been closed normally.
+     */
+    public synchronized void unregister(Closeable closeable) {
+        closeables.remove(closeable);
+    }
+
+    /**
+     * Wrap a stream so that every read fails with a {@link CancelledException} once the work
+     * has been cancelled.
+     */
+    public InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                throwIfCancelled();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                throwIfCancelled();
+                return super.read(buffer, offset, count);
+            }
+
+            @Override
+            public long skip(long count) throws IOException {
+                throwIfCancelled();
+                return super.skip(count);
+            }
+        };
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            QuakeLog.w(LOG_TAG, "Error aborting cancelled work", e);
+        }
+    }
+
+    /**
+     * Thrown by work that stopped because it was cancelled.
+     */
+    public static final class CancelledException extends InterruptedIOException {
+        private static final long serialVersionUID = 1L;
+
+        public CancelledException() {
+            super("Cancelled");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.android.quakereport;
+
+/**
+ * Stops sending requests to a host that keeps failing, so a dead server costs one fast failure
+ * instead of a full timeout per request.
+ *
+ * The breaker opens after a run of consecutive failures. While open, every request is refused
+ * until the cool-down has passed; then a single trial request is let through. If it succeeds the
+ * breaker closes again, otherwise it stays open for another cool-down.
+ */
+public final class CircuitBreaker {
+
+    /** Default number of consecutive failures that open the breaker. */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /** Default time the breaker stays open before a trial request, in milliseconds. */
+    public static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+    /**
+     * State of a breaker.
+     */
+    public enum State {
+        /** Requests flow normally. */
+        CLOSED,
+        /** Requests are refused. */
+        OPEN,
+        /** One trial request is in flight; others are refused until it finishes. */
+        HALF_OPEN
+    }
+
+    private final Clock clock;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * Constructs a breaker with the default threshold and cool-down.
+     */
+    public CircuitBreaker(Clock clock) {
+        this(clock, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * Constructs a breaker.
+     *
+     * @param clock clock the cool-down is measured with
+     * @param failureThreshold number of consecutive failures that open the breaker
+     * @param openMillis time the breaker stays open before a trial request
+     */
+    public CircuitBreaker(Clock clock, int failureThreshold, long openMillis) {
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Ask to send a request. Every request that is allowed must be followed by a call to
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onCancelled()}.
+     *
+     * @return true if the request may be sent
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.currentTimeMillis() - openedAt >= openMillis) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Report that an allowed request succeeded.
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Report that an allowed request failed.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Report that an allowed request was given up by the caller before it had an outcome. It
+     * says nothing about the host: a trial request is handed back, so the next request becomes
+     * the trial, and nothing else changes.
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * Gets the current state, without moving an expired open breaker to half-open.
+     */
+    public synchronized State getState() {return state;}
+}
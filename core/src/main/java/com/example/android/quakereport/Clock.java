@@ -0,0 +1,21 @@
+package com.example.android.quakereport;
+
+/**
+ * Source of the current time, so time-driven logic such as polling schedules and cache expiry
+ * can be driven by a fake clock instead of the system clock.
+ */
+public interface Clock {
+
+    /** Clock backed by {@link System#currentTimeMillis()}. */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Gets the current time in milliseconds.
+     */
+    long currentTimeMillis();
+}
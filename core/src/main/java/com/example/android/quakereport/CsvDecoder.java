@@ -0,0 +1,432 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder for the CSV response returned by the USGS with {@code format=csv}.
+ *
+ * The CSV format carries the same event fields as GeoJSON without the repeated property names,
+ * URLs and titles, so the same events take about a third of the bytes. The decoder reads bytes
+ * straight from the stream into a reused record buffer, without a Reader, and parses numbers
+ * and ISO 8601 times in place. Per event it only allocates the id and place strings and the
+ * {@link Earthquake} itself. Event page URLs are not part of the format; they are derived from
+ * the id.
+ *
+ * Rows are kept or dropped by the same rules as {@link GeoJsonStreamDecoder}: an event needs a
+ * magnitude, a place and a time, and here an id to derive its URL from.
+ */
+public final class CsvDecoder implements QueryUtils.ResponseDecoder {
+
+    /** Value of the USGS format parameter that selects this format. */
+    public static final String FORMAT = "csv";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Columns the app reads, by their name in the header row
+    private static final String[] COLUMNS = {
+            "time", "latitude", "longitude", "depth", "mag", "id", "updated", "place"};
+    private static final int TIME = 0;
+    private static final int LATITUDE = 1;
+    private static final int LONGITUDE = 2;
+    private static final int DEPTH = 3;
+    private static final int MAG = 4;
+    private static final int ID = 5;
+    private static final int UPDATED = 6;
+    private static final int PLACE = 7;
+
+    // Powers of ten a double holds exactly, for parsing decimals without rounding twice
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // Largest number of significant digits a long holds exactly in a double
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public String getContentType() {
+        return "text/csv";
+    }
+
+    /**
+     * Decode the rows of a CSV response and pass each earthquake to the listener.
+     *
+     * The stream is not closed; it stays owned by the caller.
+     *
+     * @param inputStream CSV response from the server, starting with the header row
+     * @param listener receives each earthquake as it is parsed
+     * @return number of earthquakes passed to the listener
+     * @throws IOException if the stream cannot be read or lacks a column the app needs
+     */
+    @Override
+    public int decode(InputStream inputStream, GeoJsonStreamDecoder.EarthquakeListener listener)
+            throws IOException {
+        Records records = new Records(inputStream);
+        if (!records.next()) {
+            // An empty body: the USGS sends no header when nothing matches
+            return 0;
+        }
+        int[] columns = findColumns(records);
+
+        int count = 0;
+        while (records.next()) {
+            Earthquake earthquake = readRow(records, columns);
+            if (earthquake != null) {
+                listener.onEarthquake(earthquake);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Map the columns the app reads to their position in the header row.
+     */
+    private static int[] findColumns(Records header) throws IOException {
+        int[] columns = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i] = -1;
+            for (int field = 0; field < header.fieldCount; field++) {
+                if (header.fieldEquals(field, COLUMNS[i])) {
+                    columns[i] = field;
+                    break;
+                }
+            }
+            if (columns[i] < 0) {
+                throw new IOException("Missing CSV column " + COLUMNS[i]);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Build the earthquake of the current row, or return null if the row does not carry all
+     * the fields the app needs.
+     */
+    private static Earthquake readRow(Records row, int[] columns) {
+        double mag = parseDouble(row, columns[MAG]);
+        long time = parseIsoTime(row, columns[TIME]);
+        if (Double.isNaN(mag) || time == Long.MIN_VALUE
+                || row.isEmpty(columns[PLACE]) || row.isEmpty(columns[ID])) {
+            return null;
+        }
+        long updated = parseIsoTime(row, columns[UPDATED]);
+        return new Earthquake(row.getString(columns[ID]), mag, row.getString(columns[PLACE]),
+                time, null, updated == Long.MIN_VALUE ? time : updated,
+                parseDouble(row, columns[LATITUDE]), parseDouble(row, columns[LONGITUDE]),
+                parseDouble(row, columns[DEPTH]));
+    }
+
+    /**
+     * Parse a decimal field such as "-117.5993333" or "2.1e-05" in place.
+     *
+     * @return the value, or NaN if the field is empty, missing or not a number
+     */
+    static double parseDouble(Records row, int field) {
+        if (field >= row.fieldCount) {
+            return Double.NaN;
+        }
+        byte[] bytes = row.bytes;
+        int position = row.starts[field];
+        int end = row.ends[field];
+        if (position == end) {
+            return Double.NaN;
+        }
+
+        boolean negative = false;
+        if (bytes[position] == '-' || bytes[position] == '+') {
+            negative = bytes[position] == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; position < end; position++) {
+            byte b = bytes[position];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    // Leading zeros are not significant
+                    if (fraction) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (++digits > MAX_EXACT_DIGITS) {
+                    return parseSlowly(row, field);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction) {
+                    scale--;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            return Double.NaN;
+        }
+        if (position < end) {
+            if (bytes[position] != 'e' && bytes[position] != 'E') {
+                return Double.NaN;
+            }
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+                negativeExponent = bytes[position] == '-';
+                position++;
+            }
+            int exponent = 0;
+            if (position == end) {
+                return Double.NaN;
+            }
+            for (; position < end; position++) {
+                byte b = bytes[position];
+                if (b < '0' || b > '9' || exponent > 1000) {
+                    return parseSlowly(row, field);
+                }
+                exponent = exponent * 10 + (b - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        // An exact mantissa times or divided by an exact power of ten rounds only once, so
+        // the result is the same as Double.parseDouble
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        } else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else {
+            return parseSlowly(row, field);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseSlowly(Records row, int field) {
+        try {
+            return Double.parseDouble(row.getString(field));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parse a UTC time such as "2018-03-03T23:57:36.780Z" in place.
+     *
+     * @return the time in milliseconds, or Long.MIN_VALUE if the field is empty, missing or
+     *         not such a time
+     */
+    static long parseIsoTime(Records row, int field) {
+        if (field >= row.fieldCount) {
+            return Long.MIN_VALUE;
+        }
+        byte[] bytes = row.bytes;
+        int start = row.starts[field];
+        int end = row.ends[field];
+        // Up to the seconds, the layout is fixed: yyyy-MM-ddTHH:mm:ss
+        if (end - start < 19 || bytes[start + 4] != '-' || bytes[start + 7] != '-'
+                || bytes[start + 10] != 'T' || bytes[start + 13] != ':'
+                || bytes[start + 16] != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(bytes, start, 4);
+        int month = digits(bytes, start + 5, 2);
+        int day = digits(bytes, start + 8, 2);
+        int hour = digits(bytes, start + 11, 2);
+        int minute = digits(bytes, start + 14, 2);
+        int second = digits(bytes, start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return Long.MIN_VALUE;
+        }
+
+        // Optional fraction of a second, then an optional Z
+        int position = start + 19;
+        int millis = 0;
+        if (position < end && bytes[position] == '.') {
+            position++;
+            int scale = 100;
+            for (; position < end && bytes[position] >= '0' && bytes[position] <= '9';
+                 position++) {
+                millis += (bytes[position] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        if (position < end && bytes[position] == 'Z') {
+            position++;
+        }
+        if (position != end) {
+            return Long.MIN_VALUE;
+        }
+
+        long days = daysFromCivil(year, month, day);
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+    }
+
+    /**
+     * Parse a fixed number of decimal digits.
+     *
+     * @return the value, or -1 if a byte is not a digit
+     */
+    private static int digits(byte[] bytes, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of days between 1970-01-01 and a date of the proleptic Gregorian
+     * calendar, without a Calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        // Count years from March, so the leap day ends the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Reads one CSV record at a time from a byte stream. Quoted fields may hold commas, line
+     * breaks and doubled quotes. The unquoted bytes of every field of the current record are
+     * kept in one buffer, with the bounds of each field, and all buffers are reused from record
+     * to record.
+     */
+    static final class Records {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+
+        byte[] bytes = new byte[256];
+        int[] starts = new int[32];
+        int[] ends = new int[32];
+        int fieldCount;
+
+        Records(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Read the next non-empty record.
+         *
+         * @return false at the end of the stream
+         */
+        boolean next() throws IOException {
+            do {
+                if (!readRecord()) {
+                    return false;
+                }
+            } while (fieldCount == 1 && starts[0] == ends[0]);
+            return true;
+        }
+
+        private boolean readRecord() throws IOException {
+            int length = 0;
+            fieldCount = 0;
+            int b = read();
+            if (b == -1) {
+                return false;
+            }
+            startField(length);
+            boolean quoted = false;
+            while (b != -1) {
+                if (quoted) {
+                    if (b == '"') {
+                        b = read();
+                        if (b != '"') {
+                            // Closing quote; the byte after it is handled as unquoted
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    length = append(length, b);
+                } else if (b == ',') {
+                    ends[fieldCount - 1] = length;
+                    startField(length);
+                } else if (b == '\n') {
+                    break;
+                } else if (b == '"') {
+                    quoted = true;
+                } else if (b != '\r') {
+                    length = append(length, b);
+                }
+                b = read();
+            }
+            ends[fieldCount - 1] = length;
+            return true;
+        }
+
+        private void startField(int start) {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, fieldCount * 2);
+                ends = Arrays.copyOf(ends, fieldCount * 2);
+            }
+            starts[fieldCount++] = start;
+        }
+
+        private int append(int length, int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length] = (byte) b;
+            return length + 1;
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        boolean isEmpty(int field) {
+            return field >= fieldCount || starts[field] == ends[field];
+        }
+
+        boolean fieldEquals(int field, String value) {
+            int length = ends[field] - starts[field];
+            if (length != value.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[starts[field] + i] != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String getString(int field) {
+            return new String(bytes, starts[field], ends[field] - starts[field], UTF_8);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.android.quakereport;
+
+import java.util.Date;
+
+/**
+ * {@link Earthquake} represents an occurrence of an earthquake. It contains
+ * a magnitute, location, and time.
+ */
+public class Earthquake  {
+
+    /** Prefix of the USGS event page URL; the event id completes it. */
+    static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    /**
+     * Region names shared by every earthquake. Most events happen in a few hundred regions, so
+     * the same names turn up again and again. Offsets such as "74km NW of " are not pooled:
+     * there are thousands of them, and they would push the regions out of the pool.
+     */
+    private static final StringPool PLACES = new StringPool(4096);
+
+    /**
+     * USGS event id, e.g. "us1000abcd". Null for earthquakes built without one.
+     */
+    private String Id;
+
+    /**
+     * Magnitude of an earthquake.
+     */
+    private double Magnitude;
+
+    /**
+     * The location closest to where the earthquake occurred, split into the offset from it,
+     * e.g. "74km NW of " or null if there is none, and the place itself, e.g. "Rumoi, Japan".
+     * The place comes from {@link #PLACES}.
+     */
+    private String LocationOffset;
+    private String Location;
+
+    /**
+     * Date and time when the earthquake occurred.
+     */
+    private long DateTime;
+
+    /**
+     * URL on the USGS website for the specific earthquake, or null if it is the event page
+     * derived from the id
+     */
+    private String Website;
+
+    /**
+     * Time in milliseconds when USGS last updated the event.
+     */
+    private long Updated;
+
+    /**
+     * Latitude and longitude of the epicenter in degrees, and depth in kilometers. NaN when
+     * the location is unknown.
+     */
+    private double Latitude;
+    private double Longitude;
+    private double Depth;
+
+    /**
+     * Contructs a new Earthquake object with a magnitude, location, date/time, and URL.
+     *
+     * @param magnitude magnitude of the earthquake.
+     * @param location location closest to the earthquake epicenter.
+     * @param timeInMillisecs time in milliseconds of when the earthquake occurred.
+     * @param url USGS website for the specific earthquake
+     */
+    public Earthquake(double magnitude, String location, long timeInMillisecs, String url){
+        this(null, magnitude, location, timeInMillisecs, url, timeInMillisecs);
+    }
+
+    /**
+     * Contructs a new Earthquake object for a USGS event.
+     *
+     * @param id USGS event id.
+     * @param magnitude magnitude of the earthquake.
+     * @param location location closest to the earthquake epicenter.
+     * @param timeInMillisecs time in milliseconds of when the earthquake occurred.
+     * @param url USGS website for the specific earthquake
+     * @param updatedInMillisecs time in milliseconds of when USGS last updated the event.
+     */
+    public Earthquake(String id, double magnitude, String location, long timeInMillisecs,
+                      String url, long updatedInMillisecs){
+        this(id, magnitude, location, timeInMillisecs, url, updatedInMillisecs,
+                Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Contructs a new Earthquake object for a USGS event with a known hypocenter.
+     *
+     * @param id USGS event id.
+     * @param magnitude magnitude of the earthquake.
+     * @param location location closest to the earthquake epicenter.
+     * @param timeInMillisecs time in milliseconds of when the earthquake occurred.
+     * @param url USGS website for the specific earthquake
+     * @param updatedInMillisecs time in milliseconds of when USGS last updated the event.
+     * @param latitude latitude of the epicenter in degrees.
+     * @param longitude longitude of the epicenter in degrees.
+     * @param depth depth of the hypocenter in kilometers.
+     */
+    public Earthquake(String id, double magnitude, String location, long timeInMillisecs,
+                      String url, long updatedInMillisecs, double latitude, double longitude,
+                      double depth){
+        Id = id;
+        Magnitude = magnitude;
+        int offsetIndex = location == null ? -1 : location.indexOf(" of ");
+        if (offsetIndex != -1) {
+            LocationOffset = location.substring(0, offsetIndex + 4);
+            Location = PLACES.intern(location.substring(offsetIndex + 4));
+        } else {
+            Location = PLACES.intern(location);
+        }
+        DateTime = timeInMillisecs;
+        Website = isEventPage(url, id) ? null : url;
+        Updated = updatedInMillisecs;
+        Latitude = latitude;
+        Longitude = longitude;
+        Depth = depth;
+    }
+
+    /**
+     * Gets the USGS event id of the earthquake.
+     *
+     * @return Event id, or null if the earthquake was built without one.
+     */
+    public String getId() {return Id;}
+
+    /**
+     * Gets the magnitude of the earthquake.
+     *
+     * @return Magnitude to display in the app.
+     */
+    public double getMagnitude(){return Magnitude;}
+
+    /**
+     * Gets the location of the earthquake, joined from its offset and primary location on each
+     * call. Lists show the two parts separately and should read them on their own.
+     *
+     * @return Location closest to the earthquake's epicenter, e.g. "74km NW of Rumoi, Japan".
+     */
+    public String getLocation() {
+        return LocationOffset == null ? Location : LocationOffset + Location;
+    }
+
+    /**
+     * Gets the offset part of the location, e.g. "74km NW of ".
+     * @return Offset from the primary location, or null if there is none.
+     */
+    public String getLocationOffset() {return LocationOffset;}
+
+    /**
+     * Gets the location without its offset, e.g. "Rumoi, Japan".
+     * @return Primary location of the earthquake.
+     */
+    public String getPrimaryLocation() {return Location;}
+
+    /**
+     * Gets the Date/time when the earthquake occurred.
+     *
+     * @return Date/time when the earthquake occurred.
+     */
+    public long getDateTime() {return DateTime;}
+
+    /**
+     * Gets the USGS web page for the specific earthquake. The event page URL is built from the
+     * id on each call, e.g. when the earthquake is tapped, rather than stored.
+     * @return URL for the web page containing additional data for a specific earthquake
+     */
+    public String getWebsite() {
+        if (Website != null || Id == null) {
+            return Website;
+        }
+        return EVENT_PAGE_URL + Id;
+    }
+
+    /**
+     * Gets the web page URL if it cannot be derived from the id.
+     * @return URL that is not the event page of the id, or null
+     */
+    String getWebsiteOverride() {return Website;}
+
+    /**
+     * Gets the time when USGS last updated the event.
+     * @return Time in milliseconds of the last update.
+     */
+    public long getUpdated() {return Updated;}
+
+    /**
+     * Gets the latitude of the epicenter.
+     * @return Latitude in degrees, or NaN if unknown.
+     */
+    public double getLatitude() {return Latitude;}
+
+    /**
+     * Gets the longitude of the epicenter.
+     * @return Longitude in degrees, or NaN if unknown.
+     */
+    public double getLongitude() {return Longitude;}
+
+    /**
+     * Gets the depth of the hypocenter.
+     * @return Depth in kilometers, or NaN if unknown.
+     */
+    public double getDepth() {return Depth;}
+
+    /**
+     * Whether a URL is the event page of an id, checked without building the page URL.
+     */
+    private static boolean isEventPage(String url, String id) {
+        return url != null && id != null
+                && url.length() == EVENT_PAGE_URL.length() + id.length()
+                && url.startsWith(EVENT_PAGE_URL)
+                && url.endsWith(id);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running summary of a set of earthquakes for the header above the list: the number of events
+ * per whole-magnitude band, the largest magnitude, and the number of events per hour and per
+ * day for the rate sparklines.
+ *
+ * Events are fed as they are decoded or merged. An event fed again under the same id replaces
+ * its earlier version, so a revised magnitude or time moves it to another band or bucket
+ * instead of counting it twice, and feeding an unchanged event again has no effect. Each update
+ * adjusts a fixed number of primitive counters; the only scan is over the magnitude histogram,
+ * when the largest event is revised down. {@link #snapshot()} copies the counters into an
+ * immutable {@link Snapshot} in time that does not depend on the number of events.
+ *
+ * Hours and days are UTC and kept in ring buffers. Events older than the oldest bucket still
+ * count towards the bands and the maximum, but not towards the sparklines. The rings have room
+ * for as many buckets again after the current one, so events timed ahead of the device's
+ * clock do not push out buckets that are still shown.
+ */
+public final class EarthquakeAggregator {
+
+    /** Number of magnitude bands: below 1, 1 to 2, and so on up to 9 and above. */
+    public static final int BAND_COUNT = 10;
+
+    /** Number of hours covered by the hourly rate, ending with the current hour. */
+    public static final int HOURLY_BUCKETS = 24;
+
+    /** Number of days covered by the daily rate, ending with the current day. */
+    public static final int DAILY_BUCKETS = 30;
+
+    static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    // Magnitudes are histogrammed in hundredths, the precision the USGS reports them in, so
+    // the largest one is known exactly. Magnitudes outside the range fall in the end bins.
+    private static final int MIN_CENTI_MAGNITUDE = -500;
+    private static final int MAX_CENTI_MAGNITUDE = 1200;
+    private static final int MAGNITUDE_BINS = MAX_CENTI_MAGNITUDE - MIN_CENTI_MAGNITUDE + 1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Clock clock;
+
+    private final int[] magnitudeBins = new int[MAGNITUDE_BINS];
+    private final int[] bands = new int[BAND_COUNT];
+    private final TimeBuckets hourly = new TimeBuckets(2 * HOURLY_BUCKETS, HOUR_MILLIS);
+    private final TimeBuckets daily = new TimeBuckets(2 * DAILY_BUCKETS, DAY_MILLIS);
+
+    /** Highest non-empty magnitude bin, or -1 if there are no events. */
+    private int maxBin = -1;
+    private int eventCount;
+    private long version;
+
+    /** Slot of each event fed so far, by event id. */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    // What each slot's event contributed, so a revision can take it back
+    private int[] slotBins = new int[INITIAL_CAPACITY];
+    private long[] slotTimes = new long[INITIAL_CAPACITY];
+    private int slotCount;
+
+    /**
+     * Constructs an empty aggregator.
+     *
+     * @param clock source of the current time, which ends the sparklines
+     */
+    public EarthquakeAggregator(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Add an event, or replace the earlier version of an event with the same id.
+     */
+    public void add(Earthquake earthquake) {
+        add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getDateTime());
+    }
+
+    /**
+     * Add every event of a list, replacing earlier versions of the same events.
+     */
+    public synchronized void addAll(List<Earthquake> earthquakes) {
+        for (Earthquake earthquake : earthquakes) {
+            add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getDateTime());
+        }
+    }
+
+    /**
+     * Add an event from its individual fields, or replace the earlier version of an event with
+     * the same id. Events without a magnitude are ignored.
+     *
+     * @param id USGS event id; events without one cannot be revised later
+     * @param magnitude magnitude of the event
+     * @param timeInMillisecs time in milliseconds of when the event occurred
+     */
+    public synchronized void add(String id, double magnitude, long timeInMillisecs) {
+        if (Double.isNaN(magnitude)) {
+            return;
+        }
+        int bin = magnitudeBin(magnitude);
+        if (id != null) {
+            Integer slot = slots.get(id);
+            if (slot != null) {
+                revise(slot, bin, timeInMillisecs);
+                return;
+            }
+            if (slotCount == slotBins.length) {
+                slotBins = Arrays.copyOf(slotBins, slotCount * 2);
+                slotTimes = Arrays.copyOf(slotTimes, slotCount * 2);
+            }
+            slots.put(id, slotCount);
+            slotBins[slotCount] = bin;
+            slotTimes[slotCount] = timeInMillisecs;
+            slotCount++;
+        }
+        record(bin, timeInMillisecs);
+        eventCount++;
+        version++;
+    }
+
+    /**
+     * Forget every event.
+     */
+    public synchronized void clear() {
+        Arrays.fill(magnitudeBins, 0);
+        Arrays.fill(bands, 0);
+        hourly.clear();
+        daily.clear();
+        maxBin = -1;
+        eventCount = 0;
+        slots.clear();
+        slotCount = 0;
+        version++;
+    }
+
+    /**
+     * Copy the current statistics, with the sparklines ending at the current hour and day.
+     */
+    public synchronized Snapshot snapshot() {
+        long now = clock.currentTimeMillis();
+        int[] hourlyCounts = new int[HOURLY_BUCKETS];
+        int[] dailyCounts = new int[DAILY_BUCKETS];
+        hourly.copyTo(hourlyCounts, floorDiv(now, HOUR_MILLIS));
+        daily.copyTo(dailyCounts, floorDiv(now, DAY_MILLIS));
+        double maxMagnitude = maxBin < 0
+                ? Double.NaN
+                : (maxBin + MIN_CENTI_MAGNITUDE) / 100.0;
+        return new Snapshot(version, now, eventCount, bands.clone(), maxMagnitude,
+                hourlyCounts, dailyCounts);
+    }
+
+    private void revise(int slot, int bin, long timeInMillisecs) {
+        int oldBin = slotBins[slot];
+        long oldTime = slotTimes[slot];
+        if (oldBin == bin && oldTime == timeInMillisecs) {
+            return;
+        }
+        unrecord(oldBin, oldTime);
+        record(bin, timeInMillisecs);
+        slotBins[slot] = bin;
+        slotTimes[slot] = timeInMillisecs;
+        version++;
+    }
+
+    private void record(int bin, long timeInMillisecs) {
+        magnitudeBins[bin]++;
+        bands[band(bin)]++;
+        if (bin > maxBin) {
+            maxBin = bin;
+        }
+        hourly.add(timeInMillisecs, 1);
+        daily.add(timeInMillisecs, 1);
+    }
+
+    private void unrecord(int bin, long timeInMillisecs) {
+        magnitudeBins[bin]--;
+        bands[band(bin)]--;
+        // Only a revision of the largest event needs to look for the next largest
+        while (maxBin >= 0 && magnitudeBins[maxBin] == 0) {
+            maxBin--;
+        }
+        hourly.add(timeInMillisecs, -1);
+        daily.add(timeInMillisecs, -1);
+    }
+
+    private static int magnitudeBin(double magnitude) {
+        long centi = Math.round(magnitude * 100);
+        return (int) (Math.max(MIN_CENTI_MAGNITUDE, Math.min(MAX_CENTI_MAGNITUDE, centi))
+                - MIN_CENTI_MAGNITUDE);
+    }
+
+    private static int band(int bin) {
+        int centi = bin + MIN_CENTI_MAGNITUDE;
+        return centi < 0 ? 0 : Math.min(BAND_COUNT - 1, centi / 100);
+    }
+
+    private static long floorDiv(long value, long divisor) {
+        long quotient = value / divisor;
+        return value % divisor < 0 ? quotient - 1 : quotient;
+    }
+
+    /**
+     * Event counts per bucket of a fixed width, for the most recent buckets only. Each slot of
+     * the ring remembers which bucket it counts; a slot is taken over by a newer bucket, and
+     * counts for buckets older than the one a slot holds are dropped.
+     */
+    private static final class TimeBuckets {
+        private final long width;
+        private final int[] counts;
+        private final long[] buckets;
+
+        TimeBuckets(int size, long width) {
+            this.width = width;
+            counts = new int[size];
+            buckets = new long[size];
+            clear();
+        }
+
+        void add(long timeInMillisecs, int delta) {
+            long bucket = floorDiv(timeInMillisecs, width);
+            int slot = slot(bucket);
+            if (buckets[slot] == bucket) {
+                counts[slot] += delta;
+            } else if (buckets[slot] < bucket && delta > 0) {
+                buckets[slot] = bucket;
+                counts[slot] = delta;
+            }
+        }
+
+        /**
+         * Copy the counts of the buckets ending with the given one, oldest first.
+         */
+        void copyTo(int[] out, long lastBucket) {
+            for (int i = 0; i < out.length; i++) {
+                long bucket = lastBucket - (out.length - 1) + i;
+                int slot = slot(bucket);
+                out[i] = buckets[slot] == bucket ? counts[slot] : 0;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            Arrays.fill(buckets, Long.MIN_VALUE);
+        }
+
+        private int slot(long bucket) {
+            int slot = (int) (bucket % counts.length);
+            return slot < 0 ? slot + counts.length : slot;
+        }
+    }
+
+    /**
+     * Statistics of the events at one moment. Never changes once created.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final long time;
+        private final int eventCount;
+        private final int[] bandCounts;
+        private final double maxMagnitude;
+        private final int[] hourlyCounts;
+        private final int[] dailyCounts;
+
+        private Snapshot(long version, long time, int eventCount, int[] bandCounts,
+                         double maxMagnitude, int[] hourlyCounts, int[] dailyCounts) {
+            this.version = version;
+            this.time = time;
+            this.eventCount = eventCount;
+            this.bandCounts = bandCounts;
+            this.maxMagnitude = maxMagnitude;
+            this.hourlyCounts = hourlyCounts;
+            this.dailyCounts = dailyCounts;
+        }
+
+        /**
+         * Gets a number that changes whenever an event is added or revised, e.g. to skip
+         * redrawing an unchanged header. The sparklines moving on with the clock does not
+         * change it.
+         */
+        public long getVersion() {return version;}
+
+        /** Time the snapshot was taken, in milliseconds. */
+        public long getTime() {return time;}
+
+        public int getEventCount() {return eventCount;}
+
+        /**
+         * Gets the number of events in a magnitude band.
+         *
+         * @param band 0 for magnitudes below 1, 1 for 1 up to 2, ... 9 for 9 and above
+         */
+        public int getBandCount(int band) {return bandCounts[band];}
+
+        /** Largest magnitude, or NaN if there are no events. */
+        public double getMaxMagnitude() {return maxMagnitude;}
+
+        /**
+         * Gets the number of events in each of the last {@link #HOURLY_BUCKETS} hours, oldest
+         * first and ending with the current hour.
+         */
+        public int[] getHourlyCounts() {return hourlyCounts.clone();}
+
+        /**
+         * Gets the number of events in each of the last {@link #DAILY_BUCKETS} days, oldest
+         * first and ending with the current day.
+         */
+        public int[] getDailyCounts() {return dailyCounts.clone();}
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats the magnitude, date, time and place of an {@link Earthquake} the way a row of the
+ * list shows them.
+ *
+ * The formatters are created once, for the default locale at construction time, and shared
+ * by every call, so a formatter should be replaced when the locale changes.
+ */
+public final class EarthquakeFormatter {
+
+    private final DecimalFormat magnitudeFormat;
+    private final SimpleDateFormat dateFormat;
+    private final SimpleDateFormat timeFormat;
+
+    /**
+     * Constructs a new formatter for the default locale.
+     */
+    public EarthquakeFormatter() {
+        magnitudeFormat = new DecimalFormat("0.0");
+        dateFormat = new SimpleDateFormat("LLL dd, yyyy");
+        timeFormat = new SimpleDateFormat("h:mm a");
+    }
+
+    /**
+     * Return the magnitude formatted to one decimal point.
+     */
+    public synchronized String formatMagnitude(double magnitude) {
+        return magnitudeFormat.format(magnitude);
+    }
+
+    /**
+     * Return the formatted date string (i.e. "Mar 3, 1984") from a time in milliseconds.
+     */
+    public synchronized String formatDate(long timeInMillis) {
+        return dateFormat.format(new Date(timeInMillis));
+    }
+
+    /**
+     * Return the formatted time string (i.e. "4:30 PM") from a time in milliseconds.
+     */
+    public synchronized String formatTime(long timeInMillis) {
+        return timeFormat.format(new Date(timeInMillis));
+    }
+
+    /**
+     * Parse location offset from the place value or use "Near the" as the offset.
+     */
+    public String getLocationOffset(String placeValue) {
+        int offsetIndex = placeValue.indexOf(" of ");
+        return formatLocationOffset(
+                offsetIndex != -1 ? placeValue.substring(0, offsetIndex + 4) : null);
+    }
+
+    /**
+     * Return the offset of a place that was already split, or "Near the" if it has none.
+     */
+    public String formatLocationOffset(String locationOffset) {
+        return locationOffset != null ? locationOffset : "Near the";
+    }
+
+    /**
+     * Parse primary location from the place value.
+     */
+    public String getPrimaryLocation(String placeValue) {
+        int offsetIndex = placeValue.indexOf(" of ");
+        return offsetIndex != -1 ? placeValue.substring(offsetIndex + 4) : placeValue;
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.android.quakereport;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary copy of a result set, saved after a list is loaded and memory-mapped on the
+ * next launch so the list can be shown before anything else has been read or fetched.
+ *
+ * A snapshot file starts with a fixed header: the magic bytes "QKSS", a format version, the
+ * length of the body and a CRC-32 of the body. The body holds a table of distinct strings (ids,
+ * places, the result set's key and any URL that cannot be derived from its id), followed by one
+ * record per row. Every number is a varint: times are stored as the difference to the previous
+ * row's time, update times as the difference to the row's own time, magnitudes in hundredths,
+ * coordinates in hundred-thousandths of a degree and depths in meters. Strings are referred to
+ * by their index in the table.
+ *
+ * Reading a file that was cut short, altered or written by another version of the format fails
+ * with an {@link IOException} rather than returning wrong rows.
+ */
+public final class EarthquakeSnapshot {
+
+    /** Version of the format written by this class. Readers reject every other version. */
+    static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = {'Q', 'K', 'S', 'S'};
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 4 + 4;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int HAS_POSITION = 1;
+    private static final int HAS_DEPTH = 1 << 1;
+    private static final int HAS_URL = 1 << 2;
+
+    private static final double MAGNITUDE_SCALE = 100;
+    private static final double DEGREE_SCALE = 100000;
+    private static final double DEPTH_SCALE = 1000;
+
+    private final String key;
+    private final EarthquakeTable table;
+
+    private EarthquakeSnapshot(String key, EarthquakeTable table) {
+        this.key = key;
+        this.table = table;
+    }
+
+    /**
+     * Gets the key the result set was saved under, e.g. the query it answers.
+     */
+    public String getKey() {return key;}
+
+    /**
+     * Gets the rows of the snapshot, in the order they were saved.
+     */
+    public EarthquakeTable getTable() {return table;}
+
+    /**
+     * Save a result set, replacing the previous snapshot in the file only once the new one has
+     * been written completely. Each call writes to a temporary file of its own, so concurrent
+     * writers cannot mix their bytes; the last one to finish wins. Nothing is written, and the
+     * disk is not synced, when the file already holds the same snapshot.
+     *
+     * Magnitudes are rounded to hundredths, coordinates to about a meter and depths to a meter.
+     *
+     * @param file file to save the snapshot to
+     * @param key key to save the result set under, e.g. the query it answers; may be null
+     * @param earthquakes rows to save
+     */
+    public static void write(File file, String key, List<Earthquake> earthquakes)
+            throws IOException {
+        Encoder body = new Encoder(64 + earthquakes.size() * 24);
+        StringTable strings = new StringTable();
+        int keyCode = strings.encode(key);
+
+        // Encode the rows first so the string table is complete when it is written
+        Encoder rows = new Encoder(earthquakes.size() * 16);
+        long previousTime = 0;
+        for (Earthquake earthquake : earthquakes) {
+            String id = earthquake.getId();
+            // Like the table, a row without a URL gets the one derived from its id
+            String url = earthquake.getWebsiteOverride();
+            boolean derivedUrl = url == null;
+            boolean hasPosition = !Double.isNaN(earthquake.getLatitude())
+                    && !Double.isNaN(earthquake.getLongitude());
+            boolean hasDepth = !Double.isNaN(earthquake.getDepth());
+
+            int flags = (hasPosition ? HAS_POSITION : 0) | (hasDepth ? HAS_DEPTH : 0)
+                    | (derivedUrl ? 0 : HAS_URL);
+            rows.writeVarint(flags);
+            rows.writeVarint(strings.encode(id));
+            rows.writeVarint(strings.encode(earthquake.getLocation()));
+            rows.writeSignedVarint(earthquake.getDateTime() - previousTime);
+            rows.writeSignedVarint(earthquake.getUpdated() - earthquake.getDateTime());
+            rows.writeSignedVarint(Math.round(earthquake.getMagnitude() * MAGNITUDE_SCALE));
+            if (!derivedUrl) {
+                rows.writeVarint(strings.encode(url));
+            }
+            if (hasPosition) {
+                rows.writeSignedVarint(Math.round(earthquake.getLatitude() * DEGREE_SCALE));
+                rows.writeSignedVarint(Math.round(earthquake.getLongitude() * DEGREE_SCALE));
+            }
+            if (hasDepth) {
+                rows.writeSignedVarint(Math.round(earthquake.getDepth() * DEPTH_SCALE));
+            }
+            previousTime = earthquake.getDateTime();
+        }
+
+        body.writeVarint(strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(UTF_8);
+            body.writeVarint(bytes.length);
+            body.write(bytes, 0, bytes.length);
+        }
+        body.writeVarint(keyCode);
+        body.writeVarint(earthquakes.size());
+        body.write(rows.bytes, 0, rows.size);
+
+        CRC32 crc = new CRC32();
+        crc.update(body.bytes, 0, body.size);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).put((byte) VERSION).putInt(body.size).putInt((int) crc.getValue());
+
+        if (holds(file, header.array(), body)) {
+            return;
+        }
+
+        File temp = File.createTempFile(file.getName(), TEMP_SUFFIX,
+                file.getAbsoluteFile().getParentFile());
+        boolean moved = false;
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(header.array());
+                out.write(body.bytes, 0, body.size);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            moved = temp.renameTo(file);
+        } finally {
+            if (!moved) {
+                temp.delete();
+            }
+        }
+        if (!moved) {
+            throw new IOException("Could not move snapshot into place " + file);
+        }
+    }
+
+    /**
+     * Whether a file holds exactly the given header and body, e.g. because the same page was
+     * saved before. Reading a small snapshot back is much cheaper than syncing a new one.
+     */
+    private static boolean holds(File file, byte[] header, Encoder body) throws IOException {
+        if (file.length() != header.length + body.size) {
+            return false;
+        }
+        byte[] existing = new byte[(int) file.length()];
+        RandomAccessFile input;
+        try {
+            input = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        try {
+            input.readFully(existing);
+        } catch (EOFException e) {
+            // Replaced by a shorter one in the meantime
+            return false;
+        } finally {
+            input.close();
+        }
+        for (int i = 0; i < existing.length; i++) {
+            byte expected = i < header.length ? header[i] : body.bytes[i - header.length];
+            if (existing[i] != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map a snapshot file into memory and decode it.
+     *
+     * @throws IOException if the file cannot be read, is not a snapshot of this version, or is
+     *         corrupt
+     */
+    public static EarthquakeSnapshot read(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt snapshot: unexpected length " + length);
+            }
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        } finally {
+            input.close();
+        }
+    }
+
+    private static EarthquakeSnapshot decode(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a snapshot");
+        }
+        int version = buffer.get() & 0xff;
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int bodyLength = buffer.getInt();
+        int expectedCrc = buffer.getInt();
+        if (bodyLength != buffer.remaining()) {
+            throw new IOException("Corrupt snapshot: body is " + buffer.remaining()
+                    + " bytes, expected " + bodyLength);
+        }
+
+        // Check the whole body before trusting any of it
+        byte[] scratch = new byte[8192];
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.slice();
+        while (body.hasRemaining()) {
+            int count = Math.min(scratch.length, body.remaining());
+            body.get(scratch, 0, count);
+            crc.update(scratch, 0, count);
+        }
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Corrupt snapshot: checksum mismatch");
+        }
+
+        try {
+            Decoder decoder = new Decoder(buffer.slice());
+            String[] strings = new String[decoder.readCount()];
+            for (int i = 0; i < strings.length; i++) {
+                int byteLength = decoder.readCount();
+                if (byteLength > scratch.length) {
+                    scratch = new byte[byteLength];
+                }
+                decoder.buffer.get(scratch, 0, byteLength);
+                strings[i] = new String(scratch, 0, byteLength, UTF_8);
+            }
+            String key = decoder.readString(strings);
+
+            int count = decoder.readCount();
+            EarthquakeTable table = new EarthquakeTable(count);
+            long time = 0;
+            for (int i = 0; i < count; i++) {
+                int flags = (int) decoder.readVarint();
+                String id = decoder.readString(strings);
+                String place = decoder.readString(strings);
+                time += decoder.readSignedVarint();
+                long updated = time + decoder.readSignedVarint();
+                double magnitude = decoder.readSignedVarint() / MAGNITUDE_SCALE;
+                String url = (flags & HAS_URL) != 0 ? decoder.readString(strings) : null;
+                double latitude = Double.NaN;
+                double longitude = Double.NaN;
+                double depth = Double.NaN;
+                if ((flags & HAS_POSITION) != 0) {
+                    latitude = decoder.readSignedVarint() / DEGREE_SCALE;
+                    longitude = decoder.readSignedVarint() / DEGREE_SCALE;
+                }
+                if ((flags & HAS_DEPTH) != 0) {
+                    depth = decoder.readSignedVarint() / DEPTH_SCALE;
+                }
+                table.add(id, magnitude, place, time, url, updated, latitude, longitude, depth);
+            }
+            if (decoder.buffer.hasRemaining()) {
+                throw new IOException("Corrupt snapshot: trailing bytes");
+            }
+            return new EarthquakeSnapshot(key, table);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            // Only reachable if a damaged body happened to pass the checksum
+            throw new IOException("Corrupt snapshot", e);
+        }
+    }
+
+    /**
+     * Distinct strings in the order they were first seen. Code 0 stands for null; every other
+     * code is one more than the string's index.
+     */
+    private static final class StringTable {
+        final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                values.add(value);
+                code = values.size();
+                codes.put(value, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Growable byte array with varint writers.
+     */
+    private static final class Encoder {
+        byte[] bytes;
+        int size;
+
+        Encoder(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void write(byte[] source, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(source, offset, bytes, size, count);
+            size += count;
+        }
+
+        /** Write a non-negative number, seven bits per byte, low bits first. */
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7fL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /** Write a number of either sign, zigzag-encoded so small magnitudes stay short. */
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Varint readers over a buffer.
+     */
+    private static final class Decoder {
+        final ByteBuffer buffer;
+
+        Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt snapshot: varint too long");
+        }
+
+        long readSignedVarint() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /** Read a count or length, which cannot exceed what is left of the buffer. */
+        int readCount() throws IOException {
+            long value = readVarint();
+            if (value > buffer.remaining()) {
+                throw new IOException("Corrupt snapshot: count " + value + " out of range");
+            }
+            return (int) value;
+        }
+
+        String readString(String[] strings) throws IOException {
+            long code = readVarint();
+            if (code > strings.length) {
+                throw new IOException("Corrupt snapshot: string " + code + " out of range");
+            }
+            return code == 0 ? null : strings[(int) code - 1];
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented container for large sets of earthquakes.
+ *
+ * A {@code List<Earthquake>} pays for an object header and four references per event, plus a
+ * full copy of every place and URL string. This table keeps magnitudes and times in primitive
+ * arrays and derives the USGS event page URL from the event id when it is asked for. Places
+ * are split into their offset, e.g. "74km NW of ", and their region, e.g. "Rumoi, Japan";
+ * each distinct part is stored once and referred to by index. Whole places are nearly all
+ * distinct, but a few thousand offsets and a few hundred regions make up all of them. Rows are
+ * read through a reusable {@link Row} view, so binding a list does not create an object per
+ * row.
+ */
+public final class EarthquakeTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private String[] ids;
+    private double[] magnitudes;
+    private long[] times;
+    private long[] updated;
+    private int[] offsetCodes;
+    private int[] placeCodes;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] depths;
+
+    /**
+     * Distinct place offsets and regions, indexed by the codes in {@link #offsetCodes} and
+     * {@link #placeCodes}. A place without an offset has the offset code -1.
+     */
+    private final List<String> places = new ArrayList<>();
+    private final Map<String, Integer> placeCodesByValue = new HashMap<>();
+
+    /** URLs that cannot be derived from the event id, by row. Usually empty. */
+    private final Map<Integer, String> urlOverrides = new HashMap<>();
+
+    /**
+     * Constructs an empty table.
+     */
+    public EarthquakeTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty table with room for the given number of rows.
+     *
+     * @param capacity number of rows to allocate up front
+     */
+    public EarthquakeTable(int capacity) {
+        capacity = Math.max(1, capacity);
+        ids = new String[capacity];
+        magnitudes = new double[capacity];
+        times = new long[capacity];
+        updated = new long[capacity];
+        offsetCodes = new int[capacity];
+        placeCodes = new int[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        depths = new double[capacity];
+    }
+
+    /**
+     * Gets the number of rows in the table.
+     */
+    public int size() {return size;}
+
+    /**
+     * Append an earthquake to the table.
+     */
+    public void add(Earthquake earthquake) {
+        // The earthquake already holds its place split, so it is not joined to be split again
+        add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocationOffset(),
+                earthquake.getPrimaryLocation(), earthquake.getDateTime(),
+                earthquake.getWebsiteOverride(), earthquake.getUpdated(),
+                earthquake.getLatitude(), earthquake.getLongitude(), earthquake.getDepth());
+    }
+
+    /**
+     * Append an earthquake to the table from its individual fields.
+     *
+     * @param id USGS event id, may be null
+     * @param magnitude magnitude of the earthquake
+     * @param location location closest to the earthquake epicenter
+     * @param timeInMillisecs time in milliseconds of when the earthquake occurred
+     * @param url USGS website for the specific earthquake, or null to derive it from the id
+     * @param updatedInMillisecs time in milliseconds of when USGS last updated the event
+     */
+    public void add(String id, double magnitude, String location, long timeInMillisecs,
+                    String url, long updatedInMillisecs) {
+        add(id, magnitude, location, timeInMillisecs, url, updatedInMillisecs,
+                Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Append an earthquake with a known hypocenter to the table from its individual fields.
+     *
+     * @param id USGS event id, may be null
+     * @param magnitude magnitude of the earthquake
+     * @param location location closest to the earthquake epicenter
+     * @param timeInMillisecs time in milliseconds of when the earthquake occurred
+     * @param url USGS website for the specific earthquake, or null to derive it from the id
+     * @param updatedInMillisecs time in milliseconds of when USGS last updated the event
+     * @param latitude latitude of the epicenter in degrees, NaN if unknown
+     * @param longitude longitude of the epicenter in degrees, NaN if unknown
+     * @param depth depth of the hypocenter in kilometers, NaN if unknown
+     */
+    public void add(String id, double magnitude, String location, long timeInMillisecs,
+                    String url, long updatedInMillisecs, double latitude, double longitude,
+                    double depth) {
+        int offsetIndex = location == null ? -1 : location.indexOf(" of ");
+        if (offsetIndex != -1) {
+            add(id, magnitude, location.substring(0, offsetIndex + 4),
+                    location.substring(offsetIndex + 4), timeInMillisecs, url,
+                    updatedInMillisecs, latitude, longitude, depth);
+        } else {
+            add(id, magnitude, null, location, timeInMillisecs, url, updatedInMillisecs,
+                    latitude, longitude, depth);
+        }
+    }
+
+    private void add(String id, double magnitude, String locationOffset, String location,
+                     long timeInMillisecs, String url, long updatedInMillisecs,
+                     double latitude, double longitude, double depth) {
+        if (size == magnitudes.length) {
+            grow();
+        }
+        ids[size] = id;
+        magnitudes[size] = magnitude;
+        times[size] = timeInMillisecs;
+        updated[size] = updatedInMillisecs;
+        offsetCodes[size] = locationOffset == null ? -1 : encodePlace(locationOffset);
+        placeCodes[size] = encodePlace(location);
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        depths[size] = depth;
+        if (url != null && (id == null || !url.equals(Earthquake.EVENT_PAGE_URL + id))) {
+            urlOverrides.put(size, url);
+        }
+        size++;
+    }
+
+    /**
+     * Append every earthquake of a list.
+     */
+    public void addAll(List<Earthquake> earthquakes) {
+        for (Earthquake earthquake : earthquakes) {
+            add(earthquake);
+        }
+    }
+
+    public String getId(int position) {return ids[checkPosition(position)];}
+
+    public double getMagnitude(int position) {return magnitudes[checkPosition(position)];}
+
+    /**
+     * Gets the place of the earthquake at a position, joined from its offset and region on each
+     * call.
+     */
+    public String getLocation(int position) {
+        int offsetCode = offsetCodes[checkPosition(position)];
+        String location = places.get(placeCodes[position]);
+        return offsetCode == -1 ? location : places.get(offsetCode) + location;
+    }
+
+    /**
+     * Gets the offset part of the place at a position, e.g. "74km NW of ", or null if there is
+     * none.
+     */
+    public String getLocationOffset(int position) {
+        int offsetCode = offsetCodes[checkPosition(position)];
+        return offsetCode == -1 ? null : places.get(offsetCode);
+    }
+
+    /**
+     * Gets the place at a position without its offset, e.g. "Rumoi, Japan".
+     */
+    public String getPrimaryLocation(int position) {
+        return places.get(placeCodes[checkPosition(position)]);
+    }
+
+    public long getDateTime(int position) {return times[checkPosition(position)];}
+
+    public long getUpdated(int position) {return updated[checkPosition(position)];}
+
+    public double getLatitude(int position) {return latitudes[checkPosition(position)];}
+
+    public double getLongitude(int position) {return longitudes[checkPosition(position)];}
+
+    public double getDepth(int position) {return depths[checkPosition(position)];}
+
+    /**
+     * Gets the USGS web page for the earthquake at a position. The URL is built from the
+     * event id on each call rather than stored.
+     */
+    public String getWebsite(int position) {
+        String override = urlOverrides.get(checkPosition(position));
+        if (override != null) {
+            return override;
+        }
+        String id = ids[position];
+        return id == null ? null : Earthquake.EVENT_PAGE_URL + id;
+    }
+
+    /**
+     * Materialise the row at a position as an {@link Earthquake}, e.g. when it is tapped.
+     */
+    public Earthquake get(int position) {
+        return new Earthquake(getId(position), getMagnitude(position), getLocation(position),
+                getDateTime(position), urlOverrides.get(position), getUpdated(position),
+                getLatitude(position), getLongitude(position), getDepth(position));
+    }
+
+    /**
+     * Create a reusable view over the rows of this table.
+     */
+    public Row newRow() {
+        return new Row();
+    }
+
+    private int encodePlace(String location) {
+        Integer code = placeCodesByValue.get(location);
+        if (code == null) {
+            code = places.size();
+            places.add(location);
+            placeCodesByValue.put(location, code);
+        }
+        return code;
+    }
+
+    private void grow() {
+        int capacity = magnitudes.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        magnitudes = Arrays.copyOf(magnitudes, capacity);
+        times = Arrays.copyOf(times, capacity);
+        updated = Arrays.copyOf(updated, capacity);
+        offsetCodes = Arrays.copyOf(offsetCodes, capacity);
+        placeCodes = Arrays.copyOf(placeCodes, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+    }
+
+    private int checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+        return position;
+    }
+
+    /**
+     * Flyweight view of one row of the table. Move it to a position and read the fields of that
+     * row; the same instance can be reused for every row of a list.
+     */
+    public final class Row {
+        private int position = -1;
+
+        private Row() {
+        }
+
+        /**
+         * Point this view at another row.
+         *
+         * @return this view, for chaining
+         */
+        public Row moveTo(int position) {
+            this.position = checkPosition(position);
+            return this;
+        }
+
+        public int getPosition() {return position;}
+
+        public String getId() {return EarthquakeTable.this.getId(position);}
+
+        public double getMagnitude() {return EarthquakeTable.this.getMagnitude(position);}
+
+        public String getLocation() {return EarthquakeTable.this.getLocation(position);}
+
+        public String getLocationOffset() {
+            return EarthquakeTable.this.getLocationOffset(position);
+        }
+
+        public String getPrimaryLocation() {
+            return EarthquakeTable.this.getPrimaryLocation(position);
+        }
+
+        public long getDateTime() {return EarthquakeTable.this.getDateTime(position);}
+
+        public long getUpdated() {return EarthquakeTable.this.getUpdated(position);}
+
+        public String getWebsite() {return EarthquakeTable.this.getWebsite(position);}
+
+        public double getLatitude() {return EarthquakeTable.this.getLatitude(position);}
+
+        public double getLongitude() {return EarthquakeTable.this.getLongitude(position);}
+
+        public double getDepth() {return EarthquakeTable.this.getDepth(position);}
+    }
+}
@@ -0,0 +1,553 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index over the raw bytes of a USGS GeoJSON response, decoding each event only when it is
+ * asked for.
+ *
+ * {@link #scan(byte[])} walks the response once without building any strings. For every
+ * complete feature it parses the magnitude, time and update time, which sorting, filtering and
+ * merging need, and records where the id, place, URL, event type and coordinates start. Those
+ * are decoded from the bytes when a position is read, and the last few events built by
+ * {@link #get(int)} are kept, so binding the same rows again does not decode them twice.
+ *
+ * The scan relies on the response being well-formed JSON; it only reports truncated input.
+ * Features are kept or skipped by the same rules as {@link GeoJsonStreamDecoder}.
+ */
+public final class GeoJsonIndex {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Number of decoded events kept by default. */
+    private static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // What a container is, by where it appears in the document
+    private static final int ROOT = 0;
+    private static final int FEATURES = 1;
+    private static final int FEATURE = 2;
+    private static final int PROPERTIES = 3;
+    private static final int GEOMETRY = 4;
+    private static final int OTHER = 5;
+
+    // Member names the scan looks for
+    private static final int KEY_OTHER = 0;
+    private static final int KEY_FEATURES = 1;
+    private static final int KEY_PROPERTIES = 2;
+    private static final int KEY_GEOMETRY = 3;
+    private static final int KEY_ID = 4;
+    private static final int KEY_MAG = 5;
+    private static final int KEY_PLACE = 6;
+    private static final int KEY_TIME = 7;
+    private static final int KEY_UPDATED = 8;
+    private static final int KEY_URL = 9;
+    private static final int KEY_TYPE = 10;
+    private static final int KEY_COORDINATES = 11;
+
+    private static final String[] KEY_NAMES = {null, "features", "properties", "geometry", "id",
+            "mag", "place", "time", "updated", "url", "type", "coordinates"};
+
+    private final byte[] document;
+
+    private int size;
+    private double[] magnitudes = new double[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] updated = new long[INITIAL_CAPACITY];
+
+    // Offsets of the opening quote or bracket of each value, -1 when the value is missing
+    private int[] idOffsets = new int[INITIAL_CAPACITY];
+    private int[] placeOffsets = new int[INITIAL_CAPACITY];
+    private int[] urlOffsets = new int[INITIAL_CAPACITY];
+    private int[] typeOffsets = new int[INITIAL_CAPACITY];
+    private int[] coordinateOffsets = new int[INITIAL_CAPACITY];
+
+    private final Map<Integer, Earthquake> decoded;
+
+    private GeoJsonIndex(byte[] document, final int cacheSize) {
+        this.document = document;
+        decoded = new LinkedHashMap<Integer, Earthquake>(cacheSize * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Earthquake> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Index a response, keeping the default number of decoded events.
+     *
+     * @param document UTF-8 bytes of the response; must not be changed afterwards
+     * @throws IOException if the response ends in the middle of a value
+     */
+    public static GeoJsonIndex scan(byte[] document) throws IOException {
+        return scan(document, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Index a response.
+     *
+     * @param document UTF-8 bytes of the response; must not be changed afterwards
+     * @param cacheSize number of decoded events to keep
+     * @throws IOException if the response ends in the middle of a value
+     */
+    public static GeoJsonIndex scan(byte[] document, int cacheSize) throws IOException {
+        GeoJsonIndex index = new GeoJsonIndex(document, Math.max(1, cacheSize));
+        try {
+            index.scanDocument();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed JSON: unexpected end of input", e);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the number of events in the response.
+     */
+    public int size() {return size;}
+
+    public double getMagnitude(int position) {return magnitudes[checkPosition(position)];}
+
+    public long getDateTime(int position) {return times[checkPosition(position)];}
+
+    public long getUpdated(int position) {return updated[checkPosition(position)];}
+
+    /**
+     * Decode the event id at a position.
+     */
+    public String getId(int position) {
+        return decodeString(idOffsets[checkPosition(position)]);
+    }
+
+    /**
+     * Decode the place at a position.
+     */
+    public String getLocation(int position) {
+        return decodeString(placeOffsets[checkPosition(position)]);
+    }
+
+    /**
+     * Decode the URL at a position.
+     */
+    public String getWebsite(int position) {
+        return decodeString(urlOffsets[checkPosition(position)]);
+    }
+
+    /**
+     * Decode the event type at a position, e.g. "earthquake" or "quarry blast", or null if the
+     * response does not give one.
+     */
+    public String getType(int position) {
+        return decodeString(typeOffsets[checkPosition(position)]);
+    }
+
+    /**
+     * Gets the event at a position, decoding it unless it is one of the events decoded last.
+     */
+    public synchronized Earthquake get(int position) {
+        Earthquake earthquake = decoded.get(position);
+        if (earthquake == null) {
+            earthquake = decode(position);
+            decoded.put(position, earthquake);
+        }
+        return earthquake;
+    }
+
+    /**
+     * Gets a list view of the events, decoded as they are read.
+     */
+    public List<Earthquake> asList() {
+        return new AbstractList<Earthquake>() {
+            @Override
+            public Earthquake get(int position) {
+                return GeoJsonIndex.this.get(position);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Earthquake decode(int position) {
+        int coordinates = coordinateOffsets[position];
+        if (coordinates < 0) {
+            return new Earthquake(getId(position), magnitudes[position], getLocation(position),
+                    times[position], getWebsite(position), updated[position]);
+        }
+        // GeoJSON lists a point as longitude, latitude, depth
+        double[] point = decodePoint(coordinates);
+        return new Earthquake(getId(position), magnitudes[position], getLocation(position),
+                times[position], getWebsite(position), updated[position],
+                point[1], point[0], point[2]);
+    }
+
+    private void scanDocument() throws IOException {
+        byte[] bytes = document;
+        int[] roles = new int[16];
+        boolean[] inObject = new boolean[16];
+        int depth = 0;
+        int key = KEY_OTHER;
+
+        // Fields of the feature being scanned
+        double magnitude = Double.NaN;
+        long time = 0;
+        long updatedTime = 0;
+        boolean hasTime = false;
+        boolean hasUpdated = false;
+        int id = -1;
+        int place = -1;
+        int url = -1;
+        int type = -1;
+        int coordinates = -1;
+
+        int i = 0;
+        int length = bytes.length;
+        while (i < length) {
+            byte b = bytes[i];
+            switch (b) {
+                case ' ':
+                case '\n':
+                case '\r':
+                case '\t':
+                case ':':
+                case ',':
+                    i++;
+                    continue;
+                case '}':
+                case ']':
+                    if (depth == 0) {
+                        throw new IOException("Malformed JSON: unbalanced " + (char) b);
+                    }
+                    if (roles[depth - 1] == FEATURE && isComplete(magnitude, place, hasTime, url)) {
+                        add(magnitude, time, hasUpdated ? updatedTime : time, id, place, url,
+                                type, coordinates);
+                    }
+                    depth--;
+                    i++;
+                    continue;
+                default:
+                    break;
+            }
+
+            int parent = depth == 0 ? -1 : roles[depth - 1];
+            boolean isName = depth > 0 && inObject[depth - 1] && key == KEY_OTHER
+                    && b == '"' && !afterColon(i);
+            if (isName) {
+                int end = skipString(i);
+                key = keyOf(i + 1, end - 1, parent);
+                i = end;
+                continue;
+            }
+
+            // A value: a member of the enclosing object under key, or an array element
+            int valueKey = depth > 0 && inObject[depth - 1] ? key : KEY_OTHER;
+            key = KEY_OTHER;
+            if (b == '{' || b == '[') {
+                int role = OTHER;
+                if (b == '{' && depth == 0) {
+                    role = ROOT;
+                } else if (b == '[' && parent == ROOT && valueKey == KEY_FEATURES) {
+                    role = FEATURES;
+                } else if (b == '{' && parent == FEATURES) {
+                    role = FEATURE;
+                    magnitude = Double.NaN;
+                    hasTime = false;
+                    hasUpdated = false;
+                    id = -1;
+                    place = -1;
+                    url = -1;
+                    type = -1;
+                    coordinates = -1;
+                } else if (b == '{' && parent == FEATURE && valueKey == KEY_PROPERTIES) {
+                    role = PROPERTIES;
+                } else if (b == '{' && parent == FEATURE && valueKey == KEY_GEOMETRY) {
+                    role = GEOMETRY;
+                } else if (b == '[' && parent == GEOMETRY && valueKey == KEY_COORDINATES) {
+                    coordinates = i;
+                }
+                if (depth == roles.length) {
+                    roles = Arrays.copyOf(roles, depth * 2);
+                    inObject = Arrays.copyOf(inObject, depth * 2);
+                }
+                roles[depth] = role;
+                inObject[depth] = b == '{';
+                depth++;
+                i++;
+            } else if (b == '"') {
+                if (parent == FEATURE && valueKey == KEY_ID) {
+                    id = i;
+                } else if (parent == PROPERTIES && valueKey == KEY_PLACE) {
+                    place = i;
+                } else if (parent == PROPERTIES && valueKey == KEY_URL) {
+                    url = i;
+                } else if (parent == PROPERTIES && valueKey == KEY_TYPE) {
+                    type = i;
+                }
+                i = skipString(i);
+            } else {
+                int end = skipLiteral(i);
+                if (parent == PROPERTIES && bytes[i] != 'n') {
+                    if (valueKey == KEY_MAG) {
+                        magnitude = parseDouble(i, end);
+                    } else if (valueKey == KEY_TIME) {
+                        time = parseLong(i, end);
+                        hasTime = true;
+                    } else if (valueKey == KEY_UPDATED) {
+                        updatedTime = parseLong(i, end);
+                        hasUpdated = true;
+                    }
+                }
+                i = end;
+            }
+        }
+        if (depth != 0) {
+            throw new IOException("Malformed JSON: unexpected end of input");
+        }
+    }
+
+    private static boolean isComplete(double magnitude, int place, boolean hasTime, int url) {
+        return !Double.isNaN(magnitude) && place >= 0 && hasTime && url >= 0;
+    }
+
+    private void add(double magnitude, long time, long updatedTime, int id, int place, int url,
+                     int type, int coordinates) {
+        if (size == magnitudes.length) {
+            int capacity = size * 2;
+            magnitudes = Arrays.copyOf(magnitudes, capacity);
+            times = Arrays.copyOf(times, capacity);
+            updated = Arrays.copyOf(updated, capacity);
+            idOffsets = Arrays.copyOf(idOffsets, capacity);
+            placeOffsets = Arrays.copyOf(placeOffsets, capacity);
+            urlOffsets = Arrays.copyOf(urlOffsets, capacity);
+            typeOffsets = Arrays.copyOf(typeOffsets, capacity);
+            coordinateOffsets = Arrays.copyOf(coordinateOffsets, capacity);
+        }
+        magnitudes[size] = magnitude;
+        times[size] = time;
+        updated[size] = updatedTime;
+        idOffsets[size] = id;
+        placeOffsets[size] = place;
+        urlOffsets[size] = url;
+        typeOffsets[size] = type;
+        coordinateOffsets[size] = coordinates;
+        size++;
+    }
+
+    /**
+     * Whether the last non-blank byte before an offset is a colon, i.e. a string there is a
+     * value rather than a member name.
+     */
+    private boolean afterColon(int offset) {
+        int i = offset - 1;
+        while (i >= 0 && (document[i] == ' ' || document[i] == '\n' || document[i] == '\r'
+                || document[i] == '\t')) {
+            i--;
+        }
+        return i >= 0 && document[i] == ':';
+    }
+
+    /**
+     * Identify a member name from its raw bytes, only matching the names that matter in the
+     * container it appears in.
+     */
+    private int keyOf(int start, int end, int container) {
+        int first;
+        int last;
+        switch (container) {
+            case ROOT:
+                first = KEY_FEATURES;
+                last = KEY_FEATURES;
+                break;
+            case FEATURE:
+                first = KEY_PROPERTIES;
+                last = KEY_ID;
+                break;
+            case PROPERTIES:
+                first = KEY_MAG;
+                last = KEY_TYPE;
+                break;
+            case GEOMETRY:
+                first = KEY_COORDINATES;
+                last = KEY_COORDINATES;
+                break;
+            default:
+                return KEY_OTHER;
+        }
+        for (int key = first; key <= last; key++) {
+            if (nameEquals(start, end, KEY_NAMES[key])) {
+                return key;
+            }
+        }
+        return KEY_OTHER;
+    }
+
+    private boolean nameEquals(int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (document[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the offset just past the closing quote of the string starting at an offset.
+     */
+    private int skipString(int offset) {
+        int i = offset + 1;
+        while (document[i] != '"') {
+            i += document[i] == '\\' ? 2 : 1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Gets the offset just past the number, true, false or null starting at an offset.
+     */
+    private int skipLiteral(int offset) {
+        int i = offset;
+        while (i < document.length) {
+            byte b = document[i];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r'
+                    || b == '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private String decodeString(int offset) {
+        if (offset < 0) {
+            return null;
+        }
+        int start = offset + 1;
+        int end = start;
+        boolean escaped = false;
+        while (document[end] != '"') {
+            if (document[end] == '\\') {
+                escaped = true;
+                end++;
+            }
+            end++;
+        }
+        if (!escaped) {
+            return new String(document, start, end - start, UTF_8);
+        }
+
+        // Rare: let the JSON reader resolve the escape sequences
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(document, offset, end + 1 - offset), UTF_8));
+        try {
+            return reader.nextString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed string at offset " + offset, e);
+        }
+    }
+
+    /**
+     * Decode up to three numbers of the array starting at an offset; missing ones are NaN.
+     */
+    private double[] decodePoint(int offset) {
+        double[] point = {Double.NaN, Double.NaN, Double.NaN};
+        int i = offset + 1;
+        for (int index = 0; index < point.length; index++) {
+            while (document[i] == ' ' || document[i] == '\n' || document[i] == '\r'
+                    || document[i] == '\t' || document[i] == ',') {
+                i++;
+            }
+            if (document[i] == ']') {
+                break;
+            }
+            int end = skipLiteral(i);
+            if (document[i] != 'n') {
+                point[index] = parseDouble(i, end);
+            }
+            i = end;
+        }
+        return point;
+    }
+
+    /**
+     * Parse a number, without allocating for plain decimals such as "4.5" or "-117.25".
+     */
+    private double parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = document[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = document[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i != end || digits == 0 || digits > 15) {
+            // Exponents and long mantissas: leave the rounding to the platform
+            return Double.parseDouble(new String(document, start, end - start, UTF_8));
+        }
+        // Both operands are exact, so the division rounds correctly
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private long parseLong(int start, int end) {
+        int i = start;
+        boolean negative = document[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        for (; i < end; i++) {
+            byte b = document[i];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            digits++;
+        }
+        if (i != end || digits == 0 || digits > 18) {
+            // e.g. 1.5E12
+            return (long) parseDouble(start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private int checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+        return position;
+    }
+}
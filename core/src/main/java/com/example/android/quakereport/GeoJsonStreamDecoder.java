@@ -0,0 +1,202 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming decoder for the GeoJSON response returned by the USGS.
+ *
+ * Instead of reading the whole response into a String and building a JSON tree from it, the
+ * decoder walks the response with a pull parser and hands every {@link Earthquake} to a
+ * listener as soon as its feature has been read. Only one feature is held in memory at a time,
+ * so memory use stays flat no matter how large the response is.
+ */
+public final class GeoJsonStreamDecoder {
+
+    /**
+     * Receives each {@link Earthquake} as soon as it has been decoded from the stream.
+     */
+    public interface EarthquakeListener {
+        void onEarthquake(Earthquake earthquake);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link GeoJsonStreamDecoder} object.
+     */
+    private GeoJsonStreamDecoder() {
+    }
+
+    /**
+     * Decode the features of a GeoJSON response and pass each earthquake to the listener.
+     *
+     * The stream is not closed; it stays owned by the caller.
+     *
+     * @param inputStream GeoJSON response from the server
+     * @param listener receives each earthquake as it is parsed
+     * @return number of earthquakes passed to the listener
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     */
+    public static int decode(InputStream inputStream, EarthquakeListener listener)
+            throws IOException {
+        JsonReader reader = new JsonReader(
+                new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        int count = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("features".equals(reader.nextName())) {
+                count += readFeatures(reader, listener);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return count;
+    }
+
+    /**
+     * Read the "features" array, one feature at a time.
+     */
+    private static int readFeatures(JsonReader reader, EarthquakeListener listener)
+            throws IOException {
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Earthquake earthquake = readFeature(reader);
+            if (earthquake != null) {
+                listener.onEarthquake(earthquake);
+                count++;
+            }
+        }
+        reader.endArray();
+        return count;
+    }
+
+    /**
+     * Read a single feature and return the earthquake described by its id and "properties"
+     * object, or null if the feature does not carry all the fields the app needs.
+     */
+    private static Earthquake readFeature(JsonReader reader) throws IOException {
+        Properties properties = null;
+        String id = null;
+        double[] coordinates = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("properties".equals(name)) {
+                properties = readProperties(reader);
+            } else if ("geometry".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                coordinates = readCoordinates(reader);
+            } else if ("id".equals(name) && reader.peek() == JsonToken.STRING) {
+                id = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (properties == null || !properties.isComplete()) {
+            return null;
+        }
+        long updated = properties.hasUpdated ? properties.updated : properties.time;
+        if (coordinates == null) {
+            return new Earthquake(id, properties.mag, properties.place, properties.time,
+                    properties.url, updated);
+        }
+        // GeoJSON lists a point as longitude, latitude, depth
+        return new Earthquake(id, properties.mag, properties.place, properties.time,
+                properties.url, updated, coordinates[1], coordinates[0], coordinates[2]);
+    }
+
+    /**
+     * Read the "coordinates" of a Point geometry as {longitude, latitude, depth}, or return
+     * null if the geometry has no usable coordinates.
+     */
+    private static double[] readCoordinates(JsonReader reader) throws IOException {
+        double[] coordinates = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("coordinates".equals(reader.nextName())
+                    && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                double[] values = {Double.NaN, Double.NaN, Double.NaN};
+                int count = 0;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (count < values.length && reader.peek() == JsonToken.NUMBER) {
+                        values[count] = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                    count++;
+                }
+                reader.endArray();
+                coordinates = count >= 2 ? values : null;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return coordinates;
+    }
+
+    /**
+     * Read the "mag", "place", "time", "updated" and "url" properties of a feature and skip
+     * the rest.
+     */
+    private static Properties readProperties(JsonReader reader) throws IOException {
+        Properties properties = new Properties();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            // USGS sends null for properties it does not know yet, e.g. "mag" on new events
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "mag":
+                    properties.mag = reader.nextDouble();
+                    break;
+                case "place":
+                    properties.place = reader.nextString();
+                    break;
+                case "time":
+                    properties.time = reader.nextLong();
+                    properties.hasTime = true;
+                    break;
+                case "updated":
+                    properties.updated = reader.nextLong();
+                    properties.hasUpdated = true;
+                    break;
+                case "url":
+                    properties.url = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return properties;
+    }
+
+    /**
+     * Properties of a feature, collected until the rest of the feature has been read.
+     */
+    private static final class Properties {
+        double mag = Double.NaN;
+        String place;
+        long time;
+        boolean hasTime;
+        long updated;
+        boolean hasUpdated;
+        String url;
+
+        boolean isComplete() {
+            return !Double.isNaN(mag) && place != null && hasTime && url != null;
+        }
+    }
+}
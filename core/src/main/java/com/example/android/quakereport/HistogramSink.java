@@ -0,0 +1,141 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * {@link MetricsSink} that aggregates every timing into a latency histogram per stage and sums
+ * the counters, so regressions can be compared across releases from a JSON dump.
+ *
+ * Histogram buckets grow in powers of two of microseconds, which keeps the relative error of a
+ * percentile below a factor of two at a fixed, small size whatever the number of samples.
+ */
+public final class HistogramSink implements MetricsSink {
+
+    /** Bucket i holds durations of [2^(i-1), 2^i) microseconds; bucket 0 holds under 1 us. */
+    private static final int BUCKET_COUNT = 32;
+
+    private final long[][] buckets = new long[Metrics.Stage.values().length][BUCKET_COUNT];
+    private final long[] sampleCounts = new long[Metrics.Stage.values().length];
+    private final long[] totalMicros = new long[Metrics.Stage.values().length];
+    private final long[] maxMicros = new long[Metrics.Stage.values().length];
+    private final long[] counters = new long[Metrics.Counter.values().length];
+
+    @Override
+    public synchronized void recordLatency(Metrics.Stage stage, long durationNanos) {
+        long micros = Math.max(0, durationNanos / 1000);
+        int stageIndex = stage.ordinal();
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[stageIndex][bucket]++;
+        sampleCounts[stageIndex]++;
+        totalMicros[stageIndex] += micros;
+        maxMicros[stageIndex] = Math.max(maxMicros[stageIndex], micros);
+    }
+
+    @Override
+    public synchronized void recordCount(Metrics.Counter counter, long amount) {
+        counters[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Gets the number of timings recorded for a stage.
+     */
+    public synchronized long getCount(Metrics.Stage stage) {
+        return sampleCounts[stage.ordinal()];
+    }
+
+    /**
+     * Gets the current value of a counter.
+     */
+    public synchronized long getCount(Metrics.Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * Estimate a percentile of a stage's latency from its histogram.
+     *
+     * @param stage stage to look at
+     * @param percentile percentile between 0 and 100, e.g. 95
+     * @return upper bound of the bucket holding the percentile, in microseconds, or -1 if the
+     *         stage has not been timed yet
+     */
+    public synchronized long getPercentileMicros(Metrics.Stage stage, double percentile) {
+        int stageIndex = stage.ordinal();
+        long count = sampleCounts[stageIndex];
+        if (count == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += buckets[stageIndex][bucket];
+            if (seen >= rank) {
+                return Math.min(maxMicros[stageIndex], 1L << bucket);
+            }
+        }
+        return maxMicros[stageIndex];
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public synchronized void reset() {
+        for (long[] stageBuckets : buckets) {
+            Arrays.fill(stageBuckets, 0);
+        }
+        Arrays.fill(sampleCounts, 0);
+        Arrays.fill(totalMicros, 0);
+        Arrays.fill(maxMicros, 0);
+        Arrays.fill(counters, 0);
+    }
+
+    /**
+     * Dump the histograms and counters as JSON, e.g.
+     * {"stages":{"parse":{"count":3,"mean_us":812,"p50_us":1024,...,"buckets":[0,...]}},
+     * "counters":{"bytes":52113,...}}. Stages that were never timed are left out.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"stages\":{");
+        boolean first = true;
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            int stageIndex = stage.ordinal();
+            long count = sampleCounts[stageIndex];
+            if (count == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(stage.getKey()).append("\":{")
+                    .append("\"count\":").append(count)
+                    .append(",\"mean_us\":").append(totalMicros[stageIndex] / count)
+                    .append(",\"p50_us\":").append(getPercentileMicros(stage, 50))
+                    .append(",\"p95_us\":").append(getPercentileMicros(stage, 95))
+                    .append(",\"p99_us\":").append(getPercentileMicros(stage, 99))
+                    .append(",\"max_us\":").append(maxMicros[stageIndex])
+                    .append(",\"buckets\":[");
+            // Trailing empty buckets carry no information
+            int last = BUCKET_COUNT - 1;
+            while (last > 0 && buckets[stageIndex][last] == 0) {
+                last--;
+            }
+            for (int bucket = 0; bucket <= last; bucket++) {
+                if (bucket > 0) {
+                    json.append(',');
+                }
+                json.append(buckets[stageIndex][bucket]);
+            }
+            json.append("]}");
+        }
+
+        json.append("},\"counters\":{");
+        for (Metrics.Counter counter : Metrics.Counter.values()) {
+            if (counter.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(counter.getKey()).append("\":")
+                    .append(counters[counter.ordinal()]);
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.android.quakereport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Transport used by {@link QueryUtils} to send GET requests to the USGS.
+ *
+ * Implementations own connection management (pooling, keep-alive, compression), so an
+ * alternative HTTP client can be plugged in with {@link QueryUtils#setTransport(HttpTransport)}
+ * without touching the decoding code.
+ */
+public interface HttpTransport {
+
+    /**
+     * Send a GET request.
+     *
+     * @param url URL to request
+     * @param headers extra request headers, e.g. cache validators; may be empty
+     * @return the response; must be closed by the caller to release the connection
+     * @throws IOException if the request could not be sent or no response was received
+     */
+    Response get(URL url, Map<String, String> headers) throws IOException;
+
+    /**
+     * A response received from the server. Closing it releases the underlying connection so
+     * that it can be reused for the next request to the same host.
+     */
+    interface Response extends Closeable {
+
+        /** HTTP status code, e.g. 200 or 304. */
+        int getCode();
+
+        /** Value of a response header, or null if the server did not send it. */
+        String getHeader(String name);
+
+        /** Decompressed response body. */
+        InputStream getBody() throws IOException;
+
+        /**
+         * Abort the response from any thread. A read blocked on the body fails straight away,
+         * and the connection is dropped instead of being reused.
+         */
+        void abort();
+    }
+}
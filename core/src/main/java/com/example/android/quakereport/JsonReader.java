@@ -0,0 +1,436 @@
+package com.example.android.quakereport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull parser for JSON documents, read one token at a time.
+ *
+ * Mirrors the API of {@code android.util.JsonReader} so the decoders read the same on a phone
+ * and on a plain JVM, without depending on the platform's parser. Asking for a token of the
+ * wrong kind throws an {@link IllegalStateException}; input that is not valid JSON throws an
+ * {@link IOException}.
+ */
+public final class JsonReader implements Closeable {
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+
+    /** Token the reader is positioned on, or null if it has not been read yet. */
+    private JsonToken peeked;
+
+    /** Text of the peeked name, string, number or boolean. */
+    private String peekedValue;
+
+    private final StringBuilder scratch = new StringBuilder();
+
+    /**
+     * Constructs a reader over a character stream. Closing the reader closes the stream.
+     */
+    public JsonReader(Reader in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        stackSize--;
+    }
+
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        stackSize--;
+    }
+
+    /**
+     * Whether the current array or object has another element.
+     */
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY
+                && token != JsonToken.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        return peekedValue;
+    }
+
+    /**
+     * Read a string, or a number as its literal text.
+     */
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected a string but was " + token);
+        }
+        peeked = null;
+        return peekedValue;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        return "true".equals(peekedValue);
+    }
+
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+    }
+
+    /**
+     * Read a number, or a string holding one.
+     *
+     * @throws NumberFormatException if the value is not a number
+     */
+    public double nextDouble() throws IOException {
+        return Double.parseDouble(nextNumberText());
+    }
+
+    /**
+     * Read a number that fits in a long, or a string holding one.
+     *
+     * @throws NumberFormatException if the value is not a whole number in range
+     */
+    public long nextLong() throws IOException {
+        String text = nextNumberText();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            // Accept e.g. 1.5E12 as long as it is a whole number
+            double value = Double.parseDouble(text);
+            long result = (long) value;
+            if (result != value) {
+                throw new NumberFormatException("Not a long: " + text);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Read a number that fits in an int, or a string holding one.
+     *
+     * @throws NumberFormatException if the value is not a whole number in range
+     */
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw new NumberFormatException("Not an int: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Skip the next value, including everything nested in it.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            JsonToken token = peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                beginArray();
+                depth++;
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                beginObject();
+                depth++;
+            } else if (token == JsonToken.END_ARRAY) {
+                endArray();
+                depth--;
+            } else if (token == JsonToken.END_OBJECT) {
+                endObject();
+                depth--;
+            } else if (token == JsonToken.END_DOCUMENT) {
+                throw new IllegalStateException("No value to skip");
+            } else {
+                peeked = null;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Gets the kind of the next token without consuming it.
+     */
+    public JsonToken peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        switch (stack[stackSize - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return readValue(nextNonWhitespace(true));
+            case NONEMPTY_DOCUMENT:
+                if (nextNonWhitespace(false) != -1) {
+                    throw syntaxError("Expected the end of the document");
+                }
+                return peeked = JsonToken.END_DOCUMENT;
+            case EMPTY_ARRAY: {
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                int c = nextNonWhitespace(true);
+                return c == ']' ? (peeked = JsonToken.END_ARRAY) : readValue(c);
+            }
+            case NONEMPTY_ARRAY: {
+                int c = nextNonWhitespace(true);
+                if (c == ']') {
+                    return peeked = JsonToken.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                return readValue(nextNonWhitespace(true));
+            }
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT: {
+                int c = nextNonWhitespace(true);
+                if (c == '}') {
+                    return peeked = JsonToken.END_OBJECT;
+                }
+                if (stack[stackSize - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace(true);
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                peekedValue = readString();
+                return peeked = JsonToken.NAME;
+            }
+            case DANGLING_NAME:
+                if (nextNonWhitespace(true) != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return readValue(nextNonWhitespace(true));
+            default:
+                throw new IllegalStateException("Reader is closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stack[0] = -1;
+        stackSize = 1;
+        in.close();
+    }
+
+    private void expect(JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected) {
+            throw new IllegalStateException("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private String nextNumberText() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            throw new IllegalStateException("Expected a number but was " + token);
+        }
+        peeked = null;
+        return peekedValue;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /**
+     * Read the value starting with the given character and remember it as the peeked token.
+     */
+    private JsonToken readValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return peeked = JsonToken.BEGIN_OBJECT;
+            case '[':
+                return peeked = JsonToken.BEGIN_ARRAY;
+            case '"':
+                peekedValue = readString();
+                return peeked = JsonToken.STRING;
+            default:
+                position--;
+                String literal = readLiteral();
+                if (literal.isEmpty()) {
+                    throw syntaxError("Expected a value");
+                }
+                if ("true".equals(literal) || "false".equals(literal)) {
+                    peekedValue = literal;
+                    return peeked = JsonToken.BOOLEAN;
+                }
+                if ("null".equals(literal)) {
+                    peekedValue = null;
+                    return peeked = JsonToken.NULL;
+                }
+                char first = literal.charAt(0);
+                if (first != '-' && (first < '0' || first > '9')) {
+                    throw syntaxError("Unexpected value " + literal);
+                }
+                peekedValue = literal;
+                return peeked = JsonToken.NUMBER;
+        }
+    }
+
+    /**
+     * Read an unquoted literal: a number, true, false or null.
+     */
+    private String readLiteral() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+                break;
+            }
+            char c = buffer[position];
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == '-' || c == '+' || c == '.') {
+                scratch.append(c);
+                position++;
+            } else {
+                break;
+            }
+        }
+        return scratch.toString();
+    }
+
+    /**
+     * Read the rest of a string whose opening quote has been consumed.
+     */
+    private String readString() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            // Copy runs of plain characters straight out of the buffer
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == '"') {
+                    scratch.append(buffer, start, position - start);
+                    position++;
+                    return scratch.toString();
+                }
+                if (c == '\\') {
+                    scratch.append(buffer, start, position - start);
+                    position++;
+                    scratch.append(readEscape());
+                    start = position;
+                    continue;
+                }
+                position++;
+            }
+            scratch.append(buffer, start, position - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        if (position == limit && !fill()) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        char c = buffer[position++];
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (position == limit && !fill()) {
+                        throw syntaxError("Unterminated escape sequence");
+                    }
+                    int digit = Character.digit(buffer[position++], 16);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+                    value = value * 16 + digit;
+                }
+                return (char) value;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Invalid escape sequence \\" + c);
+        }
+    }
+
+    /**
+     * Consume whitespace and return the next character, consuming it too.
+     *
+     * @param required whether the end of the input is an error here
+     * @return the character, or -1 at the end of the input
+     */
+    private int nextNonWhitespace(boolean required) throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                if (required) {
+                    throw syntaxError("Unexpected end of input");
+                }
+                return -1;
+            }
+            char c = buffer[position++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Refill the buffer once it has been consumed.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read == -1) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a whole JSON document into a tree of maps, lists, strings, numbers and booleans, and
+ * reads typed values out of it.
+ *
+ * Used by the String-based fallback of {@link QueryUtils} in place of {@code org.json}. The
+ * getters throw an {@link IllegalStateException} when a value is missing or has the wrong type,
+ * like {@code JSONObject.getX}; the opt variants return a default instead.
+ */
+public final class JsonTree {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link JsonTree} object.
+     */
+    private JsonTree() {
+    }
+
+    /**
+     * Parse a JSON document.
+     *
+     * @return a {@link Map} for an object, a {@link List} for an array, a String, a Double, a
+     *         Boolean, or null
+     * @throws IOException if the text is not valid JSON
+     */
+    public static Object parse(String json) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            Object value = readValue(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Malformed JSON: trailing content");
+            }
+            return value;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.add(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case NUMBER:
+                return reader.nextDouble();
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Gets an object, or throws if the value is not one.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> asObject(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalStateException("Expected an object but was " + value);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Gets a member object, or throws if it is missing or not an object.
+     */
+    public static Map<String, Object> getObject(Map<String, Object> object, String name) {
+        return asObject(require(object, name));
+    }
+
+    /**
+     * Gets a member array, or throws if it is missing or not an array.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> getArray(Map<String, Object> object, String name) {
+        Object value = require(object, name);
+        if (!(value instanceof List)) {
+            throw new IllegalStateException(name + " is not an array");
+        }
+        return (List<Object>) value;
+    }
+
+    /**
+     * Gets a member number, or throws if it is missing or not a number.
+     */
+    public static double getDouble(Map<String, Object> object, String name) {
+        return toDouble(name, require(object, name));
+    }
+
+    /**
+     * Gets a member whole number, or throws if it is missing or not a number.
+     */
+    public static long getLong(Map<String, Object> object, String name) {
+        return (long) getDouble(object, name);
+    }
+
+    /**
+     * Gets a member string, or throws if it is missing or not a string.
+     */
+    public static String getString(Map<String, Object> object, String name) {
+        Object value = require(object, name);
+        if (!(value instanceof String)) {
+            throw new IllegalStateException(name + " is not a string");
+        }
+        return (String) value;
+    }
+
+    /**
+     * Gets a member object, or null if it is missing or not an object.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> optObject(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    /**
+     * Gets a member array, or null if it is missing or not an array.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> optArray(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        return value instanceof List ? (List<Object>) value : null;
+    }
+
+    /**
+     * Gets a member string, or a fallback if it is missing or not a string.
+     */
+    public static String optString(Map<String, Object> object, String name, String fallback) {
+        Object value = object.get(name);
+        return value instanceof String ? (String) value : fallback;
+    }
+
+    /**
+     * Gets a member whole number, or a fallback if it is missing or not a number.
+     */
+    public static long optLong(Map<String, Object> object, String name, long fallback) {
+        Object value = object.get(name);
+        return value instanceof Double ? (long) (double) (Double) value : fallback;
+    }
+
+    /**
+     * Gets an element of an array as a number, or NaN if it is missing or not a number.
+     */
+    public static double optDouble(List<Object> array, int index) {
+        Object value = index < array.size() ? array.get(index) : null;
+        return value instanceof Double ? (Double) value : Double.NaN;
+    }
+
+    private static Object require(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        if (value == null) {
+            throw new IllegalStateException("No value for " + name);
+        }
+        return value;
+    }
+
+    private static double toDouble(String name, Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                // Fall through to the error below
+            }
+        }
+        throw new IllegalStateException(name + " is not a number");
+    }
+}
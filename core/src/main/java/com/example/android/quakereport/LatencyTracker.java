@@ -0,0 +1,49 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples of a host and reports percentiles over them, so
+ * timeouts and hedging delays follow the latency the network actually shows.
+ */
+public final class LatencyTracker {
+
+    /** Number of most recent samples percentiles are computed over. */
+    private static final int WINDOW = 64;
+
+    private final long[] samples = new long[WINDOW];
+    private int count;
+    private int next;
+
+    /**
+     * Record how long a request took.
+     *
+     * @param latencyMillis time from sending the request to receiving the response headers
+     */
+    public synchronized void record(long latencyMillis) {
+        samples[next] = latencyMillis;
+        next = (next + 1) % WINDOW;
+        count = Math.min(WINDOW, count + 1);
+    }
+
+    /**
+     * Gets the number of samples percentiles are currently computed over.
+     */
+    public synchronized int size() {return count;}
+
+    /**
+     * Gets a percentile of the recorded latencies.
+     *
+     * @param percentile percentile between 0 and 100, e.g. 95
+     * @return latency in milliseconds, or -1 if nothing has been recorded yet
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+}
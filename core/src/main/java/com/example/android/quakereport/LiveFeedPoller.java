@@ -0,0 +1,163 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Polls a small USGS summary feed, such as the past hour of earthquakes, and reports the
+ * earthquakes that are new or were updated since the previous poll. Summary feeds also list
+ * other seismic events, such as quarry blasts and explosions; those are left out.
+ *
+ * Requests go through {@link QueryUtils}, so they are conditional whenever a response cache is
+ * installed and an unchanged feed costs a 304. The poll interval adapts to the feed: it halves
+ * while events keep arriving, grows by half while the feed is quiet, and backs off
+ * exponentially while polls fail. All timing is read from a {@link Clock}, so the schedule can
+ * be driven by a fake clock against a stub feed server.
+ */
+public final class LiveFeedPoller {
+
+    /** Feed of all events in the past hour, updated every minute by the USGS. */
+    public static final String ALL_HOUR_FEED_URL =
+            "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/all_hour.geojson";
+
+    /** Shortest time between two polls; the USGS regenerates the feed once a minute. */
+    static final long MIN_INTERVAL_MILLIS = 30 * 1000;
+
+    /** Time between polls when the poller starts. */
+    static final long BASE_INTERVAL_MILLIS = 60 * 1000;
+
+    /** Longest time between two polls, however quiet or failing the feed is. */
+    static final long MAX_INTERVAL_MILLIS = 15 * 60 * 1000;
+
+    /**
+     * Receives the earthquakes that are new or were updated since the previous poll. Called on
+     * the thread that polls.
+     */
+    public interface Listener {
+        void onEventsChanged(List<Earthquake> changed);
+    }
+
+    private final String feedUrl;
+    private final Clock clock;
+    private final Listener listener;
+
+    /** Update time of every earthquake in the previous feed, by event id. */
+    private Map<String, Long> lastFeed = new HashMap<>();
+
+    private long intervalMillis = BASE_INTERVAL_MILLIS;
+    private long nextPollAt;
+    private int consecutiveFailures;
+
+    /**
+     * Constructs a new poller. The first poll is due immediately.
+     *
+     * @param feedUrl URL of the GeoJSON summary feed to poll
+     * @param clock source of the current time
+     * @param listener receives new and updated events
+     */
+    public LiveFeedPoller(String feedUrl, Clock clock, Listener listener) {
+        this.feedUrl = feedUrl;
+        this.clock = clock;
+        this.listener = listener;
+        this.nextPollAt = clock.currentTimeMillis();
+    }
+
+    /**
+     * Poll the feed if the next poll is due.
+     *
+     * @return true if the feed was polled
+     */
+    public synchronized boolean pollIfDue() {
+        if (clock.currentTimeMillis() < nextPollAt) {
+            return false;
+        }
+
+        // Most events of a feed are unchanged from the previous poll, so index the response
+        // and only decode the events that are new or updated
+        GeoJsonIndex feed = QueryUtils.fetchEarthquakeIndex(feedUrl);
+
+        if (feed == null) {
+            onPollFinished(0, true);
+            return true;
+        }
+
+        List<Earthquake> changed = merge(feed);
+        onPollFinished(changed.size(), false);
+        if (!changed.isEmpty()) {
+            listener.onEventsChanged(changed);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the time left until the next poll is due.
+     *
+     * @return milliseconds until the next poll, 0 if it is due now
+     */
+    public synchronized long getMillisUntilNextPoll() {
+        return Math.max(0, nextPollAt - clock.currentTimeMillis());
+    }
+
+    /**
+     * Gets the current time between two successful polls.
+     */
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Compare a freshly polled feed with the previous one and return the earthquakes that are
+     * new or carry a later update time. The feed then becomes the previous feed; it only covers
+     * a short window, so events that dropped out of it are forgotten.
+     */
+    synchronized List<Earthquake> merge(GeoJsonIndex feed) {
+        List<Earthquake> changed = new ArrayList<>();
+        Map<String, Long> current = new HashMap<>();
+        for (int i = 0; i < feed.size(); i++) {
+            String id = feed.getId(i);
+            if (id == null || !isEarthquake(feed.getType(i))) {
+                continue;
+            }
+            Long previousUpdate = lastFeed.get(id);
+            if (previousUpdate == null || feed.getUpdated(i) > previousUpdate) {
+                changed.add(feed.get(i));
+            }
+            current.put(id, feed.getUpdated(i));
+        }
+        lastFeed = current;
+        return changed;
+    }
+
+    /**
+     * Whether an event type is an earthquake. Feeds that do not give a type only list
+     * earthquakes.
+     */
+    private static boolean isEarthquake(String type) {
+        return type == null || "earthquake".equals(type);
+    }
+
+    /**
+     * Adapt the interval to the outcome of a poll and schedule the next one.
+     *
+     * @param changedCount number of new or updated events the poll found
+     * @param failed whether the poll failed
+     */
+    synchronized void onPollFinished(int changedCount, boolean failed) {
+        if (failed) {
+            consecutiveFailures++;
+            long backoff = BASE_INTERVAL_MILLIS << Math.min(consecutiveFailures, 10);
+            nextPollAt = clock.currentTimeMillis() + Math.min(MAX_INTERVAL_MILLIS, backoff);
+            return;
+        }
+
+        consecutiveFailures = 0;
+        if (changedCount > 0) {
+            intervalMillis = Math.max(MIN_INTERVAL_MILLIS, intervalMillis / 2);
+        } else {
+            intervalMillis = Math.min(MAX_INTERVAL_MILLIS, intervalMillis + intervalMillis / 2);
+        }
+        nextPollAt = clock.currentTimeMillis() + intervalMillis;
+    }
+}
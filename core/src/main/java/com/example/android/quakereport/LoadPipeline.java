@@ -0,0 +1,199 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs loads on an executor, sharing one run between identical requests and stopping a run as
+ * soon as nobody is waiting for its result.
+ *
+ * Loads are identified by a key, such as the normalised query they answer. While a load is in
+ * flight, submitting its key again subscribes to that load instead of starting another one.
+ * Every submit returns a {@link Subscription}; once the last subscription of a load is
+ * cancelled, the load's {@link Cancellation} is cancelled, which aborts its socket reads and
+ * stops its decoder, and the key is free for a fresh load.
+ *
+ * Results are handed to the callbacks on the delivery executor, e.g. the main thread. A
+ * cancelled subscription never receives a result, even one that was already on its way. Both
+ * executors are passed in, so coalescing and cancellation can be stepped through on a plain JVM.
+ *
+ * @param <K> type of the keys that identify loads
+ * @param <V> type of the results
+ */
+public final class LoadPipeline<K, V> {
+
+    /**
+     * Work that produces a result, checking its {@link Cancellation} while it runs.
+     */
+    public interface Task<V> {
+        V load(Cancellation cancellation) throws IOException;
+    }
+
+    /**
+     * Receives the outcome of a load on the delivery executor.
+     */
+    public interface Callback<V> {
+        void onLoaded(V value);
+
+        void onFailed(Exception e);
+    }
+
+    private final Executor workExecutor;
+    private final Executor deliveryExecutor;
+
+    /** Loads in flight that can still be subscribed to, by key. */
+    private final Map<K, Flight> inFlight = new HashMap<>();
+
+    /**
+     * Constructs a new pipeline.
+     *
+     * @param workExecutor runs the loads
+     * @param deliveryExecutor runs the callbacks
+     */
+    public LoadPipeline(Executor workExecutor, Executor deliveryExecutor) {
+        this.workExecutor = workExecutor;
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Subscribe to the load of a key, starting it unless it is already in flight.
+     *
+     * @param key identifies the load; equal keys share a load
+     * @param task work to run if no load of the key is in flight
+     * @param callback receives the result
+     * @return subscription to cancel when the result is no longer wanted
+     */
+    public Subscription submit(K key, Task<V> task, Callback<V> callback) {
+        Flight flight;
+        boolean start = false;
+        Subscription subscription;
+        synchronized (this) {
+            flight = inFlight.get(key);
+            if (flight == null) {
+                flight = new Flight(key, task);
+                inFlight.put(key, flight);
+                start = true;
+            }
+            subscription = new Subscription(flight, callback);
+            flight.subscriptions.add(subscription);
+        }
+        if (start) {
+            workExecutor.execute(flight);
+        }
+        return subscription;
+    }
+
+    /**
+     * Gets the number of loads in flight that can still be subscribed to.
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * A caller's interest in the result of a load.
+     */
+    public final class Subscription {
+        private final Flight flight;
+        private final Callback<V> callback;
+        private boolean cancelled;
+
+        private Subscription(Flight flight, Callback<V> callback) {
+            this.flight = flight;
+            this.callback = callback;
+        }
+
+        /**
+         * Stop waiting for the result, cancelling the load if nobody else waits for it.
+         * Calling this again has no effect.
+         */
+        public void cancel() {
+            boolean cancelLoad = false;
+            synchronized (LoadPipeline.this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                flight.subscriptions.remove(this);
+                if (flight.subscriptions.isEmpty() && inFlight.get(flight.key) == flight) {
+                    inFlight.remove(flight.key);
+                    cancelLoad = true;
+                }
+            }
+            if (cancelLoad) {
+                flight.cancellation.cancel();
+            }
+        }
+
+        public boolean isCancelled() {
+            synchronized (LoadPipeline.this) {
+                return cancelled;
+            }
+        }
+
+        private void deliver(final V value, final Exception error) {
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Checked here, on the delivery thread, so a result that arrives after
+                    // the caller cancelled is dropped
+                    if (isCancelled()) {
+                        return;
+                    }
+                    if (error != null) {
+                        callback.onFailed(error);
+                    } else {
+                        callback.onLoaded(value);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * One run of a task, shared by every subscription to its key.
+     */
+    private final class Flight implements Runnable {
+        final K key;
+        final Task<V> task;
+        final Cancellation cancellation = new Cancellation();
+        final List<Subscription> subscriptions = new ArrayList<>();
+
+        Flight(K key, Task<V> task) {
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            V value = null;
+            Exception error = null;
+            if (!cancellation.isCancelled()) {
+                try {
+                    value = task.load(cancellation);
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+            }
+
+            List<Subscription> waiting;
+            synchronized (LoadPipeline.this) {
+                if (inFlight.get(key) == this) {
+                    inFlight.remove(key);
+                }
+                waiting = new ArrayList<>(subscriptions);
+                subscriptions.clear();
+            }
+            if (cancellation.isCancelled()) {
+                return;
+            }
+            for (Subscription subscription : waiting) {
+                subscription.deliver(value, error);
+            }
+        }
+    }
+}
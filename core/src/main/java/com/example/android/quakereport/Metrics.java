@@ -0,0 +1,183 @@
+package com.example.android.quakereport;
+
+/**
+ * Timing instrumentation of the load pipeline, from opening the connection to binding a row.
+ *
+ * Each stage is timed with a {@link Timer}, which also opens a section of the installed
+ * {@link Tracer}; on Android that makes the stage show up by name in systrace and the Android
+ * Studio profiler. Timings and byte / event counts go to
+ * the installed {@link MetricsSink}; the default {@link HistogramSink} keeps a latency histogram
+ * per stage that can be dumped as JSON.
+ */
+public final class Metrics {
+
+    /**
+     * Stages of loading and showing the list.
+     */
+    public enum Stage {
+        /** Establishing the connection. */
+        CONNECT("connect"),
+        /** Waiting for the response headers once connected. */
+        FIRST_BYTE("first_byte"),
+        /** Reading the response body off the network. */
+        BODY_READ("body_read"),
+        /** Decoding the response into earthquakes, excluding the reads. */
+        PARSE("parse"),
+        /** Answering a page of the list from the store or the planner's superset. */
+        STORE_QUERY("store_query"),
+        /** Formatting the rows of a page. */
+        FORMAT("format"),
+        /** Binding one row to its views. */
+        BIND("bind");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        /** Gets the name of the stage in dumps and trace sections. */
+        public String getKey() {return key;}
+    }
+
+    /**
+     * Quantities counted across loads.
+     */
+    public enum Counter {
+        /** Requests sent. */
+        REQUESTS("requests"),
+        /** Bytes of response bodies read, after decompression. */
+        BYTES("bytes"),
+        /** Earthquakes decoded from responses. */
+        EVENTS("events"),
+        /** Rows bound to views. */
+        ROWS_BOUND("rows_bound");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+        /** Gets the name of the counter in dumps. */
+        public String getKey() {return key;}
+    }
+
+    /**
+     * Marks sections of a thread's work in a platform trace.
+     */
+    public interface Tracer {
+
+        /** Open a section on the current thread. */
+        void beginSection(String name);
+
+        /** Close the section most recently opened on the current thread. */
+        void endSection();
+    }
+
+    /** Tracer that records nothing. */
+    public static final Tracer NO_TRACER = new Tracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+
+    /** Prefix of the trace sections of every stage. */
+    private static final String TRACE_PREFIX = "quake:";
+
+    private static final HistogramSink DEFAULT_SINK = new HistogramSink();
+
+    private static volatile MetricsSink sSink = DEFAULT_SINK;
+
+    private static volatile Tracer sTracer = NO_TRACER;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Metrics} object.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Replace the sink timings and counts are sent to.
+     *
+     * @param sink sink to use, or null to go back to the built-in {@link HistogramSink}
+     */
+    public static void setSink(MetricsSink sink) {
+        sSink = sink != null ? sink : DEFAULT_SINK;
+    }
+
+    /**
+     * Replace the tracer stage sections are reported to.
+     *
+     * @param tracer tracer to use, or null to stop tracing
+     */
+    public static void setTracer(Tracer tracer) {
+        sTracer = tracer != null ? tracer : NO_TRACER;
+    }
+
+    /**
+     * Gets the built-in sink, which aggregates everything recorded while it is installed.
+     */
+    public static HistogramSink getDefaultSink() {
+        return DEFAULT_SINK;
+    }
+
+    /**
+     * Start timing a stage on the current thread. The returned timer must be stopped on the
+     * same thread, typically in a finally block.
+     */
+    public static Timer start(Stage stage) {
+        Tracer tracer = sTracer;
+        tracer.beginSection(TRACE_PREFIX + stage.getKey());
+        return new Timer(stage, tracer, System.nanoTime());
+    }
+
+    /**
+     * Record a stage timing that was measured by other means, e.g. summed over many reads.
+     */
+    public static void recordLatency(Stage stage, long durationNanos) {
+        sSink.recordLatency(stage, durationNanos);
+    }
+
+    /**
+     * Add to a counter.
+     */
+    public static void count(Counter counter, long amount) {
+        sSink.recordCount(counter, amount);
+    }
+
+    /**
+     * Running measurement of one stage.
+     */
+    public static final class Timer {
+        private final Stage stage;
+        private final Tracer tracer;
+        private final long startNanos;
+        private boolean stopped;
+
+        private Timer(Stage stage, Tracer tracer, long startNanos) {
+            this.stage = stage;
+            this.tracer = tracer;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Stop the measurement and record it. Stopping a timer twice has no effect.
+         *
+         * @return time since the timer was started, in nanoseconds
+         */
+        public long stop() {
+            long duration = System.nanoTime() - startNanos;
+            if (!stopped) {
+                stopped = true;
+                tracer.endSection();
+                sSink.recordLatency(stage, duration);
+            }
+            return duration;
+        }
+    }
+}
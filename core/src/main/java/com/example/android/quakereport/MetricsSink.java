@@ -0,0 +1,25 @@
+package com.example.android.quakereport;
+
+/**
+ * Receives the timings and counts recorded by {@link Metrics}, e.g. to aggregate them into
+ * histograms or forward them to an analytics backend. Implementations are called from any
+ * thread and must be thread-safe.
+ */
+public interface MetricsSink {
+
+    /**
+     * Record how long one run of a stage took.
+     *
+     * @param stage stage that ran
+     * @param durationNanos time it took, in nanoseconds
+     */
+    void recordLatency(Metrics.Stage stage, long durationNanos);
+
+    /**
+     * Add to a counter, e.g. the number of bytes downloaded.
+     *
+     * @param counter counter to add to
+     * @param amount amount to add
+     */
+    void recordCount(Metrics.Counter counter, long amount);
+}
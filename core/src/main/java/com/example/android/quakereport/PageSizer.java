@@ -0,0 +1,46 @@
+package com.example.android.quakereport;
+
+/**
+ * Picks how many earthquakes to request per page.
+ *
+ * The page size is adjusted after every fetch so that a page takes roughly the target time to
+ * load: fast responses grow the next page, slow responses shrink it. The change per step is
+ * bounded so a single outlier cannot swing the page size from one end of the range to the other.
+ */
+public final class PageSizer {
+
+    /** Smallest page ever requested. */
+    public static final int MIN_PAGE_SIZE = 10;
+
+    /** Largest page ever requested. */
+    public static final int MAX_PAGE_SIZE = 200;
+
+    /** Page size used before any fetch has been measured. */
+    public static final int INITIAL_PAGE_SIZE = 20;
+
+    /** Fetch time we aim for per page, in milliseconds. */
+    public static final long TARGET_LATENCY_MILLIS = 800;
+
+    /** A page can at most double or halve from one fetch to the next. */
+    private static final double MAX_STEP = 2.0;
+
+    private int pageSize = INITIAL_PAGE_SIZE;
+
+    /**
+     * Gets the number of earthquakes to request for the next page.
+     */
+    public synchronized int getPageSize() {return pageSize;}
+
+    /**
+     * Record how long a page took to fetch and adjust the size of the next one.
+     *
+     * @param requested number of earthquakes that were requested
+     * @param elapsedMillis time the fetch took, in milliseconds
+     */
+    public synchronized void onPageLoaded(int requested, long elapsedMillis) {
+        double ratio = (double) TARGET_LATENCY_MILLIS / Math.max(1, elapsedMillis);
+        ratio = Math.max(1 / MAX_STEP, Math.min(MAX_STEP, ratio));
+        int next = (int) Math.round(requested * ratio);
+        pageSize = Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, next));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.quakereport;
+
+import java.io.PrintStream;
+
+/**
+ * Logging used by the core engine, so it runs unchanged on Android and on a plain JVM.
+ *
+ * Messages go to the installed {@link Sink}. The app routes them to {@code android.util.Log};
+ * elsewhere they are printed to standard error until another sink is installed.
+ */
+public final class QuakeLog {
+
+    // Priorities use the same values as android.util.Log
+
+    /** Priority of debug messages. */
+    public static final int DEBUG = 3;
+
+    /** Priority of warnings. */
+    public static final int WARN = 5;
+
+    /** Priority of errors. */
+    public static final int ERROR = 6;
+
+    /**
+     * Receives every log message. Implementations are called from any thread.
+     */
+    public interface Sink {
+
+        /**
+         * Write a message.
+         *
+         * @param priority {@link #DEBUG}, {@link #WARN} or {@link #ERROR}
+         * @param tag source of the message, usually the class name
+         * @param message text of the message
+         * @param throwable exception to log with the message, or null
+         */
+        void log(int priority, String tag, String message, Throwable throwable);
+    }
+
+    /** Sink that prints warnings and errors to standard error. */
+    public static final Sink STANDARD_ERROR = new Sink() {
+        @Override
+        public void log(int priority, String tag, String message, Throwable throwable) {
+            if (priority < WARN) {
+                return;
+            }
+            PrintStream err = System.err;
+            err.println((priority == ERROR ? "E/" : "W/") + tag + ": " + message);
+            if (throwable != null) {
+                throwable.printStackTrace(err);
+            }
+        }
+    };
+
+    private static volatile Sink sSink = STANDARD_ERROR;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QuakeLog} object.
+     */
+    private QuakeLog() {
+    }
+
+    /**
+     * Replace the sink messages are written to.
+     *
+     * @param sink sink to use, or null to go back to {@link #STANDARD_ERROR}
+     */
+    public static void setSink(Sink sink) {
+        sSink = sink != null ? sink : STANDARD_ERROR;
+    }
+
+    public static void d(String tag, String message) {
+        sSink.log(DEBUG, tag, message, null);
+    }
+
+    public static void w(String tag, String message) {
+        sSink.log(WARN, tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable throwable) {
+        sSink.log(WARN, tag, message, throwable);
+    }
+
+    public static void e(String tag, String message) {
+        sSink.log(ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        sSink.log(ERROR, tag, message, throwable);
+    }
+}
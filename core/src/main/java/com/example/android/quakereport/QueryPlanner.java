@@ -0,0 +1,434 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Answers list queries from a superset of earthquakes held in memory whenever it can, and only
+ * goes back to the {@link Source} when it cannot.
+ *
+ * A query is answered locally when the held superset was fetched with a minimum magnitude at or
+ * below the requested one and a time window that contains the requested one. Filtering and
+ * re-sorting then walk indexes that are sorted by magnitude and by time once per superset, so
+ * flipping between "magnitude" and "most recent" or raising the minimum magnitude never
+ * triggers another fetch. The indexes are plain arrays of row positions; a source that returns
+ * its rows already in one of the two orders costs a single pass for that index.
+ *
+ * A superset is capped at a number of earthquakes. When the source hits the cap it keeps the
+ * earthquakes that come first in the query's order, so the superset only holds every match
+ * down to the last one kept: the planner narrows what it holds to that, e.g. to the time of the
+ * oldest earthquake kept, and fetches again for queries reaching beyond it. Pages of the
+ * truncated query itself that reach past the rows kept are fetched from the source one page at
+ * a time.
+ */
+public final class QueryPlanner {
+
+    /** Value of the order-by setting that sorts by time; anything else sorts by magnitude. */
+    private static final String ORDER_BY_TIME = "time";
+
+    /**
+     * Where supersets come from, e.g. the local store or the USGS.
+     */
+    public interface Source {
+
+        /**
+         * Fetch the earthquakes matching the query's minimum magnitude and time window, in any
+         * order. When more than the limit match, keep the ones that come first in the query's
+         * order.
+         *
+         * @param query query whose earthquakes to fetch
+         * @param limit largest number of earthquakes to return
+         */
+        EarthquakeTable fetch(Query query, int limit);
+
+        /**
+         * Fetch one page of the earthquakes matching the query, sorted like the query.
+         *
+         * @param query query whose earthquakes to fetch
+         * @param offset number of matching earthquakes to skip
+         * @param limit largest number of earthquakes to return
+         */
+        List<Earthquake> fetchPage(Query query, int offset, int limit);
+    }
+
+    /**
+     * How a query will be answered.
+     */
+    public enum Plan {
+        /** From the superset already held in memory. */
+        LOCAL,
+        /** By fetching a new superset from the source first. */
+        FETCH
+    }
+
+    /**
+     * Parameters of a list query.
+     */
+    public static final class Query {
+        final double minMagnitude;
+        final String orderBy;
+        final long startTime;
+        final long endTime;
+
+        /**
+         * Constructs a query over all time.
+         *
+         * @param minMagnitude smallest magnitude to include
+         * @param orderBy "time" for most recent first, otherwise largest magnitude first
+         */
+        public Query(double minMagnitude, String orderBy) {
+            this(minMagnitude, orderBy, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        /**
+         * Constructs a query over a time window.
+         *
+         * @param minMagnitude smallest magnitude to include
+         * @param orderBy "time" for most recent first, otherwise largest magnitude first
+         * @param startTime earliest time to include, in milliseconds
+         * @param endTime latest time to include, in milliseconds
+         */
+        public Query(double minMagnitude, String orderBy, long startTime, long endTime) {
+            this.minMagnitude = minMagnitude;
+            this.orderBy = orderBy;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        /**
+         * Whether every earthquake matching the other query also matches this one, ignoring
+         * the order.
+         */
+        boolean covers(Query other) {
+            return minMagnitude <= other.minMagnitude
+                    && startTime <= other.startTime
+                    && endTime >= other.endTime;
+        }
+
+        boolean matches(double magnitude, long time) {
+            return magnitude >= minMagnitude && time >= startTime && time <= endTime;
+        }
+
+        boolean isOrderedByTime() {
+            return ORDER_BY_TIME.equals(orderBy);
+        }
+
+        /**
+         * Whether the other query asks for the same earthquakes in the same order.
+         */
+        boolean sameAs(Query other) {
+            return minMagnitude == other.minMagnitude
+                    && isOrderedByTime() == other.isOrderedByTime()
+                    && startTime == other.startTime
+                    && endTime == other.endTime;
+        }
+    }
+
+    private final Source source;
+    private final int supersetLimit;
+
+    /**
+     * Earthquakes the held superset is complete for, or null if none is held. Narrower than
+     * the query it was fetched with when the source hit the limit.
+     */
+    private Query held;
+
+    /** Query the held superset was fetched with, if the source hit the limit; null otherwise. */
+    private Query truncated;
+
+    private EarthquakeTable table;
+
+    /** Row positions of {@link #table}, largest magnitude first. */
+    private int[] byMagnitude;
+
+    /** Row positions of {@link #table}, most recent first. */
+    private int[] byTime;
+
+    /** Epicenters of {@link #table}, built on the first spatial query. */
+    private SpatialIndex spatialIndex;
+
+    /**
+     * Constructs a planner that fetches supersets from the given source.
+     *
+     * @param source where supersets come from
+     * @param supersetLimit largest number of earthquakes to hold in memory
+     */
+    public QueryPlanner(Source source, int supersetLimit) {
+        this.source = source;
+        this.supersetLimit = supersetLimit;
+    }
+
+    /**
+     * Decide how a query would be answered right now. The query a truncated superset was
+     * fetched with is answered from it as well, as far as it holds rows: fetching the superset
+     * again would return the same.
+     */
+    public synchronized Plan plan(Query query) {
+        if (held == null) {
+            return Plan.FETCH;
+        }
+        boolean fetchedFor = truncated != null && truncated.sameAs(query);
+        return held.covers(query) || fetchedFor ? Plan.LOCAL : Plan.FETCH;
+    }
+
+    /**
+     * Answer one page of a query, fetching a new superset first if the held one does not cover
+     * the query.
+     *
+     * @param query query to answer
+     * @param offset number of matching earthquakes to skip
+     * @param limit maximum number of earthquakes to return
+     * @return the earthquakes of the page, in the query's order
+     */
+    public synchronized List<Earthquake> query(Query query, int offset, int limit) {
+        if (plan(query) == Plan.FETCH) {
+            hold(query, source.fetch(query, supersetLimit));
+        }
+        if (!held.covers(query) && offset > table.size() - limit) {
+            // Only the truncated query itself gets here, and the superset holds just its first
+            // rows; the rest are read from the source as they are paged to
+            return source.fetchPage(query, offset, limit);
+        }
+        return answerLocally(query, offset, limit);
+    }
+
+    /**
+     * Find the earthquakes of a query whose epicenter lies within a distance of a point.
+     *
+     * @param query query the earthquakes must match; its order is ignored
+     * @param latitude latitude of the center, in degrees
+     * @param longitude longitude of the center, in degrees
+     * @param radiusKm distance from the center, in kilometers
+     * @return the matching earthquakes, in no particular order
+     */
+    public synchronized List<Earthquake> queryRadius(Query query, double latitude,
+                                                     double longitude, double radiusKm) {
+        SpatialIndex index = getSpatialIndex(query);
+        return materialise(index.radius(latitude, longitude, radiusKm, filterFor(query)));
+    }
+
+    /**
+     * Find the earthquakes of a query whose epicenter lies in a bounding box.
+     *
+     * @param query query the earthquakes must match; its order is ignored
+     * @param south southern edge, in degrees of latitude
+     * @param west western edge, in degrees of longitude; east of the eastern edge when the box
+     *             crosses the antimeridian
+     * @param north northern edge, in degrees of latitude
+     * @param east eastern edge, in degrees of longitude
+     * @return the matching earthquakes, in no particular order
+     */
+    public synchronized List<Earthquake> queryBoundingBox(Query query, double south, double west,
+                                                          double north, double east) {
+        SpatialIndex index = getSpatialIndex(query);
+        return materialise(index.boundingBox(south, west, north, east, filterFor(query)));
+    }
+
+    /**
+     * Find the earthquakes of a query closest to a point.
+     *
+     * @param query query the earthquakes must match; its order is ignored
+     * @param latitude latitude of the point, in degrees
+     * @param longitude longitude of the point, in degrees
+     * @param k largest number of earthquakes to return
+     * @return up to k earthquakes, closest first
+     */
+    public synchronized List<Earthquake> queryNearest(Query query, double latitude,
+                                                      double longitude, int k) {
+        SpatialIndex index = getSpatialIndex(query);
+        return materialise(index.nearest(latitude, longitude, k, filterFor(query)));
+    }
+
+    /**
+     * Gets the spatial index of a superset covering the query, fetching and indexing it first
+     * if needed.
+     */
+    private SpatialIndex getSpatialIndex(Query query) {
+        if (plan(query) == Plan.FETCH) {
+            hold(query, source.fetch(query, supersetLimit));
+        }
+        if (spatialIndex == null) {
+            spatialIndex = new SpatialIndex(table);
+        }
+        return spatialIndex;
+    }
+
+    private SpatialIndex.Filter filterFor(final Query query) {
+        final EarthquakeTable superset = table;
+        return new SpatialIndex.Filter() {
+            @Override
+            public boolean accept(int position) {
+                return query.matches(superset.getMagnitude(position),
+                        superset.getDateTime(position));
+            }
+        };
+    }
+
+    private List<Earthquake> materialise(int[] positions) {
+        List<Earthquake> earthquakes = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            earthquakes.add(table.get(position));
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Drop the held superset, e.g. after the source's data changed.
+     */
+    public synchronized void invalidate() {
+        held = null;
+        truncated = null;
+        table = null;
+        byMagnitude = null;
+        byTime = null;
+        spatialIndex = null;
+    }
+
+    /**
+     * Keep a superset and sort its indexes.
+     *
+     * @param query query the superset was fetched with
+     * @param superset earthquakes the source returned for the query
+     */
+    synchronized void hold(Query query, final EarthquakeTable superset) {
+        table = superset;
+        spatialIndex = null;
+        if (superset.size() < supersetLimit) {
+            held = query;
+            truncated = null;
+        } else {
+            held = narrow(query, superset);
+            truncated = query;
+        }
+
+        // Compared from primitive copies of the two columns, so sorting boxes nothing
+        final double[] magnitudes = new double[superset.size()];
+        final long[] times = new long[superset.size()];
+        for (int i = 0; i < magnitudes.length; i++) {
+            magnitudes[i] = superset.getMagnitude(i);
+            times[i] = superset.getDateTime(i);
+        }
+
+        byMagnitude = sortedPositions(magnitudes.length, new PositionOrder() {
+            @Override
+            public int compare(int a, int b) {
+                int byMag = Double.compare(magnitudes[b], magnitudes[a]);
+                return byMag != 0 ? byMag : compareLongs(times[b], times[a]);
+            }
+        });
+        byTime = sortedPositions(times.length, new PositionOrder() {
+            @Override
+            public int compare(int a, int b) {
+                return compareLongs(times[b], times[a]);
+            }
+        });
+    }
+
+    /**
+     * Narrow a query to the earthquakes a superset truncated in the query's order is complete
+     * for. Earthquakes tied with the last one kept may have been cut off, so their time or
+     * magnitude is left out as well.
+     */
+    private static Query narrow(Query query, EarthquakeTable superset) {
+        if (query.isOrderedByTime()) {
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < superset.size(); i++) {
+                oldest = Math.min(oldest, superset.getDateTime(i));
+            }
+            return new Query(query.minMagnitude, query.orderBy,
+                    Math.max(query.startTime, oldest + 1), query.endTime);
+        }
+        double smallest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < superset.size(); i++) {
+            smallest = Math.min(smallest, superset.getMagnitude(i));
+        }
+        return new Query(Math.max(query.minMagnitude, Math.nextUp(smallest)), query.orderBy,
+                query.startTime, query.endTime);
+    }
+
+    /**
+     * Filter and page the held superset along the index matching the query's order.
+     */
+    synchronized List<Earthquake> answerLocally(Query query, int offset, int limit) {
+        List<Earthquake> page = new ArrayList<>(Math.min(limit, table.size()));
+        boolean orderByTime = query.isOrderedByTime();
+        int[] index = orderByTime ? byTime : byMagnitude;
+
+        int skipped = 0;
+        for (int i = 0; i < index.length && page.size() < limit; i++) {
+            int position = index[i];
+            double magnitude = table.getMagnitude(position);
+            if (!orderByTime && magnitude < query.minMagnitude) {
+                // Everything after this point in the magnitude index is smaller still
+                break;
+            }
+            if (!query.matches(magnitude, table.getDateTime(position))) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            page.add(table.get(position));
+        }
+        return page;
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Order of two rows, given by their positions.
+     */
+    private interface PositionOrder {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Sort the positions of a number of rows. Rows that are already in order, as the source
+     * usually returns them for one of the indexes, are recognised in a single pass.
+     */
+    private static int[] sortedPositions(int size, PositionOrder order) {
+        int[] positions = new int[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+            if (i > 0 && sorted && order.compare(i - 1, i) > 0) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            mergeSort(positions, new int[size], 0, size, order);
+        }
+        return positions;
+    }
+
+    /**
+     * Stable merge sort of a range of positions, using a buffer of the same size.
+     */
+    private static void mergeSort(int[] positions, int[] buffer, int from, int to,
+                                  PositionOrder order) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(positions, buffer, from, middle, order);
+        mergeSort(positions, buffer, middle, to, order);
+        if (order.compare(positions[middle - 1], positions[middle]) <= 0) {
+            // The two halves are already in order
+            return;
+        }
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to
+                    || (left < middle && order.compare(buffer[left], buffer[right]) <= 0)) {
+                positions[i] = buffer[left++];
+            } else {
+                positions[i] = buffer[right++];
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android.quakereport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded, least-recently-used cache of query results with a time to live.
+ *
+ * Entries older than the time to live are still returned, marked stale, so a caller can show
+ * them right away and refresh them in the background (stale-while-revalidate). Hits, misses
+ * and evictions are counted so the cache's effectiveness can be checked.
+ *
+ * @param <V> type of the cached results
+ */
+public final class QueryResultCache<V> {
+
+    /**
+     * A cached result and whether it has outlived the time to live.
+     */
+    public static final class Entry<V> {
+        private final V value;
+        private final boolean stale;
+
+        private Entry(V value, boolean stale) {
+            this.value = value;
+            this.stale = stale;
+        }
+
+        /** Gets the cached result. */
+        public V getValue() {return value;}
+
+        /** Whether the result is older than the time to live and should be refreshed. */
+        public boolean isStale() {return stale;}
+    }
+
+    private static final class Slot<V> {
+        final V value;
+        final long storedAt;
+
+        Slot(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final Clock clock;
+    private volatile long ttlMillis;
+
+    /** Entries in access order, least recently used first. */
+    private final LinkedHashMap<String, Slot<V>> slots = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hitCount;
+    private long staleHitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxEntries number of results kept before the least recently used one is evicted
+     * @param ttlMillis time after which a result is considered stale, in milliseconds
+     * @param clock source of the current time
+     */
+    public QueryResultCache(int maxEntries, long ttlMillis, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Change the time after which results are considered stale.
+     *
+     * @param ttlMillis time to live, in milliseconds
+     */
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Look up a result and mark it as recently used.
+     *
+     * @param key normalised query key
+     * @return the cached entry, possibly stale, or null if there is none
+     */
+    public synchronized Entry<V> get(String key) {
+        Slot<V> slot = slots.get(key);
+        if (slot == null) {
+            missCount++;
+            return null;
+        }
+
+        boolean stale = clock.currentTimeMillis() - slot.storedAt >= ttlMillis;
+        if (stale) {
+            staleHitCount++;
+        } else {
+            hitCount++;
+        }
+        return new Entry<>(slot.value, stale);
+    }
+
+    /**
+     * Store a result, evicting the least recently used ones beyond the size bound.
+     *
+     * @param key normalised query key
+     * @param value result to cache
+     */
+    public synchronized void put(String key, V value) {
+        slots.put(key, new Slot<>(value, clock.currentTimeMillis()));
+
+        Iterator<Map.Entry<String, Slot<V>>> eldest = slots.entrySet().iterator();
+        while (slots.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Drop every cached result, e.g. after the underlying data changed.
+     */
+    public synchronized void clear() {
+        slots.clear();
+    }
+
+    public synchronized long getHitCount() {return hitCount;}
+
+    public synchronized long getStaleHitCount() {return staleHitCount;}
+
+    public synchronized long getMissCount() {return missCount;}
+
+    public synchronized long getEvictionCount() {return evictionCount;}
+
+    @Override
+    public synchronized String toString() {
+        return "QueryResultCache{size=" + slots.size() + ", hits=" + hitCount
+                + ", staleHits=" + staleHitCount + ", misses=" + missCount
+                + ", evictions=" + evictionCount + "}";
+    }
+}
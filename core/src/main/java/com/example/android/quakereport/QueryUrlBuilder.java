@@ -0,0 +1,63 @@
+package com.example.android.quakereport;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds USGS query URLs by appending encoded query parameters to an endpoint, without the
+ * platform's {@code Uri} class.
+ */
+public final class QueryUrlBuilder {
+
+    private final StringBuilder url;
+    private boolean hasQuery;
+
+    /**
+     * Constructs a builder that appends parameters to an endpoint, which may already carry a
+     * query string.
+     */
+    public QueryUrlBuilder(String endpoint) {
+        url = new StringBuilder(endpoint);
+        hasQuery = endpoint.indexOf('?') >= 0;
+    }
+
+    /**
+     * Append a query parameter, encoding its name and value.
+     *
+     * @return this builder, for chaining
+     */
+    public QueryUrlBuilder appendQueryParameter(String name, String value) {
+        url.append(hasQuery ? '&' : '?').append(encode(name)).append('=').append(encode(value));
+        hasQuery = true;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+
+    /**
+     * Format a time as the ISO 8601 UTC timestamp the USGS expects, e.g.
+     * "2018-03-03T12:00:00.000".
+     */
+    public static String formatIsoTime(long timeInMillis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timeInMillis));
+    }
+
+    private static String encode(String value) {
+        try {
+            // Query components encode spaces as %20 rather than the form encoding's '+'
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            // Every JVM supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,882 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Helper methods related to requesting and receiving earthquake data from USGS.
+ *
+ * Responses are decoded by a {@link ResponseDecoder} negotiated per request: the decoder
+ * registered for the response's media type or, when the response does not name one, for the
+ * format parameter of the request URL. GeoJSON and CSV decoders are registered from the start.
+ */
+public final class QueryUtils {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryUtils} object.
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name QueryUtils (and an object instance of QueryUtils is not needed).
+     */
+    private QueryUtils() {
+    }
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = QueryUtils.class.getSimpleName();
+
+    /**
+     * When true, responses are decoded with {@link GeoJsonStreamDecoder} straight from the
+     * connection's input stream. When false, the whole response is read into a String and
+     * parsed into a {@link JsonTree} by {@link #extractEarthquakes(String)}.
+     */
+    private static volatile boolean sStreamingDecoderEnabled = true;
+
+    /**
+     * Switch between the streaming decoder and the String + {@link JsonTree} fallback.
+     *
+     * @param enabled true to decode responses while they are read from the network
+     */
+    public static void setStreamingDecoderEnabled(boolean enabled) {
+        sStreamingDecoderEnabled = enabled;
+    }
+
+    /**
+     * Decodes the earthquakes of a USGS response in one format.
+     */
+    public interface ResponseDecoder {
+
+        /** Decoder for {@code format=geojson}, the USGS default. */
+        ResponseDecoder GEOJSON = new ResponseDecoder() {
+            @Override
+            public String getFormat() {
+                return "geojson";
+            }
+
+            @Override
+            public String getContentType() {
+                return "application/json";
+            }
+
+            @Override
+            public int decode(InputStream inputStream,
+                              GeoJsonStreamDecoder.EarthquakeListener listener)
+                    throws IOException {
+                return GeoJsonStreamDecoder.decode(inputStream, listener);
+            }
+        };
+
+        /** Decoder for {@code format=csv}. */
+        ResponseDecoder CSV = new CsvDecoder();
+
+        /**
+         * Gets the value of the USGS format parameter that requests this format, e.g. "csv".
+         */
+        String getFormat();
+
+        /**
+         * Gets the media type the USGS sends this format as, e.g. "text/csv".
+         */
+        String getContentType();
+
+        /**
+         * Decode the earthquakes of a response and pass each one to the listener. The stream
+         * is not closed; it stays owned by the caller.
+         *
+         * @return number of earthquakes passed to the listener
+         * @throws IOException if the stream cannot be read or is not in this format
+         */
+        int decode(InputStream inputStream, GeoJsonStreamDecoder.EarthquakeListener listener)
+                throws IOException;
+    }
+
+    /** Registered decoders; copied on write, so lookups need no lock. */
+    private static volatile List<ResponseDecoder> sDecoders =
+            Collections.unmodifiableList(Arrays.asList(ResponseDecoder.GEOJSON,
+                    ResponseDecoder.CSV));
+
+    /**
+     * Register a decoder for another format, or replace the one registered for its format.
+     *
+     * @param decoder decoder to use for responses in its format
+     */
+    public static synchronized void registerDecoder(ResponseDecoder decoder) {
+        List<ResponseDecoder> decoders = new ArrayList<>();
+        for (ResponseDecoder registered : sDecoders) {
+            if (!registered.getFormat().equals(decoder.getFormat())) {
+                decoders.add(registered);
+            }
+        }
+        decoders.add(decoder);
+        sDecoders = Collections.unmodifiableList(decoders);
+    }
+
+    /**
+     * Pick the decoder for a response: by its media type if it has one we know, otherwise by
+     * the format the request asked for, and GeoJSON if the request did not ask.
+     *
+     * @param requestUrl URL the response was requested with
+     * @param contentType value of the response's Content-Type header, or null
+     * @return the decoder to use
+     */
+    static ResponseDecoder negotiateDecoder(String requestUrl, String contentType) {
+        List<ResponseDecoder> decoders = sDecoders;
+        if (contentType != null) {
+            // Drop parameters such as "; charset=utf-8"
+            int semicolon = contentType.indexOf(';');
+            String mediaType = (semicolon >= 0 ? contentType.substring(0, semicolon)
+                    : contentType).trim();
+            for (ResponseDecoder decoder : decoders) {
+                if (decoder.getContentType().equalsIgnoreCase(mediaType)) {
+                    return decoder;
+                }
+            }
+        }
+        String format = getQueryParameter(requestUrl, "format");
+        if (format != null) {
+            for (ResponseDecoder decoder : decoders) {
+                if (decoder.getFormat().equalsIgnoreCase(format)) {
+                    return decoder;
+                }
+            }
+        }
+        return ResponseDecoder.GEOJSON;
+    }
+
+    /**
+     * Gets the raw value of a query parameter of a URL.
+     *
+     * @return the value, or null if the URL has no such parameter
+     */
+    private static String getQueryParameter(String url, String name) {
+        int query = url.indexOf('?');
+        if (query < 0) {
+            return null;
+        }
+        int start = query + 1;
+        while (start < url.length()) {
+            int end = url.indexOf('&', start);
+            if (end < 0) {
+                end = url.length();
+            }
+            if (url.startsWith(name, start) && start + name.length() < end
+                    && url.charAt(start + name.length()) == '=') {
+                return url.substring(start + name.length() + 1, end);
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Transport used to send requests. Defaults to pooled, gzip-compressed
+     * {@link HttpURLConnection}s behind adaptive timeouts, retries, hedging and a circuit
+     * breaker.
+     */
+    private static volatile HttpTransport sTransport = new ResilientTransport();
+
+    /**
+     * Replace the transport used to send requests, e.g. to change timeouts or plug in a
+     * different HTTP client.
+     *
+     * @param transport transport to use for all following requests
+     */
+    public static void setTransport(HttpTransport transport) {
+        sTransport = transport;
+    }
+
+    /**
+     * Optional on-disk cache used to make conditional requests. Null until the app installs one.
+     */
+    private static volatile ResponseDiskCache sResponseCache;
+
+    /**
+     * Install the on-disk cache used to revalidate responses with If-None-Match /
+     * If-Modified-Since, so an unchanged response is served from local storage.
+     *
+     * @param cache response cache, or null to always download the full response
+     */
+    public static void setResponseCache(ResponseDiskCache cache) {
+        sResponseCache = cache;
+    }
+
+    /**
+     * Gets the installed response cache.
+     *
+     * @return response cache, or null if none has been installed
+     */
+    public static ResponseDiskCache getResponseCache() {
+        return sResponseCache;
+    }
+
+    /**
+     * Query the USGS dataset and return a {@link List} object of earthquakes
+     *
+     * @param requestUrl URL string to request data from the USGS
+     * @return List of earthquake objects
+     */
+    public static List<Earthquake> fetchEarthquakeData(String requestUrl){
+        //QuakeLog.e(LOG_TAG,"Fetching earthquake data.");
+
+        // The tree fallback only reads GeoJSON
+        if(!sStreamingDecoderEnabled
+                && negotiateDecoder(requestUrl, null) == ResponseDecoder.GEOJSON){
+            return fetchEarthquakeTree(requestUrl);
+        }
+
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        boolean success = fetchEarthquakeData(requestUrl,
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        earthquakes.add(earthquake);
+                    }
+                });
+
+        // Match the tree-based path, which returns null when there was no response to parse
+        if(!success && earthquakes.isEmpty()){
+            return null;
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Query the USGS dataset and pass each {@link Earthquake} to the listener as soon as it
+     * has been parsed from the response, without holding the whole response in memory.
+     *
+     * @param requestUrl URL string to request data from the USGS
+     * @param listener receives each earthquake as it is parsed
+     * @return true if a response was received and parsed to the end
+     */
+    public static boolean fetchEarthquakeData(String requestUrl,
+                                              GeoJsonStreamDecoder.EarthquakeListener listener){
+        return fetchEarthquakeData(requestUrl, listener, null);
+    }
+
+    /**
+     * Query the USGS dataset and pass each {@link Earthquake} to the listener as soon as it
+     * has been parsed from the response, with the decoder negotiated for the response.
+     * Cancelling aborts the request: a transport waiting for a response or for its next retry
+     * stops waiting, a read blocked on the socket fails straight away and decoding stops at
+     * the next read of the body.
+     *
+     * @param requestUrl URL string to request data from the USGS
+     * @param listener receives each earthquake as it is parsed
+     * @param cancellation cancels the request, or null if it cannot be cancelled
+     * @return true if a response was received and parsed to the end
+     */
+    public static boolean fetchEarthquakeData(
+            final String requestUrl, final GeoJsonStreamDecoder.EarthquakeListener listener,
+            Cancellation cancellation){
+        return fetch(requestUrl, cancellation, new BodyDecoder() {
+            @Override
+            public void decode(InputStream inputStream, MeteredInputStream metered,
+                               String contentType) throws IOException {
+                decodeMetered(inputStream, metered,
+                        negotiateDecoder(requestUrl, contentType), listener);
+            }
+        });
+    }
+
+    /**
+     * Query the USGS dataset and index the response with {@link GeoJsonIndex}, so events are
+     * only decoded when they are read. Suited to callers that look at a few fields of every
+     * event but need whole events for only some of them.
+     *
+     * @param requestUrl URL string to request data from the USGS
+     * @return index of the response, or null if no response was received and indexed
+     */
+    public static GeoJsonIndex fetchEarthquakeIndex(String requestUrl){
+        final GeoJsonIndex[] index = new GeoJsonIndex[1];
+        boolean success = fetch(requestUrl, null, new BodyDecoder() {
+            @Override
+            public void decode(InputStream inputStream, MeteredInputStream metered,
+                               String contentType) throws IOException {
+                byte[] body = readBytes(inputStream);
+                long start = System.nanoTime();
+                index[0] = GeoJsonIndex.scan(body);
+
+                Metrics.recordLatency(Metrics.Stage.BODY_READ, metered.readNanos);
+                Metrics.recordLatency(Metrics.Stage.PARSE, System.nanoTime() - start);
+                Metrics.count(Metrics.Counter.BYTES, metered.bytes);
+                Metrics.count(Metrics.Counter.EVENTS, index[0].size());
+            }
+        });
+        return success ? index[0] : null;
+    }
+
+    /**
+     * Query the USGS count endpoint, whose plain-text response is just the number of matching
+     * events. Costs a few bytes, e.g. to find out whether a full query would return anything.
+     *
+     * @param requestUrl URL string of the count request
+     * @param cancellation cancels the request, or null if it cannot be cancelled
+     * @return number of matching events, or -1 if no valid count was received
+     */
+    public static int fetchCount(String requestUrl, Cancellation cancellation){
+        Count count = fetchCountAndTime(requestUrl, cancellation);
+        return count != null ? count.getCount() : -1;
+    }
+
+    /**
+     * Query the USGS count endpoint, and note when the server answered. Every event counted was
+     * updated no later than that time, so a sync that fetches them can resume after it.
+     *
+     * @param requestUrl URL string of the count request
+     * @param cancellation cancels the request, or null if it cannot be cancelled
+     * @return the count and the server's time, or null if no valid count was received
+     */
+    public static Count fetchCountAndTime(String requestUrl, Cancellation cancellation){
+        final int[] count = {-1};
+        long requestedAt = System.currentTimeMillis();
+        BodyDecoder decoder = new BodyDecoder() {
+            @Override
+            public void decode(InputStream inputStream, MeteredInputStream metered,
+                               String contentType) throws IOException {
+                String body = readFromStream(inputStream).trim();
+                try{
+                    count[0] = Integer.parseInt(body);
+                } catch(NumberFormatException e){
+                    throw new IOException("Malformed count: " + body);
+                }
+                Metrics.count(Metrics.Counter.BYTES, metered.bytes);
+            }
+        };
+        if(!fetch(requestUrl, cancellation, decoder)){
+            return null;
+        }
+        long serverTime = parseHttpDate(decoder.date);
+        if(serverTime <= 0){
+            // Without a Date header, fall back on the device clock, which may be off a little
+            serverTime = requestedAt - CLOCK_SKEW_MARGIN_MILLIS;
+        }
+        return new Count(count[0], serverTime);
+    }
+
+    /** Margin for the device clock running ahead of the server's. */
+    private static final long CLOCK_SKEW_MARGIN_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Number of events a count request matched, and when the server counted them.
+     */
+    public static final class Count {
+        private final int count;
+        private final long serverTime;
+
+        Count(int count, long serverTime) {
+            this.count = count;
+            this.serverTime = serverTime;
+        }
+
+        /** Number of matching events. */
+        public int getCount() {return count;}
+
+        /**
+         * Time in milliseconds no later than when the server counted, from its Date header.
+         * The header has whole seconds, so this is rounded down to the second before.
+         */
+        public long getServerTime() {return serverTime;}
+    }
+
+    /**
+     * Parse the value of an HTTP Date header, e.g. "Sun, 04 Mar 2018 00:00:00 GMT", rounded
+     * down to be safely before the time it names.
+     *
+     * @return time in milliseconds, or 0 if the value is missing or malformed
+     */
+    static long parseHttpDate(String value){
+        if(value == null){
+            return 0;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try{
+            // The header has no milliseconds, so the server's clock may be up to a second later
+            return format.parse(value).getTime() - 1000;
+        } catch(ParseException e){
+            QuakeLog.w(LOG_TAG, "Malformed Date header: " + value);
+            return 0;
+        }
+    }
+
+    /**
+     * Request a URL, revalidating the cached response if there is one, and decode the body of
+     * the response or, if it was not modified, of the cached response.
+     *
+     * @param requestUrl URL string to request data from the USGS
+     * @param cancellation cancels the request, or null if it cannot be cancelled
+     * @param decoder decodes the body
+     * @return true if a response was received and decoded to the end
+     */
+    private static boolean fetch(String requestUrl, Cancellation cancellation,
+                                 BodyDecoder decoder){
+        return fetch(requestUrl, cancellation, decoder, true);
+    }
+
+    /**
+     * Request a URL and decode the body of the response.
+     *
+     * @param requestUrl URL string to request data from the USGS
+     * @param cancellation cancels the request, or null if it cannot be cancelled
+     * @param decoder decodes the body
+     * @param revalidate whether to make the request conditional on the cached response
+     * @return true if a response was received and decoded to the end
+     */
+    private static boolean fetch(String requestUrl, Cancellation cancellation,
+                                 BodyDecoder decoder, boolean revalidate){
+        // Create URL object
+        URL url = createUrl(requestUrl);
+
+        // if URL is null, then return early.
+        if(url == null) {
+            return false;
+        }
+        if(cancellation == null) {
+            cancellation = new Cancellation();
+        }
+
+        HttpTransport.Response response = null;
+        Closeable abort = null;
+        InputStream inputStream = null;
+        boolean success = false;
+        boolean cachedBodyMissing = false;
+
+        // Look up the last response for this exact request so it can be revalidated
+        ResponseDiskCache cache = sResponseCache;
+        ResponseDiskCache.Entry cached = cache == null || !revalidate
+                ? null : cache.get(requestUrl);
+
+        try{
+            // Until there is a response to abort, cancelling interrupts this thread instead, so
+            // a transport waiting for an attempt or backing off before a retry stops waiting
+            Interrupter interrupter = new Interrupter();
+            cancellation.register(interrupter);
+            try{
+                cancellation.throwIfCancelled();
+                response = sTransport.get(url, conditionalHeaders(cached));
+            } finally {
+                cancellation.unregister(interrupter);
+                interrupter.finish();
+            }
+            abort = abortOnClose(response);
+            cancellation.register(abort);
+            int responseCode = response.getCode();
+
+            // Decode the input stream if the response was successful (code 200)
+            if(responseCode == HttpURLConnection.HTTP_OK){
+                MeteredInputStream metered = new MeteredInputStream(
+                        cancellation.wrap(response.getBody()));
+                inputStream = metered;
+
+                // Keep a copy of the body if the server sent validators we can revalidate with
+                String eTag = response.getHeader("ETag");
+                String lastModified = response.getHeader("Last-Modified");
+                ResponseDiskCache.CachingInputStream cachingStream = null;
+                if(cache != null && (eTag != null || lastModified != null)){
+                    cachingStream = cache.put(requestUrl, eTag, lastModified, inputStream);
+                    inputStream = cachingStream;
+                }
+
+                decoder.date = response.getHeader("Date");
+                decoder.decode(inputStream, metered, response.getHeader("Content-Type"));
+                if(cachingStream != null){
+                    cachingStream.commit();
+                }
+                success = true;
+            } else if(responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null){
+                // The data has not changed since the cached response, so decode that instead
+                InputStream body = null;
+                try{
+                    body = cached.openBody();
+                } catch(FileNotFoundException e){
+                    // Evicted or replaced since it was looked up; ask again without validators
+                    cachedBodyMissing = true;
+                }
+                if(body != null){
+                    MeteredInputStream metered = new MeteredInputStream(cancellation.wrap(body));
+                    inputStream = metered;
+                    // The cache keeps no headers; the request URL names the format
+                    decoder.decode(inputStream, metered, null);
+                    success = true;
+                }
+            } else {
+                QuakeLog.e(LOG_TAG,"Error response code: " + responseCode);
+            }
+        } catch(IOException | IllegalStateException | NumberFormatException e){
+            if(cancellation.isCancelled()){
+                // Aborting the connection makes the read fail; that is not an error
+                QuakeLog.d(LOG_TAG,"Request cancelled: " + requestUrl);
+            } else {
+                // JsonReader reports unexpected tokens with an IllegalStateException, and
+                // numbers it cannot parse, e.g. "mag":"n/a", with a NumberFormatException
+                QuakeLog.e(LOG_TAG,"Problem retrieving earthquake JSON results", e);
+            }
+        } finally {
+            if(abort != null){
+                cancellation.unregister(abort);
+            }
+            if(cancellation.isCancelled() && response != null){
+                // The connection may be aborted already; nothing is left to read or reuse
+                response.abort();
+            }
+            // Closing the body also closes a cached body being read, and drops a partial copy
+            // being written to the cache, whether or not the request was cancelled
+            closeQuietly(inputStream);
+            if(!cancellation.isCancelled()){
+                // Release the connection back to the transport's pool
+                closeQuietly(response);
+            }
+        }
+
+        if(cachedBodyMissing && !cancellation.isCancelled()){
+            return fetch(requestUrl, cancellation, decoder, false);
+        }
+        return success && !cancellation.isCancelled();
+    }
+
+    /**
+     * {@link Closeable} that interrupts the thread that created it, to register with a
+     * {@link Cancellation} while that thread waits for a response.
+     */
+    private static final class Interrupter implements Closeable {
+        private final Thread thread = Thread.currentThread();
+        private boolean finished;
+        private boolean interrupted;
+
+        @Override
+        public synchronized void close() {
+            if(!finished){
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Stop interrupting the thread, and clear the interrupt this sent so it does not leak
+         * into later work on the thread. Must be called from the thread that created it.
+         */
+        synchronized void finish() {
+            finished = true;
+            if(interrupted){
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Wrap a response in a {@link Closeable} that aborts it, to register with a
+     * {@link Cancellation}.
+     */
+    private static Closeable abortOnClose(final HttpTransport.Response response) {
+        return new Closeable() {
+            @Override
+            public void close() {
+                response.abort();
+            }
+        };
+    }
+
+    /**
+     * Decode a response, recording how long was spent reading the body and how long decoding
+     * it, which happen interleaved.
+     *
+     * @param inputStream body of the response
+     * @param metered stream that measures the reads of the body, possibly wrapped by
+     *                inputStream
+     * @param decoder decodes the body
+     * @param listener receives each earthquake as it is parsed
+     */
+    private static void decodeMetered(InputStream inputStream, MeteredInputStream metered,
+                                      ResponseDecoder decoder,
+                                      GeoJsonStreamDecoder.EarthquakeListener listener)
+            throws IOException {
+        long start = System.nanoTime();
+        int events = decoder.decode(inputStream, listener);
+        long total = System.nanoTime() - start;
+
+        Metrics.recordLatency(Metrics.Stage.BODY_READ, metered.readNanos);
+        Metrics.recordLatency(Metrics.Stage.PARSE, Math.max(0, total - metered.readNanos));
+        Metrics.count(Metrics.Counter.BYTES, metered.bytes);
+        Metrics.count(Metrics.Counter.EVENTS, events);
+    }
+
+    /**
+     * Query the USGS dataset by reading the whole response into a String and parsing it into a
+     * {@link JsonTree}. Kept as a fallback for the streaming decoder.
+     *
+     * @param requestUrl URL string to request data from the USGS
+     * @return List of earthquake objects
+     */
+    private static List<Earthquake> fetchEarthquakeTree(String requestUrl){
+        // Create URL object
+        URL url = createUrl(requestUrl);
+
+        String jsonResponse = null;
+        try{
+            jsonResponse = makeHttpRequest(url);
+        } catch (IOException e){
+            QuakeLog.e(LOG_TAG, "Error closing input stream", e);
+        }
+
+        // Extract fields from the JSON response and create a {@link List} object
+        List<Earthquake> earthquakes;
+        Metrics.Timer parseTimer = Metrics.start(Metrics.Stage.PARSE);
+        try{
+            earthquakes = extractEarthquakes(jsonResponse);
+        } finally {
+            parseTimer.stop();
+        }
+        if(earthquakes != null){
+            Metrics.count(Metrics.Counter.EVENTS, earthquakes.size());
+        }
+
+        // Return the {@link List}
+        return earthquakes;
+    }
+
+    private static URL createUrl(String stringUrl){
+        URL url = null;
+
+        try{
+            url = new URL(stringUrl);
+        } catch(MalformedURLException e){
+            QuakeLog.e(LOG_TAG,"Error with creating URL", e);
+        }
+
+        return url;
+    }
+
+    private static String makeHttpRequest(URL url) throws IOException {
+        String jsonResponse = "";
+
+        // if URL is null, then return early.
+        if(url == null) {
+            return jsonResponse;
+        }
+
+        HttpTransport.Response response = null;
+
+        try{
+            response = sTransport.get(url, Collections.<String, String>emptyMap());
+
+            // Read the input stream and parse response if the response was successful (code 200)
+            if(response.getCode() == 200){
+                Metrics.Timer readTimer = Metrics.start(Metrics.Stage.BODY_READ);
+                try{
+                    jsonResponse = readFromStream(response.getBody());
+                } finally {
+                    readTimer.stop();
+                }
+                Metrics.count(Metrics.Counter.BYTES, jsonResponse.length());
+            } else {
+                QuakeLog.e(LOG_TAG,"Error response code: " + response.getCode());
+            }
+        } catch(IOException e){
+            QuakeLog.e(LOG_TAG,"Problem retrieving earthquake JSON results", e);
+        } finally {
+            // Release the connection. Closing the response could throw an IOException,
+            // which is why the makeHttpRequest(URL url) method signature specifies that an
+            // IOException could be thrown.
+            if(response != null){
+                response.close();
+            }
+        }
+
+        return jsonResponse;
+    }
+
+    /**
+     * Return the request headers that make a request conditional on the validators of a
+     * cached response, or no headers when there is nothing cached.
+     */
+    private static Map<String, String> conditionalHeaders(ResponseDiskCache.Entry cached) {
+        if(cached == null){
+            return Collections.emptyMap();
+        }
+        Map<String, String> headers = new HashMap<>();
+        if(cached.getETag() != null){
+            headers.put("If-None-Match", cached.getETag());
+        }
+        if(cached.getLastModified() != null){
+            headers.put("If-Modified-Since", cached.getLastModified());
+        }
+        return headers;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if(closeable == null){
+            return;
+        }
+        try{
+            closeable.close();
+        } catch(IOException e){
+            QuakeLog.e(LOG_TAG, "Error closing input stream", e);
+        }
+    }
+
+    /**
+     * Decodes the body of a response.
+     */
+    private abstract static class BodyDecoder {
+        /** Value of the Date header of a full response, or null. Set before decoding. */
+        String date;
+
+        /**
+         * @param inputStream body of the response
+         * @param metered stream that measures the reads of the body, possibly wrapped by
+         *                inputStream
+         * @param contentType value of the response's Content-Type header, or null if unknown
+         */
+        abstract void decode(InputStream inputStream, MeteredInputStream metered,
+                             String contentType) throws IOException;
+    }
+
+    /**
+     * Counts the bytes read from a response body and the time spent waiting for them.
+     */
+    private static final class MeteredInputStream extends FilterInputStream {
+        long bytes;
+        long readNanos;
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            readNanos += System.nanoTime() - start;
+            if(b != -1){
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, count);
+            readNanos += System.nanoTime() - start;
+            if(read > 0){
+                bytes += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the entire JSON response
+     * from the server.
+     * @param inputStream JSON response from the server
+     * @return String containing entire JSON response
+     * @throws IOException exception could be thrown processing the input stream
+     */
+    static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if(inputStream != null){
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+            String line = bufferedReader.readLine();
+            while (line != null){
+                output.append(line);
+                line = bufferedReader.readLine();
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Read the whole {@link InputStream} into a byte array, e.g. to index it without decoding.
+     */
+    private static byte[] readBytes(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64 * 1024);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1){
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Return a list of {@link Earthquake} objects that has been built up from
+     * parsing a string containing the JSON response from the server.
+     */
+    static List<Earthquake> extractEarthquakes(String jsonResponse) {
+        // return early if JSON string is null
+        if(jsonResponse == null || jsonResponse.isEmpty()){
+            return null;
+        }
+
+        // Create an empty ArrayList that we can start adding earthquakes to
+        List<Earthquake> earthquakes = new ArrayList<>();
+
+        // Try to parse the JSON response. If there's a problem with the way the JSON
+        // is formatted, or a field is missing, an exception will be thrown.
+        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        try {
+
+            Map<String, Object> quakeResultsObject =
+                    JsonTree.asObject(JsonTree.parse(jsonResponse));
+            List<Object> quakeFeaturesArray = JsonTree.getArray(quakeResultsObject, "features");
+
+            for (int i=0; i < quakeFeaturesArray.size();i++){
+
+                Map<String, Object> quakeObject = JsonTree.asObject(quakeFeaturesArray.get(i));
+                Map<String, Object> quakeProperties = JsonTree.getObject(quakeObject, "properties");
+
+                String id = JsonTree.optString(quakeObject, "id", null);
+                double mag = JsonTree.getDouble(quakeProperties, "mag");
+                String place = JsonTree.getString(quakeProperties, "place");
+                long time = JsonTree.getLong(quakeProperties, "time");
+                String url = JsonTree.getString(quakeProperties, "url");
+                long updated = JsonTree.optLong(quakeProperties, "updated", time);
+
+                // GeoJSON lists a point as longitude, latitude, depth
+                double latitude = Double.NaN;
+                double longitude = Double.NaN;
+                double depth = Double.NaN;
+                Map<String, Object> geometry = JsonTree.optObject(quakeObject, "geometry");
+                List<Object> coordinates = geometry == null
+                        ? null : JsonTree.optArray(geometry, "coordinates");
+                if(coordinates != null && coordinates.size() >= 2){
+                    longitude = JsonTree.optDouble(coordinates, 0);
+                    latitude = JsonTree.optDouble(coordinates, 1);
+                    depth = JsonTree.optDouble(coordinates, 2);
+                }
+
+                Earthquake quakeItem = new Earthquake(id,mag,place,time,url,updated,
+                        latitude,longitude,depth);
+
+                earthquakes.add(quakeItem);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // If an error is thrown when executing any of the above statements in the "try" block,
+            // catch the exception here, so the app doesn't crash. Print a log message
+            // with the message from the exception.
+            QuakeLog.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
+        }
+        // Return the list of earthquakes
+        return earthquakes;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,325 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link HttpTransport} that keeps slow and flaky links from showing up as empty lists.
+ *
+ * Every request goes to the wrapped transport with a deadline taken from the latency recently
+ * seen for the same host rather than a fixed timeout. A request that is still waiting for its
+ * response headers when it passes the host's 95th percentile is hedged: an identical request is
+ * sent and whichever answers first is used. Failed attempts, timeouts and 5xx / 429 responses
+ * are retried with jittered exponential backoff, which is safe because every request is an
+ * idempotent GET. A per-host {@link CircuitBreaker} fails requests fast while a host is down.
+ *
+ * An attempt that times out is recorded as a latency sample at its deadline: its real latency
+ * is at least that long, and leaving it out would keep the deadline tuned to the fast responses
+ * of a link that has just become slow. Attempts run on a bounded pool of threads; a hedge is
+ * only sent while a thread is idle, so hedging never queues behind other requests.
+ */
+public final class ResilientTransport implements HttpTransport {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ResilientTransport.class.getSimpleName();
+
+    /** Largest number of attempts per request, including the first. */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** First retry waits up to this long; each further retry doubles it. */
+    private static final long BASE_BACKOFF_MILLIS = 250;
+
+    /** Longest wait before a retry. */
+    private static final long MAX_BACKOFF_MILLIS = 4000;
+
+    /** Deadline of an attempt until enough latency samples have been seen. */
+    private static final long DEFAULT_TIMEOUT_MILLIS = 15000;
+
+    /** Bounds of the adaptive deadline. */
+    private static final long MIN_TIMEOUT_MILLIS = 2000;
+    private static final long MAX_TIMEOUT_MILLIS = 30000;
+
+    /** The deadline is this multiple of the host's 99th percentile latency. */
+    private static final int TIMEOUT_PERCENTILE_MULTIPLIER = 3;
+
+    /** Samples needed before timeouts adapt and requests are hedged. */
+    private static final int MIN_SAMPLES = 10;
+
+    /** Largest number of attempts in flight at once, across all requests and hosts. */
+    private static final int MAX_THREADS = 16;
+
+    private final HttpTransport delegate;
+    private final Clock clock;
+    private final Random random = new Random();
+    private final Map<String, Host> hosts = new HashMap<>();
+
+    /** Runs attempts, so the caller can stop waiting for one and hedge or time out. */
+    private final ThreadPoolExecutor executor;
+
+    private volatile boolean hedgingEnabled = true;
+
+    /**
+     * Constructs a transport over a {@link UrlConnectionTransport}. The read timeout between two
+     * reads of the body is set to the longest adaptive deadline, as the deadline itself now
+     * guards against a server that never answers.
+     */
+    public ResilientTransport() {
+        this(new UrlConnectionTransport(UrlConnectionTransport.DEFAULT_CONNECT_TIMEOUT,
+                (int) MAX_TIMEOUT_MILLIS), Clock.SYSTEM);
+    }
+
+    /**
+     * Constructs a transport that sends its requests through another one.
+     *
+     * @param delegate transport that sends each attempt
+     * @param clock clock latencies, deadlines and circuit breakers are measured with
+     */
+    public ResilientTransport(HttpTransport delegate, Clock clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+        executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, LOG_TAG);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Turn sending hedged duplicate requests on or off.
+     */
+    public void setHedgingEnabled(boolean enabled) {
+        hedgingEnabled = enabled;
+    }
+
+    @Override
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        Host host = getHost(url);
+        IOException failure = null;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                backOff(attempt);
+            }
+            if (!host.breaker.allowRequest()) {
+                throw new IOException("Circuit open for " + url.getHost());
+            }
+
+            Response response;
+            try {
+                response = attempt(url, headers, host);
+            } catch (IOException e) {
+                if (isCancellation(e)) {
+                    // The caller gave up, e.g. the user left the screen; the host did not fail,
+                    // and nobody is waiting for a retry
+                    host.breaker.onCancelled();
+                    throw e;
+                }
+                host.breaker.onFailure();
+                failure = e;
+                QuakeLog.w(LOG_TAG, "Attempt " + (attempt + 1) + " failed for " + url, e);
+                continue;
+            }
+
+            if (!isRetryable(response.getCode())) {
+                host.breaker.onSuccess();
+                return response;
+            }
+            host.breaker.onFailure();
+            if (attempt == MAX_ATTEMPTS - 1) {
+                // Out of attempts; let the caller see the server's answer
+                return response;
+            }
+            QuakeLog.w(LOG_TAG, "Retrying " + url + " after response code " + response.getCode());
+            closeQuietly(response);
+        }
+        throw failure;
+    }
+
+    /**
+     * Send one attempt, hedged with a second request if it is slow, and wait for the first
+     * response until the host's deadline.
+     */
+    private Response attempt(final URL url, final Map<String, String> headers, Host host)
+            throws IOException {
+        // Once a response has been claimed, every later response is closed by its own task
+        final AtomicBoolean claimed = new AtomicBoolean();
+        Callable<Response> send = new Callable<Response>() {
+            @Override
+            public Response call() throws IOException {
+                Response response = delegate.get(url, headers);
+                if (claimed.compareAndSet(false, true)) {
+                    return response;
+                }
+                closeQuietly(response);
+                return null;
+            }
+        };
+
+        CompletionService<Response> completion = new ExecutorCompletionService<>(executor);
+        long start = clock.currentTimeMillis();
+        long timeout = host.timeoutMillis();
+        long hedgeDelay = hedgingEnabled ? host.hedgeDelayMillis() : -1;
+        completion.submit(send);
+        int launched = 1;
+        int finished = 0;
+        IOException failure = null;
+
+        try {
+            while (finished < launched) {
+                long elapsed = clock.currentTimeMillis() - start;
+                boolean canHedge = launched == 1 && hedgeDelay >= 0 && hedgeDelay < timeout;
+                long wait = (canHedge ? hedgeDelay : timeout) - elapsed;
+                Future<Response> done = wait > 0
+                        ? completion.poll(wait, TimeUnit.MILLISECONDS)
+                        : completion.poll();
+
+                if (done == null) {
+                    if (canHedge) {
+                        // The first request is slower than most; race a second one against it,
+                        // unless every thread is busy and the hedge would only wait in line
+                        if (executor.getActiveCount() < MAX_THREADS) {
+                            completion.submit(send);
+                            launched++;
+                        } else {
+                            hedgeDelay = -1;
+                        }
+                        continue;
+                    }
+                    if (claimed.compareAndSet(false, true)) {
+                        // Censored sample: the response would have taken at least this long
+                        host.latency.record(timeout);
+                        throw new SocketTimeoutException("No response from " + url.getHost()
+                                + " within " + timeout + " ms");
+                    }
+                    // A response was claimed at the very last moment; it is on its way
+                    done = completion.take();
+                }
+                finished++;
+
+                try {
+                    Response response = done.get();
+                    if (response != null) {
+                        host.latency.record(clock.currentTimeMillis() - start);
+                        return response;
+                    }
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            claimed.set(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        }
+        throw failure;
+    }
+
+    /**
+     * Whether a failed attempt was stopped by the caller, by interrupting the thread or
+     * cancelling a {@link Cancellation}, rather than by the host. A timeout is also an
+     * {@link InterruptedIOException}, but it is the host's doing.
+     */
+    private static boolean isCancellation(IOException e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    /**
+     * Whether a response code means the same request may succeed if it is sent again.
+     */
+    private static boolean isRetryable(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    /**
+     * Wait before a retry, for a random time up to an exponentially growing limit, so clients
+     * that failed together do not retry together.
+     */
+    private void backOff(int attempt) throws InterruptedIOException {
+        long limit = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        long delay = (long) (random.nextDouble() * limit);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    /**
+     * Gets the state of the circuit breaker of a URL's host.
+     */
+    CircuitBreaker.State getCircuitState(URL url) {
+        return getHost(url).breaker.getState();
+    }
+
+    private synchronized Host getHost(URL url) {
+        String key = url.getProtocol() + "://" + url.getAuthority();
+        Host host = hosts.get(key);
+        if (host == null) {
+            host = new Host(new CircuitBreaker(clock));
+            hosts.put(key, host);
+        }
+        return host;
+    }
+
+    private static void closeQuietly(Response response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            QuakeLog.e(LOG_TAG, "Error closing response", e);
+        }
+    }
+
+    /**
+     * What is known about one host.
+     */
+    private static final class Host {
+        final LatencyTracker latency = new LatencyTracker();
+        final CircuitBreaker breaker;
+
+        Host(CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+
+        /**
+         * Gets the deadline of an attempt: a multiple of the 99th percentile latency.
+         */
+        long timeoutMillis() {
+            if (latency.size() < MIN_SAMPLES) {
+                return DEFAULT_TIMEOUT_MILLIS;
+            }
+            long timeout = latency.percentile(99) * TIMEOUT_PERCENTILE_MULTIPLIER;
+            return Math.max(MIN_TIMEOUT_MILLIS, Math.min(MAX_TIMEOUT_MILLIS, timeout));
+        }
+
+        /**
+         * Gets how long to wait before hedging an attempt, or -1 to not hedge yet.
+         */
+        long hedgeDelayMillis() {
+            return latency.size() < MIN_SAMPLES ? -1 : latency.percentile(95);
+        }
+    }
+}
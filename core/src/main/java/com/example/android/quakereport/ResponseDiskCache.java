@@ -0,0 +1,414 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * On-disk cache of USGS responses, keyed by the full request URI.
+ *
+ * Each entry keeps the response body together with the ETag and Last-Modified headers the
+ * server sent, so the next request for the same URI can be made conditional with
+ * If-None-Match / If-Modified-Since and a 304 answer can be served from local storage.
+ * The total size of the cached bodies is capped; the least recently used entries are
+ * evicted first.
+ */
+public final class ResponseDiskCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ResponseDiskCache.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // A download still writing its temporary file touches it far more often than this
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * A cached response and the validators needed to revalidate it.
+     */
+    public static final class Entry {
+        private final File body;
+        private final String eTag;
+        private final String lastModified;
+
+        private Entry(File body, String eTag, String lastModified) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        /** ETag sent with the cached response, or null if there was none. */
+        public String getETag() {return eTag;}
+
+        /** Last-Modified sent with the cached response, or null if there was none. */
+        public String getLastModified() {return lastModified;}
+
+        /**
+         * Open the cached response body.
+         *
+         * @throws FileNotFoundException if the entry was evicted or replaced since it was
+         *                               looked up
+         */
+        public InputStream openBody() throws IOException {
+            return new FileInputStream(body);
+        }
+    }
+
+    private final File directory;
+    private final long maxSizeBytes;
+
+    /**
+     * Constructs a new cache that stores its entries in the given directory.
+     *
+     * @param directory directory to store cached responses in; created if missing
+     * @param maxSizeBytes maximum total size of the cached response bodies
+     */
+    public ResponseDiskCache(File directory, long maxSizeBytes) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            QuakeLog.e(LOG_TAG, "Could not create cache directory " + directory);
+        }
+        // No download of this cache is running yet, so every temporary file is left over
+        sweepTempFiles(0);
+    }
+
+    /**
+     * Look up the cached response for a request URI and mark it as recently used.
+     *
+     * @param uri request URI
+     * @return the cached entry, or null if the URI has not been cached
+     */
+    public synchronized Entry get(String uri) {
+        String key = keyFor(uri);
+        File body = new File(directory, key + BODY_SUFFIX);
+        File meta = new File(directory, key + META_SUFFIX);
+        if (!body.isFile() || !meta.isFile()) {
+            return null;
+        }
+
+        String[] validators;
+        try {
+            validators = readMeta(meta, uri);
+        } catch (IOException e) {
+            QuakeLog.e(LOG_TAG, "Problem reading cache metadata", e);
+            return null;
+        }
+        if (validators == null) {
+            // Hash collision or stale file; treat as a miss
+            return null;
+        }
+
+        // The body's modification time doubles as its last-access time for LRU eviction
+        body.setLastModified(System.currentTimeMillis());
+        return new Entry(body, validators[0], validators[1]);
+    }
+
+    /**
+     * Wrap a response body so that everything read through the returned stream is also
+     * written to the cache. The entry only replaces the previously cached response once
+     * {@link CachingInputStream#commit()} is called after the body has been read to the end.
+     *
+     * @param uri request URI
+     * @param eTag ETag header of the response, may be null
+     * @param lastModified Last-Modified header of the response, may be null
+     * @param body response body from the server
+     * @return stream that tees the body into the cache
+     */
+    public CachingInputStream put(String uri, String eTag, String lastModified, InputStream body)
+            throws IOException {
+        File temp = File.createTempFile(keyFor(uri), TEMP_SUFFIX, directory);
+        return new CachingInputStream(body, temp, uri, eTag, lastModified);
+    }
+
+    /**
+     * Move a fully written temporary body into place and trim the cache to its size cap.
+     *
+     * The validators are removed first and written last, so that whatever step fails, they
+     * never describe a body other than the one on disk; an entry without them is a miss.
+     */
+    private synchronized void commit(File temp, String uri, String eTag, String lastModified)
+            throws IOException {
+        String key = keyFor(uri);
+        File body = new File(directory, key + BODY_SUFFIX);
+        File meta = new File(directory, key + META_SUFFIX);
+
+        if (meta.exists() && !meta.delete()) {
+            throw new IOException("Could not replace cache metadata " + meta);
+        }
+        if (body.exists() && !body.delete()) {
+            throw new IOException("Could not replace cached body " + body);
+        }
+        if (!temp.renameTo(body)) {
+            throw new IOException("Could not move cached body into place " + body);
+        }
+
+        // Write the validators next to the body, then move them into place in one step
+        File metaTemp = new File(directory, key + META_SUFFIX + TEMP_SUFFIX);
+        writeMeta(metaTemp, uri, eTag, lastModified);
+        if (!metaTemp.renameTo(meta)) {
+            metaTemp.delete();
+            throw new IOException("Could not move cache metadata into place " + meta);
+        }
+        trimToSize();
+    }
+
+    /**
+     * Delete temporary files that no download is writing to any more, e.g. because the process
+     * died in the middle of one.
+     *
+     * @param olderThanMillis only delete files not written to for this long
+     */
+    private void sweepTempFiles(long olderThanMillis) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - olderThanMillis;
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX) && file.lastModified() <= cutoff
+                    && !file.delete()) {
+                QuakeLog.e(LOG_TAG, "Could not delete temporary cache file " + file);
+            }
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the cached bodies fit in the size cap.
+     */
+    private void trimToSize() {
+        sweepTempFiles(STALE_TEMP_MILLIS);
+
+        File[] bodies = directory.listFiles();
+        if (bodies == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : bodies) {
+            if (file.getName().endsWith(BODY_SUFFIX)) {
+                size += file.length();
+            }
+        }
+
+        while (size > maxSizeBytes) {
+            File eldest = null;
+            for (File file : bodies) {
+                if (file.getName().endsWith(BODY_SUFFIX) && file.exists()
+                        && (eldest == null || file.lastModified() < eldest.lastModified())) {
+                    eldest = file;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+
+            size -= eldest.length();
+            String name = eldest.getName();
+            File meta = new File(directory,
+                    name.substring(0, name.length() - BODY_SUFFIX.length()) + META_SUFFIX);
+            if (!eldest.delete() || (meta.exists() && !meta.delete())) {
+                QuakeLog.e(LOG_TAG, "Could not evict cache entry " + name);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the validators from a metadata file, or return null if it belongs to another URI.
+     */
+    private static String[] readMeta(File meta, String uri) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(meta), UTF_8));
+        try {
+            if (!uri.equals(reader.readLine())) {
+                return null;
+            }
+            return new String[]{emptyToNull(reader.readLine()), emptyToNull(reader.readLine())};
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeMeta(File meta, String uri, String eTag, String lastModified)
+            throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(meta), UTF_8);
+        try {
+            writer.write(uri + "\n");
+            writer.write((eTag == null ? "" : eTag) + "\n");
+            writer.write((lastModified == null ? "" : lastModified) + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void closeQuietly(OutputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            QuakeLog.e(LOG_TAG, "Error closing cache file", e);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Return a file-name-safe key for a request URI.
+     */
+    private static String keyFor(String uri) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(uri.getBytes(UTF_8));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Input stream that copies everything read from the response body into a temporary
+     * cache file.
+     */
+    public final class CachingInputStream extends FilterInputStream {
+        private final File temp;
+        private final OutputStream copy;
+        private final String uri;
+        private final String eTag;
+        private final String lastModified;
+        private boolean failed;
+        private boolean done;
+
+        private CachingInputStream(InputStream in, File temp, String uri, String eTag,
+                                   String lastModified) throws IOException {
+            super(in);
+            this.temp = temp;
+            this.copy = new FileOutputStream(temp);
+            this.uri = uri;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would never reach the cache file, so read them instead
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (failed) {
+                return;
+            }
+            try {
+                copy.write(buffer, offset, count);
+            } catch (IOException e) {
+                // Losing the cache copy must not break the response being read
+                QuakeLog.e(LOG_TAG, "Problem writing response to cache", e);
+                failed = true;
+            }
+        }
+
+        /**
+         * Store the copied body as the cached response for its URI. Any bytes the caller left
+         * unread, such as trailing whitespace after the JSON document, are copied first.
+         */
+        public void commit() {
+            if (done) {
+                return;
+            }
+            try {
+                byte[] buffer = new byte[8192];
+                while (read(buffer, 0, buffer.length) != -1) {
+                    // Drain the rest of the body into the cache file
+                }
+                done = true;
+                copy.close();
+                if (!failed) {
+                    ResponseDiskCache.this.commit(temp, uri, eTag, lastModified);
+                }
+            } catch (IOException e) {
+                QuakeLog.e(LOG_TAG, "Problem storing response in cache", e);
+            } finally {
+                if (!done) {
+                    done = true;
+                    closeQuietly(copy);
+                }
+                if (temp.exists() && !temp.delete()) {
+                    QuakeLog.e(LOG_TAG, "Could not delete temporary cache file " + temp);
+                }
+            }
+        }
+
+        /**
+         * Close the response body. If {@link #commit()} was not called first, the partial copy
+         * is discarded and the previously cached response is kept.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!done) {
+                    done = true;
+                    closeQuietly(copy);
+                    if (temp.exists() && !temp.delete()) {
+                        QuakeLog.e(LOG_TAG, "Could not delete temporary cache file " + temp);
+                    }
+                }
+            }
+        }
+    }
+}
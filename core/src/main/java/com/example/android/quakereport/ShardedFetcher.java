@@ -0,0 +1,392 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches every earthquake of a long time range by splitting it into windows that are
+ * requested concurrently.
+ *
+ * A single USGS query over a year is slow and is cut off at the server's result cap. This
+ * engine cuts the range into windows and handles them on a small bounded pool of threads. Each
+ * window is first counted on the count endpoint next to the query endpoint. A window holding
+ * more events than the cap is split, without being downloaded, into enough parts to fit, and
+ * the parts are counted in turn; the other windows are fetched. Dense periods thus end up in
+ * narrow windows and quiet ones in wide windows. The shards are then merged into the requested
+ * order and deduplicated by event id.
+ */
+public final class ShardedFetcher {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ShardedFetcher.class.getSimpleName();
+
+    /** Endpoint of the USGS event service. */
+    public static final String USGS_ENDPOINT = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    /** Largest number of events the USGS returns for a single query. */
+    public static final int USGS_RESULT_CAP = 20000;
+
+    /** Number of windows the range is first cut into, per thread. */
+    private static final int INITIAL_WINDOWS_PER_THREAD = 2;
+
+    /** Narrowest window that is still split when it holds more events than the cap. */
+    private static final long MIN_WINDOW_MILLIS = 1000;
+
+    /** Value of the order-by setting that sorts by time; anything else sorts by magnitude. */
+    private static final String ORDER_BY_TIME = "time";
+
+    private final String endpoint;
+    private final String countEndpoint;
+    private final int resultCap;
+    private final int parallelism;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger splitCount = new AtomicInteger();
+
+    /**
+     * Constructs an engine that fetches from the USGS.
+     *
+     * @param parallelism largest number of requests in flight at once
+     */
+    public ShardedFetcher(int parallelism) {
+        this(USGS_ENDPOINT, USGS_RESULT_CAP, parallelism);
+    }
+
+    /**
+     * Constructs an engine that fetches from any server speaking the USGS query API, e.g. a
+     * local mock server.
+     *
+     * @param endpoint URL of the query endpoint; the count endpoint is its sibling "count"
+     * @param resultCap largest number of events the server returns for one query
+     * @param parallelism largest number of requests in flight at once
+     */
+    public ShardedFetcher(String endpoint, int resultCap, int parallelism) {
+        this.endpoint = endpoint;
+        this.countEndpoint = endpoint.substring(0, endpoint.lastIndexOf('/') + 1) + "count";
+        this.resultCap = resultCap;
+        this.parallelism = Math.max(1, parallelism);
+        executor = new ThreadPoolExecutor(this.parallelism, this.parallelism,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                LOG_TAG + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fetch every earthquake of a time range, in the order of the list settings.
+     *
+     * @param startTime earliest time to include, in milliseconds
+     * @param endTime time to stop before, in milliseconds
+     * @param minMagnitude smallest magnitude to include
+     * @param orderBy "time" for most recent first, otherwise largest magnitude first
+     * @return the earthquakes of the range, or null if any window could not be fetched, or
+     *         still held more events than the cap at the narrowest window
+     */
+    public List<Earthquake> fetch(long startTime, long endTime, double minMagnitude,
+                                  String orderBy) {
+        if (endTime <= startTime) {
+            return new ArrayList<>();
+        }
+
+        CompletionService<Shard> completion = new ExecutorCompletionService<>(executor);
+        int pending = 0;
+        for (Window window : split(startTime, endTime,
+                parallelism * INITIAL_WINDOWS_PER_THREAD)) {
+            completion.submit(newTask(window, minMagnitude, orderBy));
+            pending++;
+        }
+
+        List<List<Earthquake>> shards = new ArrayList<>();
+        try {
+            while (pending > 0) {
+                Shard shard = completion.take().get();
+                pending--;
+
+                // Events added after the count can still push a fetched window to the cap
+                boolean truncated = shard.count > resultCap || (shard.earthquakes != null
+                        && shard.earthquakes.size() >= resultCap && shard.count < resultCap);
+                if (!truncated && shard.earthquakes == null) {
+                    // Leave the remaining windows to finish in the background
+                    QuakeLog.e(LOG_TAG, "Could not fetch window " + shard.window);
+                    return null;
+                }
+                if (truncated && shard.window.length() <= MIN_WINDOW_MILLIS) {
+                    QuakeLog.e(LOG_TAG, "Window " + shard.window + " holds more than "
+                            + resultCap + " events and cannot be split further");
+                    return null;
+                }
+                if (truncated) {
+                    // Split into as many parts as the count needs, assuming even density
+                    splitCount.incrementAndGet();
+                    int parts = Math.max(2, shard.count / resultCap + 1);
+                    for (Window part : split(shard.window.start, shard.window.end, parts)) {
+                        completion.submit(newTask(part, minMagnitude, orderBy));
+                        pending++;
+                    }
+                    continue;
+                }
+                shards.add(shard.earthquakes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            QuakeLog.e(LOG_TAG, "Problem fetching a window", e);
+            return null;
+        }
+
+        return merge(shards, comparatorFor(orderBy));
+    }
+
+    /**
+     * Gets the number of requests sent since this engine was created.
+     */
+    public int getRequestCount() {return requestCount.get();}
+
+    /**
+     * Gets the number of windows that held more events than the cap and were split.
+     */
+    public int getSplitCount() {return splitCount.get();}
+
+    /**
+     * Stop the engine's threads once the requests in flight have finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Wait for the engine's threads to stop after {@link #shutdown()}, including windows left to
+     * finish in the background by a failed fetch.
+     *
+     * @return true if the threads stopped, false if the timeout passed first
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Merge shards into one sorted list, keeping one copy of each event: the one that was
+     * updated last. Each shard must already be sorted in the order, as the server returns it.
+     */
+    static List<Earthquake> merge(List<List<Earthquake>> shards,
+                                  final Comparator<Earthquake> order) {
+        // Neighbouring windows can both hold an event, e.g. when its time was revised between
+        // the two requests; find the freshest copy of each id before merging
+        Map<String, Earthquake> freshest = new HashMap<>();
+        int total = 0;
+        for (List<Earthquake> shard : shards) {
+            total += shard.size();
+            for (Earthquake earthquake : shard) {
+                String id = earthquake.getId();
+                if (id == null) {
+                    continue;
+                }
+                Earthquake other = freshest.get(id);
+                if (other == null || earthquake.getUpdated() > other.getUpdated()) {
+                    freshest.put(id, earthquake);
+                }
+            }
+        }
+
+        // k-way merge with a heap holding the head of every shard
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, shards.size()),
+                new Comparator<Cursor>() {
+                    @Override
+                    public int compare(Cursor a, Cursor b) {
+                        return order.compare(a.head(), b.head());
+                    }
+                });
+        for (List<Earthquake> shard : shards) {
+            if (!shard.isEmpty()) {
+                heads.add(new Cursor(shard));
+            }
+        }
+
+        List<Earthquake> merged = new ArrayList<>(Math.min(total, freshest.size() + total / 8));
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            Earthquake earthquake = cursor.head();
+            String id = earthquake.getId();
+            if (id == null || freshest.get(id) == earthquake) {
+                merged.add(earthquake);
+            }
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Gets the order of the list settings: most recent first, or largest magnitude first with
+     * the most recent first among equal magnitudes.
+     */
+    static Comparator<Earthquake> comparatorFor(String orderBy) {
+        final boolean byTime = ORDER_BY_TIME.equals(orderBy);
+        return new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                if (!byTime) {
+                    int byMagnitude = Double.compare(b.getMagnitude(), a.getMagnitude());
+                    if (byMagnitude != 0) {
+                        return byMagnitude;
+                    }
+                }
+                long timeA = a.getDateTime();
+                long timeB = b.getDateTime();
+                return timeA > timeB ? -1 : (timeA == timeB ? 0 : 1);
+            }
+        };
+    }
+
+    private Callable<Shard> newTask(final Window window, final double minMagnitude,
+                                    final String orderBy) {
+        return new Callable<Shard>() {
+            @Override
+            public Shard call() {
+                requestCount.incrementAndGet();
+                int count = QueryUtils.fetchCount(buildCountUrl(window, minMagnitude), null);
+                if (count < 0 || count > resultCap) {
+                    return new Shard(window, count, null);
+                }
+
+                requestCount.incrementAndGet();
+                final List<Earthquake> earthquakes = new ArrayList<>();
+                boolean success = QueryUtils.fetchEarthquakeData(
+                        buildUrl(window, minMagnitude, orderBy),
+                        new GeoJsonStreamDecoder.EarthquakeListener() {
+                            @Override
+                            public void onEarthquake(Earthquake earthquake) {
+                                earthquakes.add(earthquake);
+                            }
+                        });
+                return new Shard(window, count, success ? earthquakes : null);
+            }
+        };
+    }
+
+    /**
+     * Build the request for one window. The USGS treats both ends as inclusive, so the end is
+     * moved back by a millisecond to keep neighbouring windows apart.
+     */
+    String buildUrl(Window window, double minMagnitude, String orderBy) {
+        QueryUrlBuilder uriBuilder = new QueryUrlBuilder(endpoint);
+        uriBuilder.appendQueryParameter("format", "geojson");
+        uriBuilder.appendQueryParameter("eventtype", "earthquake");
+        uriBuilder.appendQueryParameter("orderby",
+                ORDER_BY_TIME.equals(orderBy) ? "time" : "magnitude");
+        uriBuilder.appendQueryParameter("minmagnitude", String.valueOf(minMagnitude));
+        uriBuilder.appendQueryParameter("starttime", QueryUrlBuilder.formatIsoTime(window.start));
+        uriBuilder.appendQueryParameter("endtime", QueryUrlBuilder.formatIsoTime(window.end - 1));
+        uriBuilder.appendQueryParameter("limit", String.valueOf(resultCap));
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Build the request counting the events of one window, with the same filters as
+     * {@link #buildUrl(Window, double, String)}.
+     */
+    String buildCountUrl(Window window, double minMagnitude) {
+        QueryUrlBuilder uriBuilder = new QueryUrlBuilder(countEndpoint);
+        uriBuilder.appendQueryParameter("eventtype", "earthquake");
+        uriBuilder.appendQueryParameter("minmagnitude", String.valueOf(minMagnitude));
+        uriBuilder.appendQueryParameter("starttime", QueryUrlBuilder.formatIsoTime(window.start));
+        uriBuilder.appendQueryParameter("endtime", QueryUrlBuilder.formatIsoTime(window.end - 1));
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Cut a range into windows of equal length, at least a millisecond each.
+     */
+    static List<Window> split(long start, long end, int count) {
+        long length = end - start;
+        count = (int) Math.max(1, Math.min(count, length));
+        List<Window> windows = new ArrayList<>(count);
+        long windowStart = start;
+        for (int i = 1; i <= count; i++) {
+            long windowEnd = i == count ? end : start + length / count * i;
+            windows.add(new Window(windowStart, windowEnd));
+            windowStart = windowEnd;
+        }
+        return windows;
+    }
+
+    /**
+     * Half-open time range [start, end), in milliseconds.
+     */
+    static final class Window {
+        final long start;
+        final long end;
+
+        Window(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {return end - start;}
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Result of counting and fetching one window. The count is -1 if it could not be read; the
+     * list is null if the window was not fetched, because it held too many events or a request
+     * failed.
+     */
+    private static final class Shard {
+        final Window window;
+        final int count;
+        final List<Earthquake> earthquakes;
+
+        Shard(Window window, int count, List<Earthquake> earthquakes) {
+            this.window = window;
+            this.count = count;
+            this.earthquakes = earthquakes;
+        }
+    }
+
+    /**
+     * Position in a sorted shard during the merge.
+     */
+    private static final class Cursor {
+        private final List<Earthquake> shard;
+        private int position;
+
+        Cursor(List<Earthquake> shard) {
+            this.shard = shard;
+        }
+
+        Earthquake head() {return shard.get(position);}
+
+        boolean advance() {
+            return ++position < shard.size();
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * Grid index over the epicenters of an {@link EarthquakeTable}, answering bounding-box, radius
+ * and k-nearest queries without scanning every row.
+ *
+ * The globe is cut into cells of {@link #CELL_DEGREES} degrees of latitude and longitude. Rows
+ * are bucketed by cell once, in a compressed layout: one array of row positions ordered by cell
+ * and one array of offsets where each cell's run starts. The coordinates are copied alongside in
+ * the same order, so a query walks a few short, contiguous runs instead of the whole table.
+ * Rows without coordinates are left out of the index.
+ *
+ * Distances are great-circle distances on a sphere of {@link #EARTH_RADIUS_KM}. The index is
+ * immutable and can be queried from any thread.
+ */
+public final class SpatialIndex {
+
+    /** Mean radius of the Earth, in kilometers. */
+    static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** Size of a grid cell, in degrees. */
+    static final int CELL_DEGREES = 1;
+
+    private static final int ROWS = 180 / CELL_DEGREES;
+    private static final int COLUMNS = 360 / CELL_DEGREES;
+
+    /** Kilometers per degree of latitude. */
+    private static final double KM_PER_DEGREE = EARTH_RADIUS_KM * Math.PI / 180;
+
+    /**
+     * Narrows a query to the rows it is interested in, e.g. by magnitude or time.
+     */
+    public interface Filter {
+
+        /**
+         * Whether the row at a position of the indexed table should be part of the result.
+         */
+        boolean accept(int position);
+    }
+
+    /** Offset into {@link #positions} where each cell's run starts, plus the total at the end. */
+    private final int[] cellStart;
+
+    /** Table positions of the indexed rows, grouped by cell. */
+    private final int[] positions;
+
+    /** Coordinates of the rows in {@link #positions}, in the same order. */
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] cosLatitudes;
+
+    /**
+     * Build the index over every row of a table that has coordinates.
+     */
+    public SpatialIndex(EarthquakeTable table) {
+        int size = table.size();
+        int[] cells = new int[size];
+        cellStart = new int[ROWS * COLUMNS + 1];
+
+        // Count the rows per cell, then turn the counts into start offsets
+        int indexed = 0;
+        for (int i = 0; i < size; i++) {
+            double latitude = table.getLatitude(i);
+            double longitude = table.getLongitude(i);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                cells[i] = -1;
+                continue;
+            }
+            cells[i] = cellOf(latitude, longitude);
+            cellStart[cells[i] + 1]++;
+            indexed++;
+        }
+        for (int cell = 0; cell < ROWS * COLUMNS; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+
+        positions = new int[indexed];
+        latitudes = new double[indexed];
+        longitudes = new double[indexed];
+        cosLatitudes = new double[indexed];
+        int[] next = new int[ROWS * COLUMNS];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        for (int i = 0; i < size; i++) {
+            if (cells[i] < 0) {
+                continue;
+            }
+            int slot = next[cells[i]]++;
+            positions[slot] = i;
+            latitudes[slot] = table.getLatitude(i);
+            longitudes[slot] = table.getLongitude(i);
+            cosLatitudes[slot] = Math.cos(Math.toRadians(latitudes[slot]));
+        }
+    }
+
+    /**
+     * Gets the number of rows in the index.
+     */
+    public int size() {return positions.length;}
+
+    /**
+     * Find the rows whose epicenter lies in a bounding box. A box whose west edge is east of its
+     * east edge crosses the antimeridian.
+     *
+     * @param south southern edge, in degrees of latitude
+     * @param west western edge, in degrees of longitude
+     * @param north northern edge, in degrees of latitude
+     * @param east eastern edge, in degrees of longitude
+     * @param filter rows to consider, or null for all of them
+     * @return table positions of the matching rows, in no particular order
+     */
+    public int[] boundingBox(double south, double west, double north, double east,
+                             Filter filter) {
+        IntList result = new IntList();
+        if (west <= east) {
+            collectBox(south, west, north, east, filter, result);
+        } else {
+            collectBox(south, west, north, 180, filter, result);
+            collectBox(south, -180, north, east, filter, result);
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Find the rows whose epicenter lies within a distance of a point.
+     *
+     * @param latitude latitude of the center, in degrees
+     * @param longitude longitude of the center, in degrees
+     * @param radiusKm distance from the center, in kilometers
+     * @param filter rows to consider, or null for all of them
+     * @return table positions of the matching rows, in no particular order
+     */
+    public int[] radius(double latitude, double longitude, double radiusKm, Filter filter) {
+        IntList result = new IntList();
+        double latSpan = radiusKm / KM_PER_DEGREE;
+        double south = Math.max(-90, latitude - latSpan);
+        double north = Math.min(90, latitude + latSpan);
+
+        // A circle reaching a pole, or wide enough to wrap around, covers every longitude
+        double lonSpan = 180;
+        if (south > -90 && north < 90) {
+            double maxCos = Math.cos(Math.toRadians(Math.max(Math.abs(south), Math.abs(north))));
+            lonSpan = Math.min(180, latSpan / maxCos);
+        }
+
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        int[] rows = rowRange(south, north);
+        for (int[] columns : columnRanges(longitude - lonSpan, longitude + lonSpan)) {
+            for (int row = rows[0]; row <= rows[1]; row++) {
+                for (int column = columns[0]; column <= columns[1]; column++) {
+                    int cell = row * COLUMNS + column;
+                    for (int slot = cellStart[cell]; slot < cellStart[cell + 1]; slot++) {
+                        if (distanceKm(cosLat, latitude, longitude, slot) <= radiusKm
+                                && (filter == null || filter.accept(positions[slot]))) {
+                            result.add(positions[slot]);
+                        }
+                    }
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Find the rows whose epicenters are closest to a point.
+     *
+     * Cells are visited in growing rings around the point's cell, and the search stops as soon
+     * as the next ring cannot hold anything closer than the k-th row found so far.
+     *
+     * @param latitude latitude of the point, in degrees
+     * @param longitude longitude of the point, in degrees
+     * @param k largest number of rows to return
+     * @param filter rows to consider, or null for all of them
+     * @return table positions of up to k rows, closest first
+     */
+    public int[] nearest(double latitude, double longitude, int k, Filter filter) {
+        if (k <= 0 || positions.length == 0) {
+            return new int[0];
+        }
+
+        NearestHeap heap = new NearestHeap(k);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        int centerRow = rowOf(latitude);
+        int centerColumn = columnOf(longitude);
+        int maxRing = Math.max(ROWS, COLUMNS / 2);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (heap.isFull() && ringLowerBoundKm(ring, cosLat) > heap.maxDistance()) {
+                break;
+            }
+            for (int dRow = -ring; dRow <= ring; dRow++) {
+                int row = centerRow + dRow;
+                if (row < 0 || row >= ROWS) {
+                    continue;
+                }
+                if (Math.abs(dRow) == ring) {
+                    // Top and bottom edges of the ring take every column in between
+                    int from = Math.max(-ring, -COLUMNS / 2 + 1);
+                    int to = Math.min(ring, COLUMNS / 2);
+                    for (int dColumn = from; dColumn <= to; dColumn++) {
+                        visit(row, centerColumn + dColumn, cosLat, latitude, longitude,
+                                filter, heap);
+                    }
+                } else {
+                    // Left and right edges; past half way around they are already visited
+                    if (-ring > -COLUMNS / 2) {
+                        visit(row, centerColumn - ring, cosLat, latitude, longitude,
+                                filter, heap);
+                    }
+                    if (ring <= COLUMNS / 2) {
+                        visit(row, centerColumn + ring, cosLat, latitude, longitude,
+                                filter, heap);
+                    }
+                }
+            }
+        }
+        return heap.toSortedPositions();
+    }
+
+    /**
+     * Offer every row of a cell to the nearest-neighbour heap.
+     */
+    private void visit(int row, int column, double cosLat, double latitude,
+                       double longitude, Filter filter, NearestHeap heap) {
+        int cell = row * COLUMNS + (column % COLUMNS + COLUMNS) % COLUMNS;
+        for (int slot = cellStart[cell]; slot < cellStart[cell + 1]; slot++) {
+            double distance = distanceKm(cosLat, latitude, longitude, slot);
+            if ((!heap.isFull() || distance < heap.maxDistance())
+                    && (filter == null || filter.accept(positions[slot]))) {
+                heap.offer(positions[slot], distance);
+            }
+        }
+    }
+
+    /**
+     * Smallest possible distance from a point to any cell of a ring. A cell of the ring is at
+     * least ring - 1 whole cells away in latitude or in longitude; in longitude the distance is
+     * the one to the nearest meridian that far away, which shrinks towards the poles.
+     */
+    private static double ringLowerBoundKm(int ring, double cosLat) {
+        if (ring <= 1) {
+            return 0;
+        }
+        double degrees = (ring - 1) * CELL_DEGREES;
+        double byLatitude = degrees * KM_PER_DEGREE;
+        double byLongitude = EARTH_RADIUS_KM
+                * Math.asin(cosLat * Math.sin(Math.toRadians(Math.min(90, degrees))));
+        return Math.min(byLatitude, byLongitude);
+    }
+
+    private void collectBox(double south, double west, double north, double east, Filter filter,
+                            IntList result) {
+        int[] rows = rowRange(south, north);
+        int firstColumn = columnOf(west);
+        int lastColumn = columnOf(east);
+        for (int row = rows[0]; row <= rows[1]; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * COLUMNS + column;
+                for (int slot = cellStart[cell]; slot < cellStart[cell + 1]; slot++) {
+                    double latitude = latitudes[slot];
+                    double longitude = longitudes[slot];
+                    if (latitude >= south && latitude <= north
+                            && longitude >= west && longitude <= east
+                            && (filter == null || filter.accept(positions[slot]))) {
+                        result.add(positions[slot]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Great-circle distance from a point to the indexed row in a slot, by the haversine formula.
+     */
+    private double distanceKm(double cosLat, double latitude, double longitude,
+                              int slot) {
+        double sinHalfLat = Math.sin(Math.toRadians(latitudes[slot] - latitude) / 2);
+        double sinHalfLon = Math.sin(Math.toRadians(longitudes[slot] - longitude) / 2);
+        double a = sinHalfLat * sinHalfLat
+                + cosLat * cosLatitudes[slot] * sinHalfLon * sinHalfLon;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static int[] rowRange(double south, double north) {
+        return new int[]{rowOf(south), rowOf(north)};
+    }
+
+    /**
+     * Split a longitude range that may run past the antimeridian into column ranges.
+     */
+    private static int[][] columnRanges(double west, double east) {
+        if (east - west >= 360) {
+            return new int[][]{{0, COLUMNS - 1}};
+        }
+        if (west < -180) {
+            return new int[][]{{columnOf(west + 360), COLUMNS - 1}, {0, columnOf(east)}};
+        }
+        if (east > 180) {
+            return new int[][]{{columnOf(west), COLUMNS - 1}, {0, columnOf(east - 360)}};
+        }
+        return new int[][]{{columnOf(west), columnOf(east)}};
+    }
+
+    private static int cellOf(double latitude, double longitude) {
+        return rowOf(latitude) * COLUMNS + columnOf(longitude);
+    }
+
+    private static int rowOf(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_DEGREES);
+        return Math.max(0, Math.min(ROWS - 1, row));
+    }
+
+    private static int columnOf(double longitude) {
+        int column = (int) Math.floor((longitude + 180) / CELL_DEGREES);
+        return Math.max(0, Math.min(COLUMNS - 1, column));
+    }
+
+    /**
+     * Growable array of ints, so results are not boxed.
+     */
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Bounded max-heap of the k closest rows found so far, keyed by distance.
+     */
+    private static final class NearestHeap {
+        private final int[] positions;
+        private final double[] distances;
+        private int size;
+
+        NearestHeap(int capacity) {
+            positions = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        boolean isFull() {return size == positions.length;}
+
+        double maxDistance() {return distances[0];}
+
+        /**
+         * Add a row, dropping the farthest one if the heap is full.
+         */
+        void offer(int position, double distance) {
+            if (!isFull()) {
+                positions[size] = position;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (distance < distances[0]) {
+                positions[0] = position;
+                distances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Empty the heap into an array of positions, closest first.
+         */
+        int[] toSortedPositions() {
+            int[] result = new int[size];
+            while (size > 0) {
+                result[size - 1] = positions[0];
+                size--;
+                positions[0] = positions[size];
+                distances[0] = distances[size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (distances[parent] >= distances[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && distances[left] > distances[largest]) {
+                    largest = left;
+                }
+                if (right < size && distances[right] > distances[largest]) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int position = positions[a];
+            positions[a] = positions[b];
+            positions[b] = position;
+            double distance = distances[a];
+            distances[a] = distances[b];
+            distances[b] = distance;
+        }
+    }
+}
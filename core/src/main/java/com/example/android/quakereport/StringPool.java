@@ -0,0 +1,44 @@
+package com.example.android.quakereport;
+
+/**
+ * Bounded table that hands out one shared instance for equal strings, so values that repeat
+ * across thousands of events, such as "Alaska" or "CA", are kept in memory once.
+ *
+ * Each string maps to a single slot by its hash. A string that finds an equal one in its slot
+ * is swapped for it; otherwise it takes the slot over. The table never grows, so strings that
+ * are seen once cost nothing beyond the slot they briefly occupy. Safe to use from any thread:
+ * a race at worst keeps two equal copies.
+ */
+public final class StringPool {
+
+    private final String[] slots;
+    private final int mask;
+
+    /**
+     * Constructs a pool with room for at least the given number of distinct strings.
+     */
+    public StringPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Gets the pooled instance equal to a string, or pools the string itself.
+     *
+     * @return an instance equal to value, or null if value is null
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String pooled = slots[slot];
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+        slots[slot] = value;
+        return value;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android.quakereport;
+
+/**
+ * Decides when the local store is synced in the background, so opening the app is nearly
+ * always a read of data that is already on the device.
+ *
+ * Syncs are scheduled twice over: a preferred run on an unmetered network while charging, due
+ * {@link #SYNC_INTERVAL_MILLIS} after the last successful sync, and a fallback run on any
+ * network once the data is {@link #STALE_AFTER_MILLIS} old, for devices that rarely charge on
+ * Wi-Fi. Whichever runs first resets both. Failed syncs back off exponentially. The app only
+ * syncs in the foreground when the data is stale.
+ *
+ * The scheduler turns the delays into job constraints; this class only reads the current time
+ * from a {@link Clock} and the network from a {@link NetworkState}, so the whole schedule can be
+ * stepped through with fakes of both.
+ */
+public final class SyncPolicy {
+
+    /** Time after a successful sync when the next one is due in the preferred conditions. */
+    static final long SYNC_INTERVAL_MILLIS = 30 * 60 * 1000;
+
+    /** Age of the data after which a sync runs on any network, charging or not. */
+    static final long STALE_AFTER_MILLIS = 3 * 60 * 60 * 1000;
+
+    /** Time to wait after the first failure; doubled for every further one. */
+    static final long BASE_BACKOFF_MILLIS = 60 * 1000;
+
+    /** Longest time to wait after a failure, however many there were. */
+    static final long MAX_BACKOFF_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * State of the device's network connection.
+     */
+    public interface NetworkState {
+        boolean isConnected();
+
+        /** Whether data sent over the current connection may cost the user money. */
+        boolean isMetered();
+    }
+
+    private final Clock clock;
+    private final NetworkState network;
+
+    private long lastSuccessAt;
+    private int consecutiveFailures;
+    private long retryAt;
+
+    /**
+     * Constructs a policy with the state saved by a previous one.
+     *
+     * @param clock source of the current time
+     * @param network state of the network connection
+     * @param lastSuccessAt time of the last successful sync, or 0 if there was none
+     * @param consecutiveFailures number of syncs that failed since then
+     * @param retryAt time before which no sync is retried, or 0
+     */
+    public SyncPolicy(Clock clock, NetworkState network, long lastSuccessAt,
+                      int consecutiveFailures, long retryAt) {
+        this.clock = clock;
+        this.network = network;
+        this.lastSuccessAt = lastSuccessAt;
+        this.consecutiveFailures = consecutiveFailures;
+        this.retryAt = retryAt;
+    }
+
+    /**
+     * Whether a background run should sync now. A run is skipped while the data is recent,
+     * while backing off from a failure, without a network, and on a metered network until the
+     * data is stale.
+     */
+    public synchronized boolean shouldSync() {
+        if (!network.isConnected()) {
+            return false;
+        }
+        long now = clock.currentTimeMillis();
+        if (now < retryAt) {
+            return false;
+        }
+        long age = now - lastSuccessAt;
+        if (age < SYNC_INTERVAL_MILLIS) {
+            return false;
+        }
+        return !network.isMetered() || age >= STALE_AFTER_MILLIS;
+    }
+
+    /**
+     * Whether the data is recent enough that opening the app does not need to sync.
+     */
+    public synchronized boolean isFresh() {
+        return clock.currentTimeMillis() - lastSuccessAt < STALE_AFTER_MILLIS;
+    }
+
+    /**
+     * Gets the time left until the preferred run, on an unmetered network while charging, is
+     * due.
+     *
+     * @return milliseconds until the run is due, 0 if it is due now
+     */
+    public synchronized long getPreferredDelayMillis() {
+        return delayUntil(lastSuccessAt + SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Gets the time left until the fallback run, on any network, is due.
+     *
+     * @return milliseconds until the run is due, 0 if it is due now
+     */
+    public synchronized long getFallbackDelayMillis() {
+        return delayUntil(lastSuccessAt + STALE_AFTER_MILLIS);
+    }
+
+    /**
+     * Record the outcome of a sync, in the background or the foreground. A sync that found
+     * nothing changed upstream counts as a success.
+     *
+     * @param success whether the store is now up to date
+     */
+    public synchronized void onSyncFinished(boolean success) {
+        long now = clock.currentTimeMillis();
+        if (success) {
+            lastSuccessAt = now;
+            consecutiveFailures = 0;
+            retryAt = 0;
+            return;
+        }
+        long backoff = BASE_BACKOFF_MILLIS << Math.min(consecutiveFailures, 10);
+        consecutiveFailures++;
+        retryAt = now + Math.min(MAX_BACKOFF_MILLIS, backoff);
+    }
+
+    public synchronized long getLastSuccessAt() {return lastSuccessAt;}
+
+    public synchronized int getConsecutiveFailures() {return consecutiveFailures;}
+
+    public synchronized long getRetryAt() {return retryAt;}
+
+    private long delayUntil(long dueAt) {
+        return Math.max(0, Math.max(dueAt, retryAt) - clock.currentTimeMillis());
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link HttpTransport} built on {@link HttpURLConnection}.
+ *
+ * Responses are requested gzip-compressed and decompressed while they are streamed. Connections
+ * are not disconnected explicitly; closing a response drains and closes its body instead, which
+ * hands the socket back to the platform's per-host keep-alive pool for the next request. Only a
+ * response closed with more than 64 KB left unread, e.g. after a decode error, is disconnected.
+ */
+public final class UrlConnectionTransport implements HttpTransport {
+
+    /** Default time allowed to establish a connection, in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+
+    /** Default time allowed between two reads of the response, in milliseconds. */
+    public static final int DEFAULT_READ_TIMEOUT = 1000;
+
+    // Most of the body a closed response may leave unread and still keep its connection
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    /**
+     * Constructs a transport with the default connect and read timeouts.
+     */
+    public UrlConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Constructs a transport with the given timeouts.
+     *
+     * @param connectTimeout time allowed to establish a connection, in milliseconds
+     * @param readTimeout time allowed between two reads of the response, in milliseconds
+     */
+    public UrlConnectionTransport(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(connectTimeout);
+        urlConnection.setReadTimeout(readTimeout);
+        urlConnection.setRequestMethod("GET");
+
+        // Asking for gzip explicitly means the body is ours to decompress, on every platform
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            urlConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        try {
+            Metrics.count(Metrics.Counter.REQUESTS, 1);
+            Metrics.Timer connectTimer = Metrics.start(Metrics.Stage.CONNECT);
+            try {
+                urlConnection.connect();
+            } finally {
+                connectTimer.stop();
+            }
+
+            // Waiting for the status line is the time to first byte
+            Metrics.Timer firstByteTimer = Metrics.start(Metrics.Stage.FIRST_BYTE);
+            int code;
+            try {
+                code = urlConnection.getResponseCode();
+            } finally {
+                firstByteTimer.stop();
+            }
+            return new UrlConnectionResponse(urlConnection, code);
+        } catch (IOException e) {
+            // Nothing can be reused from a connection that failed before a response arrived
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    private static final class UrlConnectionResponse implements Response {
+        private final HttpURLConnection urlConnection;
+        private final int code;
+        private InputStream body;
+
+        private UrlConnectionResponse(HttpURLConnection urlConnection, int code) {
+            this.urlConnection = urlConnection;
+            this.code = code;
+        }
+
+        @Override
+        public int getCode() {return code;}
+
+        @Override
+        public String getHeader(String name) {
+            return urlConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                InputStream raw = code >= 400
+                        ? urlConnection.getErrorStream()
+                        : urlConnection.getInputStream();
+                if (raw != null && "gzip".equalsIgnoreCase(getHeader("Content-Encoding"))) {
+                    raw = new GZIPInputStream(raw);
+                }
+                body = raw;
+            }
+            return body;
+        }
+
+        @Override
+        public void abort() {
+            // Android closes the socket, failing a blocked read at once. The desktop JDK lets
+            // a blocked read run into the read timeout first.
+            urlConnection.disconnect();
+        }
+
+        @Override
+        public void close() throws IOException {
+            InputStream stream = body;
+            if (stream == null) {
+                stream = code >= 400
+                        ? urlConnection.getErrorStream()
+                        : urlConnection.getInputStream();
+            }
+            if (stream == null) {
+                return;
+            }
+            try {
+                // The connection only goes back to the pool once its body has been consumed,
+                // but a new connection is cheaper than downloading a large unread rest
+                byte[] buffer = new byte[8192];
+                long drained = 0;
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    drained += read;
+                    if (drained > MAX_DRAIN_BYTES) {
+                        urlConnection.disconnect();
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // The caller already closed the body, so there is nothing left to drain
+            } finally {
+                stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link QuakeLog.Sink} that keeps messages for a test to check instead of printing them.
+ */
+final class CapturingLogSink implements QuakeLog.Sink {
+
+    private final List<String> errors = new ArrayList<>();
+
+    @Override
+    public synchronized void log(int priority, String tag, String message, Throwable throwable) {
+        if (priority == QuakeLog.ERROR) {
+            errors.add(tag + ": " + message);
+        }
+    }
+
+    /**
+     * Gets the errors logged so far, each as "tag: message".
+     */
+    synchronized List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * Whether an error containing the given text was logged by the given tag.
+     */
+    synchronized boolean hasError(String tag, String text) {
+        for (String error : errors) {
+            if (error.startsWith(tag + ": ") && error.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
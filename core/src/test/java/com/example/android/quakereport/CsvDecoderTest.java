@@ -0,0 +1,152 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvDecoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String HEADER = "time,latitude,longitude,depth,mag,id,updated,place\n";
+
+    private final CsvDecoder decoder = new CsvDecoder();
+
+    @Test
+    public void decodesTheSameEventsAsGeoJson() throws IOException {
+        List<Earthquake> earthquakes = Arrays.asList(
+                new Earthquake("ci38443183", 2.1, "12km SW of Searles Valley, CA",
+                        1520121456780L, null, 1520123000123L, 35.6851667, -117.5993333, 7.89),
+                new Earthquake("us1000d3ft", 6.3, "Rumoi, Japan",
+                        1520000000000L, null, 1520000000000L, -44.1, 142.0625, 35.0),
+                new Earthquake("nc73", 0.02, "3km N of Test", 1519999999001L, null,
+                        1519999999001L, 38.8213348, -122.7876663, -0.35));
+
+        List<Earthquake> fromCsv = decode(TestResponses.csv(earthquakes));
+        final List<Earthquake> fromGeoJson = new ArrayList<>();
+        GeoJsonStreamDecoder.decode(stream(TestResponses.geoJson(earthquakes)),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        fromGeoJson.add(earthquake);
+                    }
+                });
+
+        assertEquals(fromGeoJson.size(), fromCsv.size());
+        for (int i = 0; i < fromCsv.size(); i++) {
+            Earthquake csv = fromCsv.get(i);
+            Earthquake json = fromGeoJson.get(i);
+            assertEquals(json.getId(), csv.getId());
+            assertEquals(json.getMagnitude(), csv.getMagnitude(), 0);
+            assertEquals(json.getLocation(), csv.getLocation());
+            assertEquals(json.getDateTime(), csv.getDateTime());
+            assertEquals(json.getUpdated(), csv.getUpdated());
+            assertEquals(json.getWebsite(), csv.getWebsite());
+            assertEquals(json.getLatitude(), csv.getLatitude(), 0);
+            assertEquals(json.getLongitude(), csv.getLongitude(), 0);
+            assertEquals(json.getDepth(), csv.getDepth(), 0);
+        }
+    }
+
+    @Test
+    public void quotedFieldsKeepCommasQuotesAndLineBreaks() throws IOException {
+        List<Earthquake> earthquakes = decode(HEADER
+                + "2018-03-03T23:57:36.780Z,35.1,-117.2,7.9,2.1,ci1,,"
+                + "\"5km N of \"\"The Geysers\"\", CA\"\r\n"
+                + "2018-03-03T23:50:00.000Z,35.1,-117.2,7.9,3.4,ci2,,\"Offshore,\nsomewhere\"\r\n");
+
+        assertEquals(2, earthquakes.size());
+        assertEquals("5km N of \"The Geysers\", CA", earthquakes.get(0).getLocation());
+        assertEquals("Offshore,\nsomewhere", earthquakes.get(1).getLocation());
+        // Without an updated time, an event counts as updated when it happened
+        assertEquals(earthquakes.get(0).getDateTime(), earthquakes.get(0).getUpdated());
+    }
+
+    @Test
+    public void columnsAreFoundByName() throws IOException {
+        List<Earthquake> earthquakes = decode("id,place,mag,updated,time,depth,longitude,latitude\n"
+                + "ci1,Test,4.5,2018-03-04T00:00:00Z,2018-03-03T00:00:00Z,10,-117,35\n");
+
+        assertEquals(1, earthquakes.size());
+        assertEquals(4.5, earthquakes.get(0).getMagnitude(), 0);
+        assertEquals(1520035200000L, earthquakes.get(0).getDateTime());
+        assertEquals(1520121600000L, earthquakes.get(0).getUpdated());
+        assertEquals(35, earthquakes.get(0).getLatitude(), 0);
+    }
+
+    @Test
+    public void emptyBodyHasNoEvents() throws IOException {
+        assertTrue(decode("").isEmpty());
+        assertTrue(decode(HEADER).isEmpty());
+        assertTrue(decode(HEADER + "\n\n").isEmpty());
+    }
+
+    @Test
+    public void missingColumnFailsTheResponse() {
+        try {
+            decode("time,latitude,longitude,depth,id,updated,place\n"
+                    + "2018-03-03T23:57:36.780Z,35.1,-117.2,7.9,ci1,,Test\n");
+            fail("Decoded a response without a mag column");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("mag"));
+        }
+    }
+
+    @Test
+    public void rowsWithoutRequiredFieldsAreDropped() throws IOException {
+        List<Earthquake> earthquakes = decode(HEADER
+                + "2018-03-03T23:57:36.780Z,35.1,-117.2,7.9,,ci1,,No magnitude\n"
+                + "not a time,35.1,-117.2,7.9,2.0,ci2,,Bad time\n"
+                + "2018-03-03T23:57:36.780Z,35.1,-117.2,7.9,2.0,,,No id\n"
+                + "2018-03-03T23:57:36.780Z,35.1,-117.2,7.9,2.0,ci3,,\n"
+                + "2018-03-03T23:57:36.780Z,,,,2.0,ci4,,Kept\n"
+                + "2018-03-03T23:57:36.780Z,35.1,-117.2\n");
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("ci4", earthquakes.get(0).getId());
+        assertTrue(Double.isNaN(earthquakes.get(0).getLatitude()));
+    }
+
+    @Test
+    public void numbersParseLikeDoubleParseDouble() throws IOException {
+        String[] values = {"0", "-0.5", "2.1e-05", "-117.5993333", "35.6851667", "1E3", "+7.89",
+                "0.000000000000000000000000001", "12345678901234567890.5", "1e400"};
+        for (String value : values) {
+            CsvDecoder.Records records = new CsvDecoder.Records(stream(value + "\n"));
+            assertTrue(records.next());
+            assertEquals(value, Double.parseDouble(value), CsvDecoder.parseDouble(records, 0), 0);
+        }
+
+        for (String value : new String[]{"", "-", ".", "1e", "n/a", "1.5x"}) {
+            CsvDecoder.Records records = new CsvDecoder.Records(stream("x," + value + "\n"));
+            assertTrue(records.next());
+            assertTrue(value, Double.isNaN(CsvDecoder.parseDouble(records, 1)));
+        }
+    }
+
+    private List<Earthquake> decode(String body) throws IOException {
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        int count = decoder.decode(stream(body), new GeoJsonStreamDecoder.EarthquakeListener() {
+            @Override
+            public void onEarthquake(Earthquake earthquake) {
+                earthquakes.add(earthquake);
+            }
+        });
+        assertEquals(earthquakes.size(), count);
+        return earthquakes;
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(UTF_8));
+    }
+}
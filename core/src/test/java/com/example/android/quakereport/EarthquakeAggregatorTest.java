@@ -0,0 +1,173 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeAggregatorTest {
+
+    /** 14:13:20 UTC, so a few minutes earlier is still the current hour. */
+    private static final long NOW = 1520000000000L;
+    private static final long HOUR = EarthquakeAggregator.HOUR_MILLIS;
+    private static final int LAST_HOUR = EarthquakeAggregator.HOURLY_BUCKETS - 1;
+    private static final int LAST_DAY = EarthquakeAggregator.DAILY_BUCKETS - 1;
+
+    private final FakeClock clock = new FakeClock(NOW);
+    private final EarthquakeAggregator aggregator = new EarthquakeAggregator(clock);
+
+    private static final class FakeClock implements Clock {
+        long now;
+
+        FakeClock(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    @Test
+    public void eventsAreCountedByBandAndTime() {
+        aggregator.add("us1", 4.5, NOW - 60000);
+        aggregator.add("us2", 4.9, NOW - HOUR);
+        aggregator.add("us3", 6.21, NOW - 60000);
+
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(3, snapshot.getEventCount());
+        assertEquals(2, snapshot.getBandCount(4));
+        assertEquals(1, snapshot.getBandCount(6));
+        assertEquals(6.21, snapshot.getMaxMagnitude(), 0);
+        assertEquals(2, snapshot.getHourlyCounts()[LAST_HOUR]);
+        assertEquals(1, snapshot.getHourlyCounts()[LAST_HOUR - 1]);
+        assertEquals(3, snapshot.getDailyCounts()[LAST_DAY]);
+    }
+
+    @Test
+    public void unchangedEventFedAgainHasNoEffect() {
+        aggregator.add("us1", 4.5, NOW);
+        long version = aggregator.snapshot().getVersion();
+
+        aggregator.add("us1", 4.5, NOW);
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(version, snapshot.getVersion());
+        assertEquals(1, snapshot.getEventCount());
+        assertEquals(1, snapshot.getBandCount(4));
+    }
+
+    @Test
+    public void revisionMovesEventToAnotherBandAndHour() {
+        aggregator.add("us1", 4.5, NOW - HOUR);
+        aggregator.add("us1", 5.1, NOW);
+
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(1, snapshot.getEventCount());
+        assertEquals(0, snapshot.getBandCount(4));
+        assertEquals(1, snapshot.getBandCount(5));
+        assertEquals(0, snapshot.getHourlyCounts()[LAST_HOUR - 1]);
+        assertEquals(1, snapshot.getHourlyCounts()[LAST_HOUR]);
+    }
+
+    @Test
+    public void largestRevisedDownFindsNextLargest() {
+        aggregator.add("us1", 7.3, NOW);
+        aggregator.add("us2", 4.12, NOW);
+        aggregator.add("us3", 4.1, NOW);
+        assertEquals(7.3, aggregator.snapshot().getMaxMagnitude(), 0);
+
+        // Taking the largest event out of its bin leaves the next non-empty bin as the maximum
+        aggregator.add("us1", 2.0, NOW);
+        assertEquals(4.12, aggregator.snapshot().getMaxMagnitude(), 0);
+
+        aggregator.add("us2", 1.5, NOW);
+        assertEquals(4.1, aggregator.snapshot().getMaxMagnitude(), 0);
+    }
+
+    @Test
+    public void maximumStaysWhileItsBinIsNotEmpty() {
+        aggregator.add("us1", 6.5, NOW);
+        aggregator.add("us2", 6.5, NOW);
+        aggregator.add("us1", 3.0, NOW);
+        assertEquals(6.5, aggregator.snapshot().getMaxMagnitude(), 0);
+    }
+
+    @Test
+    public void eventsOutsideTheRangeFallInTheEndBands() {
+        aggregator.add("us1", -0.4, NOW);
+        aggregator.add("us2", 9.5, NOW);
+        aggregator.add(null, Double.NaN, NOW);
+
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(2, snapshot.getEventCount());
+        assertEquals(1, snapshot.getBandCount(0));
+        assertEquals(1, snapshot.getBandCount(EarthquakeAggregator.BAND_COUNT - 1));
+    }
+
+    @Test
+    public void sparklinesMoveOnWithTheClock() {
+        aggregator.add("us1", 4.5, NOW);
+        long version = aggregator.snapshot().getVersion();
+
+        clock.now = NOW + 3 * HOUR;
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(version, snapshot.getVersion());
+        assertEquals(0, snapshot.getHourlyCounts()[LAST_HOUR]);
+        assertEquals(1, snapshot.getHourlyCounts()[LAST_HOUR - 3]);
+
+        // Past the end of the sparkline the event still counts towards the bands
+        clock.now = NOW + EarthquakeAggregator.HOURLY_BUCKETS * HOUR;
+        snapshot = aggregator.snapshot();
+        assertArrayEquals(new int[EarthquakeAggregator.HOURLY_BUCKETS],
+                snapshot.getHourlyCounts());
+        assertEquals(1, snapshot.getBandCount(4));
+    }
+
+    @Test
+    public void ringSlotIsTakenOverByNewerHour() {
+        // The hourly ring has twice as many slots as the sparkline shows, so this hour and the
+        // hour that many hours later share a slot
+        long later = NOW + 2 * EarthquakeAggregator.HOURLY_BUCKETS * HOUR;
+        aggregator.add("us1", 4.5, NOW);
+        clock.now = later;
+        aggregator.add("us2", 4.5, later);
+        assertEquals(1, aggregator.snapshot().getHourlyCounts()[LAST_HOUR]);
+
+        // An older event arriving late, or a revision of one whose slot was taken over, does not
+        // touch the newer hour's count
+        aggregator.add("us3", 4.5, NOW);
+        aggregator.add("us1", 5.5, NOW);
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(1, snapshot.getHourlyCounts()[LAST_HOUR]);
+        assertEquals(3, snapshot.getEventCount());
+        assertEquals(1, snapshot.getBandCount(5));
+    }
+
+    @Test
+    public void eventsAheadOfTheClockKeepShownHours() {
+        aggregator.add("us1", 4.5, NOW);
+        aggregator.add("us2", 4.5, NOW + EarthquakeAggregator.HOURLY_BUCKETS * HOUR);
+
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(1, snapshot.getHourlyCounts()[LAST_HOUR]);
+    }
+
+    @Test
+    public void clearForgetsEveryEvent() {
+        aggregator.add("us1", 4.5, NOW);
+        long version = aggregator.snapshot().getVersion();
+        aggregator.clear();
+
+        EarthquakeAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertTrue(snapshot.getVersion() > version);
+        assertEquals(0, snapshot.getEventCount());
+        assertTrue(Double.isNaN(snapshot.getMaxMagnitude()));
+        assertEquals(0, snapshot.getHourlyCounts()[LAST_HOUR]);
+
+        // An id seen before the clear is a new event again
+        aggregator.add("us1", 4.5, NOW);
+        assertEquals(1, aggregator.snapshot().getEventCount());
+    }
+}
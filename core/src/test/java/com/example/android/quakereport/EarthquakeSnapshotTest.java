@@ -0,0 +1,89 @@
+package com.example.android.quakereport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeSnapshotTest {
+
+    private static final List<Earthquake> PAGE = Arrays.asList(
+            TestResponses.quake("us1000a", 5.2, 1520000600000L),
+            TestResponses.quake("us1000b", 3.1, 1520000000000L));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotRoundTrips() throws IOException {
+        File file = new File(folder.getRoot(), "first-page.snapshot");
+        EarthquakeSnapshot.write(file, "minmag=2.0&orderby=time", PAGE);
+
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.read(file);
+        assertEquals("minmag=2.0&orderby=time", snapshot.getKey());
+        assertEquals(PAGE.size(), snapshot.getTable().size());
+        assertEquals("us1000b", snapshot.getTable().getId(1));
+        assertEquals(1520000000000L, snapshot.getTable().getDateTime(1));
+    }
+
+    @Test
+    public void unchangedPageIsNotRewritten() throws IOException {
+        File file = new File(folder.getRoot(), "first-page.snapshot");
+        EarthquakeSnapshot.write(file, "key", PAGE);
+        long written = 1000000000000L;
+        assertTrue(file.setLastModified(written));
+
+        EarthquakeSnapshot.write(file, "key", PAGE);
+        assertEquals(written, file.lastModified());
+
+        EarthquakeSnapshot.write(file, "other key", PAGE);
+        assertNotEquals(written, file.lastModified());
+    }
+
+    @Test
+    public void concurrentWritersLeaveOneCompleteSnapshot() throws Exception {
+        final File file = new File(folder.getRoot(), "first-page.snapshot");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final String key = "key" + i;
+                final List<Earthquake> page = new ArrayList<>();
+                for (int row = 0; row <= i; row++) {
+                    page.add(TestResponses.quake("us" + row, 4.0, 1520000000000L - row));
+                }
+                writes.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        EarthquakeSnapshot.write(file, key, page);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Whichever writer won, the file holds its snapshot whole
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.read(file);
+        int rows = Integer.parseInt(snapshot.getKey().substring("key".length())) + 1;
+        assertEquals(rows, snapshot.getTable().size());
+        assertEquals(1, folder.getRoot().list().length);
+    }
+}
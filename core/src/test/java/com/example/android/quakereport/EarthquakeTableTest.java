@@ -0,0 +1,38 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class EarthquakeTableTest {
+
+    @Test
+    public void placeIsReadInParts() {
+        EarthquakeTable table = new EarthquakeTable();
+        table.add("us1", 5.2, "74km NW of Rumoi, Japan", 1520000000000L, null, 0L);
+        table.add("us2", 3.1, "Rumoi, Japan", 1520000000000L, null, 0L);
+
+        EarthquakeTable.Row row = table.newRow().moveTo(0);
+        assertEquals("74km NW of ", row.getLocationOffset());
+        assertEquals("Rumoi, Japan", row.getPrimaryLocation());
+        assertEquals("74km NW of Rumoi, Japan", row.getLocation());
+
+        row.moveTo(1);
+        assertNull(row.getLocationOffset());
+        assertSame(table.getPrimaryLocation(0), row.getPrimaryLocation());
+    }
+
+    @Test
+    public void earthquakeKeepsItsPlaceSplit() {
+        Earthquake earthquake = new Earthquake("us1", 5.2, "74km NW of Rumoi, Japan",
+                1520000000000L, null, 0L);
+        EarthquakeTable table = new EarthquakeTable();
+        table.add(earthquake);
+
+        assertEquals("74km NW of ", table.getLocationOffset(0));
+        assertSame(earthquake.getPrimaryLocation(), table.getPrimaryLocation(0));
+        assertEquals("74km NW of Rumoi, Japan", table.get(0).getLocation());
+    }
+}
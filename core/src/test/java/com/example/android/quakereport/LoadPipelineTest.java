@@ -0,0 +1,202 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoadPipelineTest {
+
+    private final ManualExecutor work = new ManualExecutor();
+    private final ManualExecutor delivery = new ManualExecutor();
+    private final LoadPipeline<String, String> pipeline = new LoadPipeline<>(work, delivery);
+
+    /**
+     * Executor that queues its tasks until the test runs them.
+     */
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Task that counts its runs and remembers the cancellation of the last one.
+     */
+    private static final class CountingTask implements LoadPipeline.Task<String> {
+        final String value;
+        int runs;
+        Cancellation cancellation;
+
+        CountingTask(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String load(Cancellation cancellation) throws IOException {
+            runs++;
+            this.cancellation = cancellation;
+            return value;
+        }
+    }
+
+    /**
+     * Callback that records what it was given.
+     */
+    private static final class RecordingCallback implements LoadPipeline.Callback<String> {
+        final List<String> values = new ArrayList<>();
+        Exception error;
+
+        @Override
+        public void onLoaded(String value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            error = e;
+        }
+    }
+
+    @Test
+    public void identicalKeysShareOneLoad() {
+        CountingTask task = new CountingTask("page");
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        pipeline.submit("minmag=2", task, first);
+        pipeline.submit("minmag=2", new CountingTask("other"), second);
+        assertEquals(1, pipeline.getInFlightCount());
+
+        work.runAll();
+        delivery.runAll();
+        assertEquals(1, task.runs);
+        assertEquals(1, first.values.size());
+        assertEquals("page", second.values.get(0));
+        assertEquals(0, pipeline.getInFlightCount());
+    }
+
+    @Test
+    public void differentKeysLoadSeparately() {
+        CountingTask low = new CountingTask("low");
+        CountingTask high = new CountingTask("high");
+        RecordingCallback callback = new RecordingCallback();
+        pipeline.submit("minmag=2", low, callback);
+        pipeline.submit("minmag=6", high, callback);
+
+        work.runAll();
+        delivery.runAll();
+        assertEquals(1, low.runs);
+        assertEquals(1, high.runs);
+        assertEquals(2, callback.values.size());
+    }
+
+    @Test
+    public void keyIsFreeOnceLoadCompletes() {
+        CountingTask task = new CountingTask("page");
+        pipeline.submit("minmag=2", task, new RecordingCallback());
+        work.runAll();
+        pipeline.submit("minmag=2", task, new RecordingCallback());
+        work.runAll();
+        assertEquals(2, task.runs);
+    }
+
+    @Test
+    public void cancellingLastSubscriptionCancelsTheLoad() {
+        final List<Cancellation> started = new ArrayList<>();
+        LoadPipeline.Task<String> task = new LoadPipeline.Task<String>() {
+            @Override
+            public String load(Cancellation cancellation) {
+                started.add(cancellation);
+                return "page";
+            }
+        };
+        RecordingCallback callback = new RecordingCallback();
+        LoadPipeline<String, String>.Subscription first =
+                pipeline.submit("minmag=2", task, callback);
+        LoadPipeline<String, String>.Subscription second =
+                pipeline.submit("minmag=2", task, callback);
+
+        first.cancel();
+        assertEquals(1, pipeline.getInFlightCount());
+        second.cancel();
+        assertEquals(0, pipeline.getInFlightCount());
+
+        // A load cancelled before it starts never runs, and nothing is delivered
+        work.runAll();
+        delivery.runAll();
+        assertTrue(started.isEmpty());
+        assertTrue(callback.values.isEmpty());
+    }
+
+    @Test
+    public void cancelAbortsTheRunningLoad() {
+        final AtomicReference<LoadPipeline<String, String>.Subscription> subscription =
+                new AtomicReference<>();
+        final boolean[] cancelledWhileRunning = new boolean[1];
+        LoadPipeline.Task<String> task = new LoadPipeline.Task<String>() {
+            @Override
+            public String load(Cancellation cancellation) {
+                // The screen goes away while the response is being read
+                subscription.get().cancel();
+                cancelledWhileRunning[0] = cancellation.isCancelled();
+                return "page";
+            }
+        };
+        RecordingCallback callback = new RecordingCallback();
+        subscription.set(pipeline.submit("minmag=2", task, callback));
+
+        work.runAll();
+        delivery.runAll();
+        assertTrue(cancelledWhileRunning[0]);
+        assertTrue(callback.values.isEmpty());
+    }
+
+    @Test
+    public void resultOnItsWayIsDroppedAfterCancel() {
+        RecordingCallback callback = new RecordingCallback();
+        LoadPipeline<String, String>.Subscription subscription =
+                pipeline.submit("minmag=2", new CountingTask("page"), callback);
+
+        work.runAll();
+        subscription.cancel();
+        delivery.runAll();
+        assertTrue(callback.values.isEmpty());
+        assertNull(callback.error);
+    }
+
+    @Test
+    public void failureIsDelivered() {
+        final IOException failure = new IOException("No route to host");
+        RecordingCallback callback = new RecordingCallback();
+        pipeline.submit("minmag=2", new LoadPipeline.Task<String>() {
+            @Override
+            public String load(Cancellation cancellation) throws IOException {
+                throw failure;
+            }
+        }, callback);
+
+        work.runAll();
+        delivery.runAll();
+        assertEquals(failure, callback.error);
+        assertTrue(callback.values.isEmpty());
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server that stands in for the USGS in tests. Every request is recorded and
+ * answered by a {@link Handler}, on a thread of its own so slow responses do not hold up others.
+ */
+final class MockServer implements Closeable {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Answers the requests sent to the server.
+     */
+    interface Handler {
+        MockResponse handle(Request request) throws Exception;
+    }
+
+    /**
+     * A request received by the server.
+     */
+    static final class Request {
+        final String path;
+        final Map<String, String> query;
+        private final Map<String, String> headers;
+
+        private Request(String path, Map<String, String> query, Map<String, String> headers) {
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+        }
+
+        /** Value of a request header, or null if it was not sent. */
+        String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+    }
+
+    /**
+     * A response to send back.
+     */
+    static final class MockResponse {
+        final int code;
+        final Map<String, String> headers = new HashMap<>();
+        final byte[] body;
+        long delayMillis;
+
+        MockResponse(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        static MockResponse ok(String body) {
+            return new MockResponse(200, body.getBytes(UTF_8));
+        }
+
+        static MockResponse status(int code) {
+            return new MockResponse(code, new byte[0]);
+        }
+
+        MockResponse header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /** Wait this long before sending the status line. */
+        MockResponse delay(long millis) {
+            delayMillis = millis;
+            return this;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+
+    MockServer(final Handler handler) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Request request = record(exchange);
+                MockResponse response;
+                try {
+                    response = handler.handle(request);
+                    if (response.delayMillis > 0) {
+                        Thread.sleep(response.delayMillis);
+                    }
+                } catch (Exception e) {
+                    response = MockResponse.status(500);
+                }
+                send(exchange, response);
+            }
+        });
+        server.start();
+    }
+
+    /** URL of a path and query on this server. */
+    URL url(String pathAndQuery) throws IOException {
+        return new URL(urlString(pathAndQuery));
+    }
+
+    String urlString(String pathAndQuery) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + pathAndQuery;
+    }
+
+    /** Requests received so far, oldest first. */
+    List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private Request record(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    query.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+                }
+            }
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            headers.put(header.getKey().toLowerCase(), header.getValue().get(0));
+        }
+        Request request = new Request(exchange.getRequestURI().getPath(), query, headers);
+        requests.add(request);
+        return request;
+    }
+
+    private static void send(HttpExchange exchange, MockResponse response) throws IOException {
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+        }
+        boolean noBody = response.code == 304 || response.code == 204;
+        exchange.sendResponseHeaders(response.code, noBody ? -1 : response.body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            if (!noBody) {
+                out.write(response.body);
+            }
+        } catch (IOException e) {
+            // The client hung up, e.g. because it was cancelled
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueryPlannerTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    // Ten events an hour apart, the newest first, magnitudes 2.0 to 6.5 in no order
+    private static final double[] MAGNITUDES = {4.5, 2.0, 6.5, 3.0, 5.0, 2.5, 6.0, 3.5, 5.5, 4.0};
+
+    @Test
+    public void coversNarrowerQueries() {
+        QueryPlanner.Query all = new QueryPlanner.Query(3.0, "time", 0, 10 * HOUR);
+
+        assertTrue(all.covers(new QueryPlanner.Query(4.0, "magnitude", 0, 10 * HOUR)));
+        assertTrue(all.covers(new QueryPlanner.Query(3.0, "time", HOUR, 2 * HOUR)));
+        assertFalse(all.covers(new QueryPlanner.Query(2.5, "time", 0, 10 * HOUR)));
+        assertFalse(all.covers(new QueryPlanner.Query(3.0, "time", -1, 10 * HOUR)));
+        assertFalse(all.covers(new QueryPlanner.Query(3.0, "time", 0, 10 * HOUR + 1)));
+    }
+
+    @Test
+    public void coveredQueriesAreAnsweredWithoutFetching() {
+        FakeSource source = new FakeSource(events());
+        QueryPlanner planner = new QueryPlanner(source, 100);
+
+        assertEquals(QueryPlanner.Plan.FETCH, planner.plan(new QueryPlanner.Query(2.0, "time")));
+        assertMagnitudes(planner.query(new QueryPlanner.Query(2.0, "time"), 0, 3),
+                4.5, 2.0, 6.5);
+        assertEquals(1, source.fetches);
+
+        // Re-sorting, raising the minimum magnitude and paging all stay local
+        QueryPlanner.Query larger = new QueryPlanner.Query(4.0, "magnitude");
+        assertEquals(QueryPlanner.Plan.LOCAL, planner.plan(larger));
+        assertMagnitudes(planner.query(larger, 0, 3), 6.5, 6.0, 5.5);
+        assertMagnitudes(planner.query(larger, 3, 10), 5.0, 4.5, 4.0);
+        assertEquals(1, source.fetches);
+    }
+
+    @Test
+    public void lowerMinimumMagnitudeFetchesAgain() {
+        FakeSource source = new FakeSource(events());
+        QueryPlanner planner = new QueryPlanner(source, 100);
+
+        planner.query(new QueryPlanner.Query(4.0, "time"), 0, 10);
+        QueryPlanner.Query lower = new QueryPlanner.Query(3.0, "time");
+        assertEquals(QueryPlanner.Plan.FETCH, planner.plan(lower));
+        assertEquals(8, planner.query(lower, 0, 10).size());
+        assertEquals(2, source.fetches);
+    }
+
+    @Test
+    public void invalidateDropsTheSuperset() {
+        FakeSource source = new FakeSource(events());
+        QueryPlanner planner = new QueryPlanner(source, 100);
+        QueryPlanner.Query query = new QueryPlanner.Query(2.0, "time");
+
+        planner.query(query, 0, 10);
+        planner.invalidate();
+        assertEquals(QueryPlanner.Plan.FETCH, planner.plan(query));
+    }
+
+    @Test
+    public void supersetTruncatedByTimeOnlyCoversTheTimesKept() {
+        FakeSource source = new FakeSource(events());
+        QueryPlanner planner = new QueryPlanner(source, 4);
+        QueryPlanner.Query recent = new QueryPlanner.Query(2.0, "time");
+
+        // The four newest events are held; the query they were fetched for pages from them
+        assertMagnitudes(planner.query(recent, 0, 2), 4.5, 2.0);
+        assertEquals(QueryPlanner.Plan.LOCAL, planner.plan(recent));
+        assertMagnitudes(planner.query(recent, 2, 2), 6.5, 3.0);
+        assertEquals(1, source.fetches);
+
+        // Newer than the oldest event kept is complete, anything reaching further back is not
+        assertEquals(QueryPlanner.Plan.LOCAL,
+                planner.plan(new QueryPlanner.Query(3.0, "magnitude", 8 * HOUR, 10 * HOUR)));
+        QueryPlanner.Query largest = new QueryPlanner.Query(2.0, "magnitude");
+        assertEquals(QueryPlanner.Plan.FETCH, planner.plan(largest));
+        assertMagnitudes(planner.query(largest, 0, 3), 6.5, 6.0, 5.5);
+        assertEquals(2, source.fetches);
+    }
+
+    @Test
+    public void supersetTruncatedByMagnitudeOnlyCoversTheMagnitudesKept() {
+        FakeSource source = new FakeSource(events());
+        QueryPlanner planner = new QueryPlanner(source, 4);
+
+        assertMagnitudes(planner.query(new QueryPlanner.Query(2.0, "magnitude"), 0, 4),
+                6.5, 6.0, 5.5, 5.0);
+
+        // Every event above the smallest magnitude kept is held, in any order
+        assertEquals(QueryPlanner.Plan.LOCAL,
+                planner.plan(new QueryPlanner.Query(5.5, "time")));
+        assertEquals(QueryPlanner.Plan.FETCH,
+                planner.plan(new QueryPlanner.Query(5.0, "time")));
+    }
+
+    @Test
+    public void pagesPastTruncatedSupersetComeFromTheSource() {
+        FakeSource source = new FakeSource(events());
+        QueryPlanner planner = new QueryPlanner(source, 4);
+        QueryPlanner.Query recent = new QueryPlanner.Query(2.0, "time");
+
+        assertMagnitudes(planner.query(recent, 0, 2), 4.5, 2.0);
+        assertEquals(0, source.pageFetches);
+
+        // A page reaching past the four rows held, and pages after it, are read one by one
+        assertMagnitudes(planner.query(recent, 3, 2), 3.0, 5.0);
+        assertMagnitudes(planner.query(recent, 5, 2), 2.5, 6.0);
+        assertMagnitudes(planner.query(recent, 9, 2), 4.0);
+        assertEquals(3, source.pageFetches);
+        assertEquals(1, source.fetches);
+    }
+
+    @Test
+    public void indexesSortRowsInAnyOrder() {
+        List<Earthquake> shuffled = events();
+        Collections.shuffle(shuffled, new Random(7));
+        final EarthquakeTable table = new EarthquakeTable();
+        table.addAll(shuffled);
+        QueryPlanner planner = new QueryPlanner(new FakeSource(shuffled) {
+            @Override
+            public EarthquakeTable fetch(QueryPlanner.Query query, int limit) {
+                return table;
+            }
+        }, 100);
+
+        assertMagnitudes(planner.query(new QueryPlanner.Query(2.0, "time"), 0, 10),
+                MAGNITUDES);
+        assertMagnitudes(planner.query(new QueryPlanner.Query(2.0, "magnitude"), 0, 10),
+                6.5, 6.0, 5.5, 5.0, 4.5, 4.0, 3.5, 3.0, 2.5, 2.0);
+    }
+
+    private static List<Earthquake> events() {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < MAGNITUDES.length; i++) {
+            earthquakes.add(TestResponses.quake("us" + i, MAGNITUDES[i],
+                    (MAGNITUDES.length - i) * HOUR));
+        }
+        return earthquakes;
+    }
+
+    private static void assertMagnitudes(List<Earthquake> earthquakes, double... expected) {
+        double[] actual = new double[earthquakes.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = earthquakes.get(i).getMagnitude();
+        }
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    /**
+     * Serves supersets from a list the way the store does: filtered, sorted like the query and
+     * cut off at the limit.
+     */
+    private static class FakeSource implements QueryPlanner.Source {
+        private final List<Earthquake> earthquakes;
+        int fetches;
+        int pageFetches;
+
+        FakeSource(List<Earthquake> earthquakes) {
+            this.earthquakes = earthquakes;
+        }
+
+        @Override
+        public EarthquakeTable fetch(QueryPlanner.Query query, int limit) {
+            fetches++;
+            List<Earthquake> matching = matching(query);
+            EarthquakeTable table = new EarthquakeTable();
+            table.addAll(matching.subList(0, Math.min(limit, matching.size())));
+            return table;
+        }
+
+        @Override
+        public List<Earthquake> fetchPage(QueryPlanner.Query query, int offset, int limit) {
+            pageFetches++;
+            List<Earthquake> matching = matching(query);
+            int from = Math.min(offset, matching.size());
+            return new ArrayList<>(
+                    matching.subList(from, Math.min(from + limit, matching.size())));
+        }
+
+        private List<Earthquake> matching(final QueryPlanner.Query query) {
+            List<Earthquake> matching = new ArrayList<>();
+            for (Earthquake earthquake : earthquakes) {
+                if (query.matches(earthquake.getMagnitude(), earthquake.getDateTime())) {
+                    matching.add(earthquake);
+                }
+            }
+            Collections.sort(matching, new Comparator<Earthquake>() {
+                @Override
+                public int compare(Earthquake a, Earthquake b) {
+                    if (!query.isOrderedByTime()) {
+                        int byMagnitude = Double.compare(b.getMagnitude(), a.getMagnitude());
+                        if (byMagnitude != 0) {
+                            return byMagnitude;
+                        }
+                    }
+                    return Long.valueOf(b.getDateTime()).compareTo(a.getDateTime());
+                }
+            });
+            return matching;
+        }
+    }
+}
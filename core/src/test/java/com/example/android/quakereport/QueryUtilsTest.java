@@ -0,0 +1,118 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueryUtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockServer server;
+    private volatile MockServer.MockResponse response;
+
+    @Before
+    public void setUp() throws IOException {
+        QueryUtils.setTransport(new UrlConnectionTransport());
+        server = new MockServer(new MockServer.Handler() {
+            @Override
+            public MockServer.MockResponse handle(MockServer.Request request) {
+                return response;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        QueryUtils.setResponseCache(null);
+        QueryUtils.setTransport(new ResilientTransport());
+    }
+
+    @Test
+    public void malformedNumberFailsTheFetch() {
+        response = MockServer.MockResponse.ok("{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"properties\":{\"mag\":\"n/a\",\"place\":\"Test\","
+                + "\"time\":1520000000000,\"url\":\"https://example.com\"},\"id\":\"us1\"}]}")
+                .header("Content-Type", "application/json");
+
+        assertFalse(QueryUtils.fetchEarthquakeData(server.urlString("/query?format=geojson"),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                    }
+                }));
+    }
+
+    @Test
+    public void cancelledReadDiscardsPartialCacheCopy() throws IOException {
+        File directory = folder.newFolder("responses");
+        QueryUtils.setResponseCache(new ResponseDiskCache(directory, 1024 * 1024));
+        // Long enough that the body is still being read when the first earthquake is parsed
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            earthquakes.add(TestResponses.quake("us" + i, 4.0, 1520000000000L - i));
+        }
+        response = MockServer.MockResponse.ok(TestResponses.geoJson(earthquakes))
+                .header("Content-Type", "application/json")
+                .header("ETag", "\"v1\"");
+
+        final Cancellation cancellation = new Cancellation();
+        assertFalse(QueryUtils.fetchEarthquakeData(server.urlString("/query?format=geojson"),
+                new GeoJsonStreamDecoder.EarthquakeListener() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        cancellation.cancel();
+                    }
+                }, cancellation));
+
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void cancelStopsTransportWaitingForResponse() {
+        QueryUtils.setTransport(new ResilientTransport());
+        response = MockServer.MockResponse.ok("{\"type\":\"FeatureCollection\",\"features\":[]}")
+                .header("Content-Type", "application/json")
+                .delay(5000);
+
+        final Cancellation cancellation = new Cancellation();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    cancellation.cancel();
+                }
+            }, 200, TimeUnit.MILLISECONDS);
+
+            long start = System.currentTimeMillis();
+            assertFalse(QueryUtils.fetchEarthquakeData(server.urlString("/query?format=geojson"),
+                    new GeoJsonStreamDecoder.EarthquakeListener() {
+                        @Override
+                        public void onEarthquake(Earthquake earthquake) {
+                        }
+                    }, cancellation));
+            assertTrue(System.currentTimeMillis() - start < 2000);
+            // The interrupt that stopped the wait does not outlive the request
+            assertFalse(Thread.interrupted());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilientTransportTest {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    /** Samples the transport needs before it adapts its deadline and hedges. */
+    private static final int WARM_UP = 10;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Behaviour behaviour;
+    private MockServer server;
+    private ResilientTransport transport;
+
+    /**
+     * What the server does with the request of a given number, counting from 1.
+     */
+    private interface Behaviour {
+        MockServer.MockResponse respond(int request);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockServer(new MockServer.Handler() {
+            @Override
+            public MockServer.MockResponse handle(MockServer.Request request) {
+                return behaviour.respond(requests.incrementAndGet());
+            }
+        });
+        // The read timeout is longer than any injected delay, so only the deadline cuts in
+        transport = new ResilientTransport(new UrlConnectionTransport(
+                UrlConnectionTransport.DEFAULT_CONNECT_TIMEOUT, 30000), Clock.SYSTEM);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void serverErrorsAreRetried() throws IOException {
+        behaviour = new Behaviour() {
+            @Override
+            public MockServer.MockResponse respond(int request) {
+                return request < 3 ? MockServer.MockResponse.status(503)
+                        : MockServer.MockResponse.ok("ok");
+            }
+        };
+
+        assertEquals(200, get());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void lastErrorIsReturnedWhenOutOfAttempts() throws IOException {
+        behaviour = new Behaviour() {
+            @Override
+            public MockServer.MockResponse respond(int request) {
+                return MockServer.MockResponse.status(503);
+            }
+        };
+
+        assertEquals(503, get());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void timeoutWidensTheDeadline() throws IOException {
+        transport.setHedgingEnabled(false);
+        warmUp();
+
+        // Fast responses put the deadline at its 2 s floor. The link then slows to 2.5 s: the
+        // first attempt times out, and counting it at its deadline lets the retry wait longer
+        behaviour = new Behaviour() {
+            @Override
+            public MockServer.MockResponse respond(int request) {
+                return MockServer.MockResponse.ok("slow").delay(2500);
+            }
+        };
+
+        assertEquals(200, get());
+        assertEquals(WARM_UP + 2, requests.get());
+    }
+
+    @Test
+    public void slowResponseIsHedged() throws IOException {
+        warmUp();
+
+        // Only the first request after the warm-up is slow; its hedge answers right away
+        behaviour = new Behaviour() {
+            @Override
+            public MockServer.MockResponse respond(int request) {
+                MockServer.MockResponse response = MockServer.MockResponse.ok("ok");
+                return request == WARM_UP + 1 ? response.delay(3000) : response;
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        assertEquals(200, get());
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertEquals(WARM_UP + 2, requests.get());
+    }
+
+    @Test
+    public void cancelledRequestIsNotAHostFailure() throws Exception {
+        behaviour = new Behaviour() {
+            @Override
+            public MockServer.MockResponse respond(int request) {
+                return MockServer.MockResponse.ok("slow").delay(5000);
+            }
+        };
+
+        // Cancel more requests than it takes failures to open the breaker
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD + 1; i++) {
+            final Thread caller = Thread.currentThread();
+            Thread canceller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    caller.interrupt();
+                }
+            });
+            canceller.start();
+            long start = System.currentTimeMillis();
+            try {
+                get();
+                fail("Cancelled request returned a response");
+            } catch (InterruptedIOException e) {
+                // Expected, and not retried
+                assertTrue(System.currentTimeMillis() - start < 1000);
+            } finally {
+                // Clear the interrupt first, or waiting for the canceller would be interrupted
+                Thread.interrupted();
+                canceller.join();
+            }
+        }
+
+        assertEquals(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD + 1, requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED,
+                transport.getCircuitState(server.url("/query")));
+    }
+
+    private void warmUp() throws IOException {
+        behaviour = new Behaviour() {
+            @Override
+            public MockServer.MockResponse respond(int request) {
+                return MockServer.MockResponse.ok("ok");
+            }
+        };
+        for (int i = 0; i < WARM_UP; i++) {
+            assertEquals(200, get());
+        }
+    }
+
+    private int get() throws IOException {
+        HttpTransport.Response response = transport.get(server.url("/query"), NO_HEADERS);
+        try {
+            return response.getCode();
+        } finally {
+            response.close();
+        }
+    }
+}
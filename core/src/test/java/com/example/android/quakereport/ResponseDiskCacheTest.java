@@ -0,0 +1,191 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseDiskCacheTest {
+
+    private static final List<Earthquake> EARTHQUAKES = Arrays.asList(
+            TestResponses.quake("us1000a", 5.2, 1520000000000L),
+            TestResponses.quake("us1000b", 3.1, 1520000600000L));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private ResponseDiskCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("responses");
+        cache = new ResponseDiskCache(directory, 1024 * 1024);
+        QueryUtils.setTransport(new UrlConnectionTransport());
+        QueryUtils.setResponseCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setResponseCache(null);
+        QueryUtils.setTransport(new ResilientTransport());
+    }
+
+    @Test
+    public void notModifiedResponseIsServedFromCache() throws IOException {
+        MockServer server = new MockServer(new MockServer.Handler() {
+            @Override
+            public MockServer.MockResponse handle(MockServer.Request request) {
+                if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+                    return MockServer.MockResponse.status(304);
+                }
+                return MockServer.MockResponse.ok(TestResponses.geoJson(EARTHQUAKES))
+                        .header("ETag", "\"v1\"");
+            }
+        });
+        try {
+            String url = server.urlString("/query?format=geojson");
+            assertIds(QueryUtils.fetchEarthquakeData(url));
+            assertIds(QueryUtils.fetchEarthquakeData(url));
+
+            List<MockServer.Request> requests = server.getRequests();
+            assertEquals(2, requests.size());
+            assertNull(requests.get(0).getHeader("If-None-Match"));
+            assertEquals("\"v1\"", requests.get(1).getHeader("If-None-Match"));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void responseWithoutValidatorsIsNotCached() throws IOException {
+        MockServer server = new MockServer(new MockServer.Handler() {
+            @Override
+            public MockServer.MockResponse handle(MockServer.Request request) {
+                return MockServer.MockResponse.ok(TestResponses.geoJson(EARTHQUAKES));
+            }
+        });
+        try {
+            String url = server.urlString("/query?format=geojson");
+            assertIds(QueryUtils.fetchEarthquakeData(url));
+            assertNull(cache.get(url));
+            assertIds(QueryUtils.fetchEarthquakeData(url));
+            assertNull(server.getRequests().get(1).getHeader("If-None-Match"));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void evictedBodyFallsBackToUnconditionalRequest() throws IOException {
+        MockServer server = new MockServer(new MockServer.Handler() {
+            @Override
+            public MockServer.MockResponse handle(MockServer.Request request) {
+                if (request.getHeader("If-None-Match") != null) {
+                    // Evict the body after the entry was looked up, before it is opened
+                    for (File body : list(".body")) {
+                        assertTrue(body.delete());
+                    }
+                    return MockServer.MockResponse.status(304);
+                }
+                return MockServer.MockResponse.ok(TestResponses.geoJson(EARTHQUAKES))
+                        .header("ETag", "\"v1\"");
+            }
+        });
+        try {
+            String url = server.urlString("/query?format=geojson");
+            assertIds(QueryUtils.fetchEarthquakeData(url));
+            assertIds(QueryUtils.fetchEarthquakeData(url));
+
+            List<MockServer.Request> requests = server.getRequests();
+            assertEquals(3, requests.size());
+            assertNull(requests.get(2).getHeader("If-None-Match"));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void commitReplacesEntryAndLeavesNoTemporaryFiles() throws IOException {
+        String uri = "https://example.com/query";
+        store(uri, "\"v1\"", "first");
+        store(uri, "\"v2\"", "second");
+
+        ResponseDiskCache.Entry entry = cache.get(uri);
+        assertNotNull(entry);
+        assertEquals("\"v2\"", entry.getETag());
+        assertEquals("second", read(entry.openBody()));
+        assertEquals(0, list(".tmp").length);
+    }
+
+    @Test
+    public void uncommittedBodyKeepsPreviousEntry() throws IOException {
+        String uri = "https://example.com/query";
+        store(uri, "\"v1\"", "first");
+
+        ResponseDiskCache.CachingInputStream partial = cache.put(uri, "\"v2\"", null,
+                new ByteArrayInputStream("second".getBytes(MockServer.UTF_8)));
+        partial.read(new byte[3]);
+        partial.close();
+
+        ResponseDiskCache.Entry entry = cache.get(uri);
+        assertEquals("\"v1\"", entry.getETag());
+        assertEquals("first", read(entry.openBody()));
+        assertEquals(0, list(".tmp").length);
+    }
+
+    @Test
+    public void leftoverTemporaryFilesAreSwept() throws IOException {
+        File leftover = new File(directory, "abc123.tmp");
+        assertTrue(leftover.createNewFile());
+
+        new ResponseDiskCache(directory, 1024 * 1024);
+        assertEquals(0, list(".tmp").length);
+    }
+
+    private void store(String uri, String eTag, String body) throws IOException {
+        ResponseDiskCache.CachingInputStream stream = cache.put(uri, eTag, null,
+                new ByteArrayInputStream(body.getBytes(MockServer.UTF_8)));
+        stream.commit();
+        stream.close();
+    }
+
+    private File[] list(final String suffix) {
+        return directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(suffix);
+            }
+        });
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            return QueryUtils.readFromStream(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertIds(List<Earthquake> earthquakes) {
+        assertNotNull(earthquakes);
+        assertEquals(EARTHQUAKES.size(), earthquakes.size());
+        for (int i = 0; i < EARTHQUAKES.size(); i++) {
+            assertEquals(EARTHQUAKES.get(i).getId(), earthquakes.get(i).getId());
+        }
+    }
+}
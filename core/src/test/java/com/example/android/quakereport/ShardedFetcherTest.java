@@ -0,0 +1,164 @@
+package com.example.android.quakereport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedFetcherTest {
+
+    private static final long START = 1520000000000L;
+    private static final long END = START + 100 * 1000;
+    private static final int CAP = 10;
+
+    private final AtomicInteger servedEvents = new AtomicInteger();
+    private final AtomicInteger failQueriesFrom = new AtomicInteger(Integer.MAX_VALUE);
+    private final AtomicInteger queries = new AtomicInteger();
+    private List<Earthquake> events;
+    private MockServer server;
+    private ShardedFetcher fetcher;
+    private final CapturingLogSink log = new CapturingLogSink();
+
+    @Before
+    public void setUp() throws IOException {
+        // The failures some tests provoke are checked in the log rather than printed
+        QuakeLog.setSink(log);
+        QueryUtils.setTransport(new UrlConnectionTransport());
+        server = new MockServer(new MockServer.Handler() {
+            @Override
+            public MockServer.MockResponse handle(MockServer.Request request) throws Exception {
+                return serve(request);
+            }
+        });
+        fetcher = new ShardedFetcher(server.urlString("/fdsnws/event/1/query"), CAP, 2);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        fetcher.shutdown();
+        server.close();
+        // Windows a failed fetch left running still log; let them finish into the capture
+        assertTrue(fetcher.awaitTermination(5, TimeUnit.SECONDS));
+        QueryUtils.setTransport(new ResilientTransport());
+        QuakeLog.setSink(null);
+    }
+
+    @Test
+    public void denseWindowsAreSplitWithoutDownloadingThem() {
+        // Forty events spread over the range and sixty packed into its last twenty seconds
+        events = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            events.add(TestResponses.quake("spread" + i, 4.0, START + i * 2000));
+        }
+        for (int i = 0; i < 60; i++) {
+            events.add(TestResponses.quake("dense" + i, 3.0, END - 20000 + i * 330));
+        }
+
+        List<Earthquake> earthquakes = fetcher.fetch(START, END, 2.5, "time");
+
+        assertEquals(events.size(), earthquakes.size());
+        for (int i = 1; i < earthquakes.size(); i++) {
+            assertTrue(earthquakes.get(i - 1).getDateTime() > earthquakes.get(i).getDateTime());
+        }
+        // Every event was downloaded once: no window was fetched only to be thrown away
+        assertEquals(events.size(), servedEvents.get());
+        assertTrue(fetcher.getSplitCount() > 0);
+        assertEquals(Collections.<String>emptyList(), log.getErrors());
+    }
+
+    @Test
+    public void windowTooDenseToSplitIsIncomplete() {
+        events = new ArrayList<>();
+        for (int i = 0; i < CAP + 1; i++) {
+            events.add(TestResponses.quake("same" + i, 4.0, START + 500));
+        }
+
+        assertNull(fetcher.fetch(START, END, 2.5, "time"));
+        assertTrue(log.hasError("ShardedFetcher", "cannot be split further"));
+    }
+
+    @Test
+    public void failedWindowFailsTheFetch() {
+        events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            events.add(TestResponses.quake("us" + i, 4.0, START + i * 5000));
+        }
+        failQueriesFrom.set(1);
+
+        assertNull(fetcher.fetch(START, END, 2.5, "time"));
+        assertTrue(log.hasError("QueryUtils", "Error response code: 503"));
+        assertTrue(log.hasError("ShardedFetcher", "Could not fetch window"));
+    }
+
+    @Test
+    public void mergeKeepsTheFreshestCopyOfEachEvent() {
+        Earthquake stale = TestResponses.quake("moved", 4.0, START + 3000);
+        Earthquake fresh = new Earthquake("moved", 4.0, "10km N of Test", START + 1000,
+                Earthquake.EVENT_PAGE_URL + "moved", START + 9000);
+        List<Earthquake> newer = Arrays.asList(
+                TestResponses.quake("c", 4.0, START + 4000), stale);
+        List<Earthquake> older = Arrays.asList(
+                TestResponses.quake("b", 4.0, START + 2000), fresh,
+                TestResponses.quake("a", 4.0, START));
+
+        List<Earthquake> merged = ShardedFetcher.merge(Arrays.asList(newer, older),
+                ShardedFetcher.comparatorFor("time"));
+
+        assertEquals(4, merged.size());
+        assertEquals("c", merged.get(0).getId());
+        assertEquals("b", merged.get(1).getId());
+        assertEquals(fresh, merged.get(2));
+        assertEquals("a", merged.get(3).getId());
+    }
+
+    /**
+     * Answer count and query requests from the events, the way the USGS does.
+     */
+    private MockServer.MockResponse serve(MockServer.Request request) throws Exception {
+        double minMagnitude = Double.parseDouble(request.query.get("minmagnitude"));
+        long startTime = parseTime(request.query.get("starttime"));
+        long endTime = parseTime(request.query.get("endtime"));
+        List<Earthquake> matching = new ArrayList<>();
+        for (Earthquake earthquake : events) {
+            if (earthquake.getMagnitude() >= minMagnitude
+                    && earthquake.getDateTime() >= startTime
+                    && earthquake.getDateTime() <= endTime) {
+                matching.add(earthquake);
+            }
+        }
+        if (request.path.endsWith("/count")) {
+            return MockServer.MockResponse.ok(String.valueOf(matching.size()));
+        }
+
+        if (queries.incrementAndGet() > failQueriesFrom.get()) {
+            return MockServer.MockResponse.status(503);
+        }
+        Collections.sort(matching, ShardedFetcher.comparatorFor("time"));
+        int limit = Integer.parseInt(request.query.get("limit"));
+        List<Earthquake> page = matching.subList(0, Math.min(limit, matching.size()));
+        servedEvents.addAndGet(page.size());
+        return MockServer.MockResponse.ok(TestResponses.geoJson(page));
+    }
+
+    private static long parseTime(String encoded) throws IOException, ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(URLDecoder.decode(encoded, "UTF-8")).getTime();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialIndexTest {
+
+    private static final int SIZE = 2000;
+
+    private EarthquakeTable table;
+    private SpatialIndex index;
+
+    @Before
+    public void setUp() {
+        // Random epicenters, plus a cluster around the antimeridian and one near the north pole
+        Random random = new Random(42);
+        table = new EarthquakeTable(SIZE + 1);
+        for (int i = 0; i < SIZE; i++) {
+            double latitude;
+            double longitude;
+            if (i % 10 == 0) {
+                latitude = -20 + random.nextDouble() * 10;
+                longitude = random.nextBoolean() ? 175 + random.nextDouble() * 5
+                        : -180 + random.nextDouble() * 5;
+            } else if (i % 10 == 1) {
+                latitude = 85 + random.nextDouble() * 5;
+                longitude = -180 + random.nextDouble() * 360;
+            } else {
+                latitude = -90 + random.nextDouble() * 180;
+                longitude = -180 + random.nextDouble() * 360;
+            }
+            table.add("us" + i, random.nextInt(60) / 10.0 + 2, "Test", i, null, i,
+                    latitude, longitude, 10);
+        }
+        // A row without coordinates is never part of a result
+        table.add("us" + SIZE, 5.0, "Test", SIZE, null, SIZE, Double.NaN, Double.NaN, 10);
+        index = new SpatialIndex(table);
+    }
+
+    @Test
+    public void rowsWithoutCoordinatesAreLeftOut() {
+        assertEquals(SIZE, index.size());
+        assertEquals(SIZE, index.boundingBox(-90, -180, 90, 180, null).length);
+    }
+
+    @Test
+    public void boundingBoxMatchesScan() {
+        assertBox(-30, -60, 30, 60, null);
+        assertBox(10.5, 20.25, 11.5, 21.75, null);
+        assertBox(-90, -180, 90, 180, largeOnly());
+    }
+
+    @Test
+    public void boundingBoxCrossingAntimeridianMatchesScan() {
+        int[] positions = assertBox(-25, 170, -5, -170, null);
+        assertTrue(positions.length > SIZE / 20);
+    }
+
+    @Test
+    public void radiusMatchesScan() {
+        assertRadius(0, 0, 1000, null);
+        assertRadius(35.5, -117.5, 300, largeOnly());
+        // Crossing the antimeridian, and reaching over the pole
+        assertRadius(-15, 179.5, 800, null);
+        assertRadius(88, 10, 500, null);
+        assertRadius(0, 0, 30000, null);
+    }
+
+    @Test
+    public void nearestMatchesScan() {
+        assertNearest(0, 0, 1, null);
+        assertNearest(35.5, -117.5, 10, null);
+        assertNearest(-15, -179.9, 25, null);
+        assertNearest(89.5, 0, 5, largeOnly());
+        assertNearest(-89.9, 90, 3, null);
+    }
+
+    @Test
+    public void nearestReturnsEverythingWhenKExceedsSize() {
+        assertEquals(SIZE, index.nearest(10, 10, SIZE * 2, null).length);
+        assertEquals(0, index.nearest(10, 10, 0, null).length);
+    }
+
+    private SpatialIndex.Filter largeOnly() {
+        return new SpatialIndex.Filter() {
+            @Override
+            public boolean accept(int position) {
+                return table.getMagnitude(position) >= 5;
+            }
+        };
+    }
+
+    private int[] assertBox(double south, double west, double north, double east,
+                            SpatialIndex.Filter filter) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < table.size(); i++) {
+            double latitude = table.getLatitude(i);
+            double longitude = table.getLongitude(i);
+            boolean inLongitude = west <= east ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (latitude >= south && latitude <= north && inLongitude && accepts(filter, i)) {
+                expected.add(i);
+            }
+        }
+        int[] actual = index.boundingBox(south, west, north, east, filter);
+        assertArrayEquals(toSortedArray(expected), sorted(actual));
+        return actual;
+    }
+
+    private void assertRadius(double latitude, double longitude, double radiusKm,
+                              SpatialIndex.Filter filter) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < table.size(); i++) {
+            if (!Double.isNaN(table.getLatitude(i))
+                    && distanceKm(latitude, longitude, i) <= radiusKm && accepts(filter, i)) {
+                expected.add(i);
+            }
+        }
+        assertArrayEquals(toSortedArray(expected),
+                sorted(index.radius(latitude, longitude, radiusKm, filter)));
+    }
+
+    private void assertNearest(final double latitude, final double longitude, int k,
+                               SpatialIndex.Filter filter) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < table.size(); i++) {
+            if (!Double.isNaN(table.getLatitude(i)) && accepts(filter, i)) {
+                candidates.add(i);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(distanceKm(latitude, longitude, a),
+                        distanceKm(latitude, longitude, b));
+            }
+        });
+
+        int[] actual = index.nearest(latitude, longitude, k, filter);
+        assertEquals(Math.min(k, candidates.size()), actual.length);
+        for (int i = 0; i < actual.length; i++) {
+            // Compare distances, so rows at the same distance may come in either order
+            assertEquals(distanceKm(latitude, longitude, candidates.get(i)),
+                    distanceKm(latitude, longitude, actual[i]), 1e-9);
+        }
+    }
+
+    private static boolean accepts(SpatialIndex.Filter filter, int position) {
+        return filter == null || filter.accept(position);
+    }
+
+    private double distanceKm(double latitude, double longitude, int position) {
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.toRadians(table.getLatitude(position));
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(table.getLongitude(position) - longitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * SpatialIndex.EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static int[] toSortedArray(List<Integer> positions) {
+        int[] result = new int[positions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = positions.get(i);
+        }
+        return sorted(result);
+    }
+
+    private static int[] sorted(int[] positions) {
+        int[] copy = positions.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
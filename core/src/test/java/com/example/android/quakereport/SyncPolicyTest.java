@@ -0,0 +1,146 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SyncPolicyTest {
+
+    private static final long LAST_SYNC = 1520000000000L;
+    private static final long MINUTE = 60 * 1000;
+
+    private final FakeClock clock = new FakeClock(LAST_SYNC);
+    private final FakeNetwork network = new FakeNetwork();
+    private final SyncPolicy policy = new SyncPolicy(clock, network, LAST_SYNC, 0, 0);
+
+    private static final class FakeClock implements Clock {
+        long now;
+
+        FakeClock(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private static final class FakeNetwork implements SyncPolicy.NetworkState {
+        boolean connected = true;
+        boolean metered;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isMetered() {
+            return metered;
+        }
+    }
+
+    @Test
+    public void recentDataIsNotSynced() {
+        clock.now = LAST_SYNC + SyncPolicy.SYNC_INTERVAL_MILLIS - 1;
+        assertFalse(policy.shouldSync());
+        assertTrue(policy.isFresh());
+        assertEquals(1, policy.getPreferredDelayMillis());
+
+        clock.now = LAST_SYNC + SyncPolicy.SYNC_INTERVAL_MILLIS;
+        assertTrue(policy.shouldSync());
+        assertEquals(0, policy.getPreferredDelayMillis());
+    }
+
+    @Test
+    public void meteredNetworkWaitsUntilDataIsStale() {
+        network.metered = true;
+        clock.now = LAST_SYNC + SyncPolicy.SYNC_INTERVAL_MILLIS;
+        assertFalse(policy.shouldSync());
+        assertEquals(SyncPolicy.STALE_AFTER_MILLIS - SyncPolicy.SYNC_INTERVAL_MILLIS,
+                policy.getFallbackDelayMillis());
+
+        clock.now = LAST_SYNC + SyncPolicy.STALE_AFTER_MILLIS;
+        assertTrue(policy.shouldSync());
+        assertFalse(policy.isFresh());
+        assertEquals(0, policy.getFallbackDelayMillis());
+    }
+
+    @Test
+    public void noSyncWithoutNetwork() {
+        network.connected = false;
+        clock.now = LAST_SYNC + SyncPolicy.STALE_AFTER_MILLIS;
+        assertFalse(policy.shouldSync());
+    }
+
+    @Test
+    public void failuresBackOffExponentially() {
+        clock.now = LAST_SYNC + SyncPolicy.STALE_AFTER_MILLIS;
+        policy.onSyncFinished(false);
+        assertEquals(1, policy.getConsecutiveFailures());
+        assertEquals(clock.now + SyncPolicy.BASE_BACKOFF_MILLIS, policy.getRetryAt());
+        assertFalse(policy.shouldSync());
+        assertEquals(SyncPolicy.BASE_BACKOFF_MILLIS, policy.getFallbackDelayMillis());
+
+        clock.now = policy.getRetryAt();
+        assertTrue(policy.shouldSync());
+        policy.onSyncFinished(false);
+        assertEquals(clock.now + 2 * SyncPolicy.BASE_BACKOFF_MILLIS, policy.getRetryAt());
+
+        clock.now = policy.getRetryAt();
+        policy.onSyncFinished(false);
+        assertEquals(clock.now + 4 * SyncPolicy.BASE_BACKOFF_MILLIS, policy.getRetryAt());
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        for (int i = 0; i < 40; i++) {
+            policy.onSyncFinished(false);
+        }
+        assertEquals(40, policy.getConsecutiveFailures());
+        assertEquals(clock.now + SyncPolicy.MAX_BACKOFF_MILLIS, policy.getRetryAt());
+    }
+
+    @Test
+    public void successResetsBackoffAndSchedule() {
+        clock.now = LAST_SYNC + SyncPolicy.STALE_AFTER_MILLIS;
+        policy.onSyncFinished(false);
+        policy.onSyncFinished(false);
+
+        clock.now += 10 * MINUTE;
+        policy.onSyncFinished(true);
+        assertEquals(clock.now, policy.getLastSuccessAt());
+        assertEquals(0, policy.getConsecutiveFailures());
+        assertEquals(0, policy.getRetryAt());
+        assertTrue(policy.isFresh());
+        assertFalse(policy.shouldSync());
+        assertEquals(SyncPolicy.SYNC_INTERVAL_MILLIS, policy.getPreferredDelayMillis());
+        assertEquals(SyncPolicy.STALE_AFTER_MILLIS, policy.getFallbackDelayMillis());
+    }
+
+    @Test
+    public void savedStateIsRestored() {
+        long retryAt = LAST_SYNC + SyncPolicy.STALE_AFTER_MILLIS + 5 * MINUTE;
+        SyncPolicy restored = new SyncPolicy(clock, network, LAST_SYNC, 3, retryAt);
+        clock.now = LAST_SYNC + SyncPolicy.STALE_AFTER_MILLIS;
+        assertFalse(restored.shouldSync());
+        assertEquals(5 * MINUTE, restored.getFallbackDelayMillis());
+
+        // The next failure continues the backoff where the saved state left it
+        clock.now = retryAt;
+        restored.onSyncFinished(false);
+        assertEquals(retryAt + 8 * SyncPolicy.BASE_BACKOFF_MILLIS, restored.getRetryAt());
+    }
+
+    @Test
+    public void neverSyncedIsStale() {
+        SyncPolicy first = new SyncPolicy(clock, network, 0, 0, 0);
+        network.metered = true;
+        assertFalse(first.isFresh());
+        assertTrue(first.shouldSync());
+        assertEquals(0, first.getPreferredDelayMillis());
+    }
+}
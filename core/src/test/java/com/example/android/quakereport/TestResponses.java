@@ -0,0 +1,72 @@
+package com.example.android.quakereport;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds small USGS responses for tests.
+ */
+final class TestResponses {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link TestResponses}
+     * object.
+     */
+    private TestResponses() {
+    }
+
+    /**
+     * Gets an earthquake with the given id, magnitude and time, updated when it happened.
+     */
+    static Earthquake quake(String id, double magnitude, long time) {
+        return new Earthquake(id, magnitude, "10km N of Test", time,
+                Earthquake.EVENT_PAGE_URL + id, time, 34.0, -117.0, 8.5);
+    }
+
+    /**
+     * Gets a GeoJSON feature collection of the earthquakes.
+     */
+    static String geoJson(List<Earthquake> earthquakes) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US,
+                    "{\"type\":\"Feature\",\"properties\":{\"mag\":%s,\"place\":\"%s\","
+                            + "\"time\":%d,\"updated\":%d,\"url\":\"%s\"},"
+                            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%s,%s,%s]},"
+                            + "\"id\":\"%s\"}",
+                    earthquake.getMagnitude(), earthquake.getLocation(),
+                    earthquake.getDateTime(), earthquake.getUpdated(), earthquake.getWebsite(),
+                    earthquake.getLongitude(), earthquake.getLatitude(), earthquake.getDepth(),
+                    earthquake.getId()));
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Gets the USGS CSV response for the earthquakes, with every column the USGS sends.
+     */
+    static String csv(List<Earthquake> earthquakes) {
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder csv = new StringBuilder("time,latitude,longitude,depth,mag,magType,nst,"
+                + "gap,dmin,rms,net,id,updated,place,type,horizontalError,depthError,magError,"
+                + "magNst,status,locationSource,magSource\n");
+        for (Earthquake earthquake : earthquakes) {
+            csv.append(String.format(Locale.US,
+                    "%s,%s,%s,%s,%s,ml,12,84,0.05,0.19,ci,%s,%s,\"%s\",earthquake,"
+                            + "0.29,0.47,0.16,25,automatic,ci,ci\n",
+                    iso.format(new Date(earthquake.getDateTime())), earthquake.getLatitude(),
+                    earthquake.getLongitude(), earthquake.getDepth(), earthquake.getMagnitude(),
+                    earthquake.getId(), iso.format(new Date(earthquake.getUpdated())),
+                    earthquake.getLocation().replace("\"", "\"\"")));
+        }
+        return csv.toString();
+    }
+}